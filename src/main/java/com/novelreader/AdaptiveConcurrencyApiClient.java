@@ -0,0 +1,243 @@
+package com.novelreader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.LongSupplier;
+
+/**
+ * 自适应并发的API客户端，包装任意ApiClient，按API的反馈调整同时进行的请求数（AIMD）
+ * <p>
+ * 请求数达到上限且响应时间稳定时，每完成约一轮（上限个）请求上限加1；
+ * API返回429/503，或响应时间超过平均值的{@link #LATENCY_TOLERANCE}倍时，上限减半。
+ * 同一轮中已经发出的请求陆续返回过载时只减半一次。超出上限的请求按先来后到排队。
+ * <p>
+ * 响应时间不包括在{@link RateLimiter}中等待许可的时间，受每分钟请求数或token数限制时不会误判为过载。
+ */
+public class AdaptiveConcurrencyApiClient implements ApiClient {
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveConcurrencyApiClient.class);
+    /** 默认的初始并发上限 */
+    public static final int DEFAULT_INITIAL_LIMIT = 4;
+    /** 默认的最小并发上限 */
+    public static final int DEFAULT_MIN_LIMIT = 1;
+    /** 默认的最大并发上限 */
+    public static final int DEFAULT_MAX_LIMIT = 32;
+    /** 响应时间超过平均值的这个倍数时视为过载 */
+    static final double LATENCY_TOLERANCE = 2.0;
+    private static final double BACKOFF_RATIO = 0.5;
+    // 平均响应时间的平滑系数
+    private static final double LATENCY_SMOOTHING = 0.1;
+
+    private final ApiClient delegate;
+    private final LongSupplier clock;
+    private final int minLimit;
+    private final int maxLimit;
+    private final Deque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+    private double limit;
+    private int inFlight;
+    // 成功请求的平均响应时间，没有样本时为0
+    private double averageLatencyNanos;
+    // 上次减半的时间，在此之前发出的请求不再触发减半
+    private long lastDecreaseNanos;
+
+    /**
+     * 使用默认的并发上限
+     * @param delegate 实际调用API的客户端
+     */
+    public AdaptiveConcurrencyApiClient(ApiClient delegate) {
+        this(delegate, DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT);
+    }
+
+    /**
+     * @param delegate 实际调用API的客户端
+     * @param initialLimit 初始并发上限
+     * @param minLimit 最小并发上限
+     * @param maxLimit 最大并发上限
+     */
+    public AdaptiveConcurrencyApiClient(ApiClient delegate, int initialLimit, int minLimit, int maxLimit) {
+        this(delegate, initialLimit, minLimit, maxLimit, System::nanoTime);
+    }
+
+    /**
+     * @param clock 测量响应时间的纳秒时钟
+     */
+    AdaptiveConcurrencyApiClient(ApiClient delegate, int initialLimit, int minLimit, int maxLimit, LongSupplier clock) {
+        if (minLimit <= 0 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid concurrency limits: min=" + minLimit + ", max=" + maxLimit);
+        }
+        this.delegate = delegate;
+        this.clock = clock;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.lastDecreaseNanos = clock.getAsLong() - 1;
+    }
+
+    @Override
+    public ApiResponse analyzeChapterGroup(ApiRequest request) {
+        CompletableFuture<Void> slot = acquireSlot();
+        try {
+            slot.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // 取消失败说明刚好获取到了
+            if (!slot.cancel(false)) {
+                releaseSlot();
+            }
+            return ApiResponse.failure("API call interrupted while waiting for a concurrency slot");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Concurrency slot waiter failed", e.getCause());
+        }
+        request.setPermitWaitNanos(0);
+        long startNanos = clock.getAsLong();
+        ApiResponse response = null;
+        try {
+            response = delegate.analyzeChapterGroup(request);
+            return response;
+        } finally {
+            onComplete(startNanos, request, response);
+        }
+    }
+
+    @Override
+    public CompletableFuture<ApiResponse> analyzeChapterGroupAsync(ApiRequest request) {
+        return acquireSlot().thenCompose(slot -> {
+            request.setPermitWaitNanos(0);
+            long startNanos = clock.getAsLong();
+            CompletableFuture<ApiResponse> response;
+            try {
+                response = delegate.analyzeChapterGroupAsync(request);
+            } catch (RuntimeException e) {
+                response = CompletableFuture.failedFuture(e);
+            }
+            return response.whenComplete((result, e) -> onComplete(startNanos, request, result));
+        });
+    }
+
+    @Override
+    public void discardResponse(ApiRequest request) {
+        delegate.discardResponse(request);
+    }
+
+    @Override
+    public String getProviderName() {
+        return delegate.getProviderName();
+    }
+
+    @Override
+    public String getModelName() {
+        return delegate.getModelName();
+    }
+
+    @Override
+    public void warmUp() {
+        delegate.warmUp();
+    }
+
+    /**
+     * @return 当前的并发上限
+     */
+    @Override
+    public int getConcurrencyLimit() {
+        synchronized (waiters) {
+            return (int) limit;
+        }
+    }
+
+    @Override
+    public <T extends ApiClient> T unwrap(Class<T> type) {
+        return type.isInstance(this) ? type.cast(this) : delegate.unwrap(type);
+    }
+
+    /**
+     * @return 正在进行的请求数
+     */
+    public int getInFlight() {
+        synchronized (waiters) {
+            return inFlight;
+        }
+    }
+
+    private CompletableFuture<Void> acquireSlot() {
+        synchronized (waiters) {
+            // 已有排队的请求时不插队
+            if (waiters.isEmpty() && inFlight < (int) limit) {
+                inFlight++;
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> waiter = new CompletableFuture<>();
+            waiters.add(waiter);
+            return waiter;
+        }
+    }
+
+    private void releaseSlot() {
+        synchronized (waiters) {
+            inFlight--;
+        }
+        dispatchWaiters();
+    }
+
+    private void onComplete(long startNanos, ApiRequest request, ApiResponse response) {
+        long now = clock.getAsLong();
+        // 等待限流许可是自己限制的速率，不是API的响应时间，从请求发出时开始计算
+        long sentNanos = startNanos + request.getPermitWaitNanos();
+        long latencyNanos = now - sentNanos;
+        synchronized (waiters) {
+            boolean saturated = inFlight >= (int) limit;
+            inFlight--;
+            boolean latencySpike = averageLatencyNanos > 0 && latencyNanos > averageLatencyNanos * LATENCY_TOLERANCE;
+            if (response != null && response.isSuccess()) {
+                averageLatencyNanos = averageLatencyNanos == 0 ? latencyNanos
+                        : averageLatencyNanos + LATENCY_SMOOTHING * (latencyNanos - averageLatencyNanos);
+            }
+            if ((response != null && response.isOverloaded()) || latencySpike) {
+                if (sentNanos - lastDecreaseNanos > 0) {
+                    lastDecreaseNanos = now;
+                    int previous = (int) limit;
+                    limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+                    // 上限变化很频繁，只在调试时输出，结束时的上限由调用方汇总
+                    if ((int) limit < previous && logger.isDebugEnabled()) {
+                        logger.debug("{} {}, concurrency limit decreased to {}", getProviderName(),
+                                latencySpike ? "latency spiked to " + latencyNanos / 1_000_000 + " ms" : "returned " + response.statusCode(),
+                                (int) limit);
+                    }
+                }
+            } else if (response != null && response.isSuccess() && saturated && limit < maxLimit) {
+                // 上限没有用满时增加上限没有意义
+                int previous = (int) limit;
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+                if ((int) limit > previous) {
+                    logger.debug("{} concurrency limit increased to {}", getProviderName(), (int) limit);
+                }
+            }
+        }
+        dispatchWaiters();
+    }
+
+    // 按排队顺序把空出的并发交给等待者
+    private void dispatchWaiters() {
+        List<CompletableFuture<Void>> granted = new ArrayList<>();
+        synchronized (waiters) {
+            while (!waiters.isEmpty() && inFlight < (int) limit) {
+                CompletableFuture<Void> waiter = waiters.poll();
+                if (!waiter.isDone()) {
+                    inFlight++;
+                    granted.add(waiter);
+                }
+            }
+        }
+        // 在锁外完成，等待者的回调可能会再次发出请求；等待者已取消时退回
+        for (CompletableFuture<Void> waiter : granted) {
+            if (!waiter.complete(null)) {
+                releaseSlot();
+            }
+        }
+    }
+}
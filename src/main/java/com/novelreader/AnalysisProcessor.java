@@ -10,12 +10,16 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
 /**
  * 分析处理器，用于处理小说分析的整个流程
@@ -24,12 +28,16 @@ public class AnalysisProcessor {
     private static final Logger logger = LoggerFactory.getLogger(AnalysisProcessor.class);
     private static final int MAX_RETRY_COUNT = 3;
     private static final int THREAD_COUNT = 10;
+    // 异步处理时最多同时挂起的章节组，只用于限制内存占用，请求并发由限流器控制
+    private static final int MAX_PENDING_ASYNC_GROUPS = 100;
     
     private final ApiClient apiClient;
     private final ResultValidator validator;
     private final ResultSaver resultSaver;
     private final String outputDirectory;
     private final String finalOutputFile;
+    private final TokenEstimator tokenEstimator;
+    private final long maxRequestTokens;
     
     /**
      * 构造函数
@@ -42,11 +50,30 @@ public class AnalysisProcessor {
      */
     public AnalysisProcessor(ApiClient apiClient, ResultValidator validator, ResultSaver resultSaver, 
                              String outputDirectory, String finalOutputFile) {
+        this(apiClient, validator, resultSaver, outputDirectory, finalOutputFile, new TokenEstimator(), 0);
+    }
+    
+    /**
+     * 构造函数，单章超出token预算时拆分成若干部分分别请求，再拼接分析结果
+     * 
+     * @param apiClient API客户端
+     * @param validator 结果验证器
+     * @param resultSaver 结果保存器
+     * @param outputDirectory 输出目录
+     * @param finalOutputFile 最终输出文件路径
+     * @param tokenEstimator token数估算器
+     * @param maxRequestTokens 单次请求中章节内容的token预算，不包括提示词，不大于0时不拆分
+     */
+    public AnalysisProcessor(ApiClient apiClient, ResultValidator validator, ResultSaver resultSaver, 
+                             String outputDirectory, String finalOutputFile,
+                             TokenEstimator tokenEstimator, long maxRequestTokens) {
         this.apiClient = apiClient;
         this.validator = validator;
         this.resultSaver = resultSaver;
         this.outputDirectory = outputDirectory;
         this.finalOutputFile = finalOutputFile;
+        this.tokenEstimator = tokenEstimator;
+        this.maxRequestTokens = maxRequestTokens;
         
         // 确保输出目录存在
         File directory = new File(outputDirectory);
@@ -63,37 +90,57 @@ public class AnalysisProcessor {
      */
     public boolean processChapterGroups(List<ChapterGroup> chapterGroups) {
         logger.info("开始处理{}个章节组", chapterGroups.size());
-        try {
-            List<Path> analysisPaths = Files.list(Paths.get(Configuration.analysisResultsDirPath))
-                                           .collect(Collectors.toList());
-            chapterGroups = chapterGroups.stream()
-                .filter(it ->
-                    analysisPaths.stream().noneMatch(p ->
-                        p.getFileName().toString().equals(it.getAnalysisFileName())
-                    )
-                )
-                .collect(Collectors.toList());
-        }catch (Exception e) {
-            logger.warn("过滤已分析文件",e);
-        }
+        return processChapterGroups(chapterGroups.iterator());
+    }
+    
+    /**
+     * 依次处理迭代器给出的章节组，迭代器可以在章节组生成的同时给出章节组。
+     * 同时处理的章节组不超过线程数，处理跟不上时暂停读取迭代器，使上游的有界队列产生背压
+     * 
+     * @param chapterGroups 章节组迭代器
+     * @return 是否成功处理所有章节组
+     */
+    public boolean processChapterGroups(Iterator<ChapterGroup> chapterGroups) {
+        Set<String> analysisFileNames = listAnalysisFileNames();
 
-        // 创建线程池
-        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        // 创建线程池，自适应并发时线程数不能少于最大并发上限，实际并发由API客户端控制
+        int threadCount = Configuration.isAdaptiveConcurrencyEnabled()
+                ? Math.max(THREAD_COUNT, Configuration.getConcurrencyMaxLimit()) : THREAD_COUNT;
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        Semaphore slots = new Semaphore(threadCount);
         List<CompletableFuture<String>> futures = new ArrayList<>();
         AtomicInteger successCount = new AtomicInteger(0);
+        int groupCount = 0;
         
         // 提交任务
-        for (ChapterGroup chapterGroup : chapterGroups) {
+        while (chapterGroups.hasNext()) {
+            ChapterGroup chapterGroup = chapterGroups.next();
+            // 已有分析结果且章节指纹未变化的章节组无需重新分析
+            if (isAnalyzed(chapterGroup, analysisFileNames)) {
+                adoptFingerprints(chapterGroup, analysisFileNames);
+                continue;
+            }
+            try {
+                slots.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
             CompletableFuture<String> future = CompletableFuture.supplyAsync(() -> {
                 try {
                     return processChapterGroup(chapterGroup);
                 } catch (Exception e) {
                     logger.error("处理章节组{}时发生错误: {}", chapterGroup.getChapterGroupId(), e.getMessage(), e);
                     return null;
+                } finally {
+                    // 分析完成后不再需要章节组内容
+                    chapterGroup.clearContent();
+                    slots.release();
                 }
             }, executor);
             
             futures.add(future);
+            groupCount++;
         }
         
         // 收集结果
@@ -121,7 +168,70 @@ public class AnalysisProcessor {
             Thread.currentThread().interrupt();
         }
         
-        logger.info("成功处理了{}/{}个章节组", successCount.get(), chapterGroups.size());
+        return finish(successCount.get(), groupCount);
+    }
+    
+    /**
+     * 以异步方式处理迭代器给出的章节组，API调用、验证和重试通过Future串联，等待限流许可和响应时不占用线程，
+     * 同时进行的请求数只受API客户端的限流器限制。响应到达后的验证和保存在工作线程池中执行，不占用HTTP线程
+     * 
+     * @param chapterGroups 章节组迭代器
+     * @return 是否成功处理所有章节组
+     */
+    public boolean processChapterGroupsAsync(Iterator<ChapterGroup> chapterGroups) {
+        Set<String> analysisFileNames = listAnalysisFileNames();
+        
+        Semaphore pending = new Semaphore(MAX_PENDING_ASYNC_GROUPS);
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        ExecutorService worker = Executors.newFixedThreadPool(THREAD_COUNT);
+        try {
+            while (chapterGroups.hasNext()) {
+                ChapterGroup chapterGroup = chapterGroups.next();
+                // 已有分析结果且章节指纹未变化的章节组无需重新分析
+                if (isAnalyzed(chapterGroup, analysisFileNames)) {
+                    adoptFingerprints(chapterGroup, analysisFileNames);
+                    continue;
+                }
+                try {
+                    pending.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                CompletableFuture<String> future;
+                try {
+                    future = processChapterGroupAsync(chapterGroup, worker);
+                } catch (Exception e) {
+                    future = CompletableFuture.failedFuture(e);
+                }
+                futures.add(future.handle((resultFile, e) -> {
+                    if (e != null) {
+                        logger.error("处理章节组{}时发生错误: {}", chapterGroup.getChapterGroupId(), e.getMessage(), e);
+                    }
+                    // 分析完成后不再需要章节组内容
+                    chapterGroup.clearContent();
+                    pending.release();
+                    return e == null ? resultFile : null;
+                }));
+            }
+            
+            int successCount = 0;
+            for (CompletableFuture<String> future : futures) {
+                if (future.join() != null) {
+                    successCount++;
+                }
+            }
+            return finish(successCount, futures.size());
+        } finally {
+            worker.shutdown();
+        }
+    }
+    
+    /**
+     * 统计处理结果并合并所有分析结果
+     */
+    private boolean finish(int successCount, int groupCount) {
+        logger.info("成功处理了{}/{}个章节组", successCount, groupCount);
         
         // 合并结果
         boolean mergeResult = resultSaver.mergeResults(finalOutputFile);
@@ -134,6 +244,39 @@ public class AnalysisProcessor {
         }
     }
     
+    private Set<String> listAnalysisFileNames() {
+        try (Stream<Path> paths = Files.list(Paths.get(Configuration.analysisResultsDirPath))) {
+            return paths.map(p -> p.getFileName().toString()).collect(Collectors.toSet());
+        } catch (Exception e) {
+            logger.warn("过滤已分析文件",e);
+            return Set.of();
+        }
+    }
+    
+    private boolean isAnalyzed(ChapterGroup chapterGroup, Set<String> analysisFileNames) {
+        try {
+            return analysisFileNames.contains(chapterGroup.getAnalysisFileName())
+                    && ChapterFingerprints.isUpToDate(chapterGroup, Configuration.analysisResultsDirPath);
+        } catch (Exception e) {
+            logger.warn("过滤已分析文件",e);
+            return false;
+        }
+    }
+    
+    /**
+     * 跳过的章节组是旧版本的分析结果、没有指纹文件时，以当前内容补写指纹，下次运行时能发现原文的修改
+     */
+    private void adoptFingerprints(ChapterGroup chapterGroup, Set<String> analysisFileNames) {
+        if (analysisFileNames.contains(chapterGroup.getFingerprintFileName())) {
+            return;
+        }
+        try {
+            ChapterFingerprints.write(chapterGroup, Configuration.analysisResultsDirPath);
+        } catch (Exception e) {
+            logger.warn("补写章节组{}的指纹失败", chapterGroup.getChapterGroupId(), e);
+        }
+    }
+    
     /**
      * 处理单个章节组
      * 
@@ -144,62 +287,258 @@ public class AnalysisProcessor {
         logger.info("开始处理章节组: {}（第{}章-第{}章）", 
                 chapterGroup.getChapterGroupId(), chapterGroup.getStartChapterNumber(), chapterGroup.getEndChapterNumber());
         
-        // 计算预期章节数量
-        int expectedChapterCount = chapterGroup.getEndChapterNumber() - chapterGroup.getStartChapterNumber() + 1;
+        String markdownResult;
+        if (isOversizeChapter(chapterGroup)) {
+            markdownResult = analyzeChapterInParts(chapterGroup);
+        } else {
+            markdownResult = analyze(chapterGroup, expectedChapterCount(chapterGroup));
+        }
+        if (markdownResult == null) {
+            return null;
+        }
+        return saveResult(chapterGroup, markdownResult);
+    }
+    
+    /**
+     * 异步处理单个章节组
+     * 
+     * @param chapterGroup 章节组
+     * @param worker 执行验证和保存的线程池
+     * @return 完成时给出保存的结果文件路径的Future，处理失败时给出null
+     */
+    private CompletableFuture<String> processChapterGroupAsync(ChapterGroup chapterGroup, ExecutorService worker) {
+        logger.info("开始处理章节组: {}（第{}章-第{}章）", 
+                chapterGroup.getChapterGroupId(), chapterGroup.getStartChapterNumber(), chapterGroup.getEndChapterNumber());
         
+        CompletableFuture<String> analysis;
+        if (isOversizeChapter(chapterGroup)) {
+            analysis = analyzeChapterInPartsAsync(chapterGroup, worker);
+        } else {
+            ApiRequest request = new ApiRequest(Configuration.getPrompt(), chapterGroup);
+            analysis = analyzeAsync(chapterGroup, expectedChapterCount(chapterGroup), request, 0, worker);
+        }
+        return analysis.thenApplyAsync(markdownResult -> markdownResult == null ? null : saveResult(chapterGroup, markdownResult),
+                worker);
+    }
+    
+    // 按token预算分组时，超出预算的章节不会与其他章节放在同一组，只需检查单章的章节组
+    private boolean isOversizeChapter(ChapterGroup chapterGroup) {
+        return maxRequestTokens > 0 && chapterGroup.getChapterCount() == 1
+                && chapterGroup.estimateTokens(tokenEstimator) > maxRequestTokens;
+    }
+    
+    private int expectedChapterCount(ChapterGroup chapterGroup) {
+        return chapterGroup.getEndChapterNumber() - chapterGroup.getStartChapterNumber() + 1;
+    }
+    
+    /**
+     * 保存章节组的分析结果
+     * 
+     * @return 保存的结果文件路径，保存失败时返回null
+     */
+    private String saveResult(ChapterGroup chapterGroup, String markdownResult) {
+        String resultFilePath = resultSaver.saveChapterGroupResult(chapterGroup, markdownResult, outputDirectory);
+        if (resultFilePath != null) {
+            logger.info("成功保存章节组{}的分析结果: {}", chapterGroup.getChapterGroupId(), resultFilePath);
+            return resultFilePath;
+        } else {
+            logger.error("保存章节组{}的分析结果失败", chapterGroup.getChapterGroupId());
+            return null;
+        }
+    }
+    
+    /**
+     * 调用API分析章节组内容，结果验证不通过时重试
+     * 
+     * @param chapterGroup 章节组
+     * @param expectedChapterCount 预期章节数量
+     * @return 验证通过的分析结果，达到最大重试次数时返回null
+     */
+    private String analyze(ChapterGroup chapterGroup, int expectedChapterCount) {
         // 创建API请求
-        ApiRequest request = new ApiRequest(Configuration.getPrompt(),chapterGroup.getContent());
-        int retryCount = 0;
+        ApiRequest request = new ApiRequest(Configuration.getPrompt(), chapterGroup);
         // 尝试调用API并验证结果
-        for (; retryCount <= MAX_RETRY_COUNT; retryCount++) {
+        for (int retryCount = 0; retryCount <= MAX_RETRY_COUNT; retryCount++) {
             if (retryCount > 0) {
                 logger.info("第{}次重试处理章节组: {}", retryCount, chapterGroup.getChapterGroupId());
             }
             
             // 调用API
             ApiResponse response = apiClient.analyzeChapterGroup(request);
-            
-            // 检查API调用是否成功
-            if (!response.isSuccess()) {
-                logger.error("API调用失败: {}", response.errorMessage());
-                if (retryCount < MAX_RETRY_COUNT) {
-                    continue;
-                } else {
-                    logger.error("达到最大重试次数，放弃处理章节组: {}", chapterGroup.getChapterGroupId());
-                    return null;
-                }
-            }
-            
-            // 验证结果
-            String markdownResult = response.responseBody();
-            boolean isValid = validator.validateResult(markdownResult, expectedChapterCount);
-            
-            if (isValid) {
-                logger.info("章节组{}验证通过", chapterGroup.getChapterGroupId());
-                
-                // 保存结果
-                String resultFilePath = resultSaver.saveChapterGroupResult(chapterGroup, markdownResult, outputDirectory);
-                if (resultFilePath != null) {
-                    logger.info("成功保存章节组{}的分析结果: {}", chapterGroup.getChapterGroupId(), resultFilePath);
-                    return resultFilePath;
-                } else {
-                    logger.error("保存章节组{}的分析结果失败", chapterGroup.getChapterGroupId());
-                    return null;
-                }
-            } else {
-                logger.warn("章节组{}验证失败: 预期章节数量{}, 实际解析出的章节数量不匹配", 
-                        chapterGroup.getChapterGroupId(), expectedChapterCount);
-                logger.warn("GPT API返回内容: {}",markdownResult);
-                
-                if (retryCount < MAX_RETRY_COUNT) {
-                    logger.info("将进行第{}次重试", retryCount + 1);
-                } else {
-                    logger.error("达到最大重试次数，放弃处理章节组: {}", chapterGroup.getChapterGroupId());
-                    return null;
-                }
+            if (isAccepted(chapterGroup, expectedChapterCount, request, response)) {
+                return response.responseBody();
             }
         }
         
+        logger.error("达到最大重试次数，放弃处理章节组: {}", chapterGroup.getChapterGroupId());
         return null;
     }
+    
+    /**
+     * {@link #analyze}的异步版本，每次重试在上一次响应到达后发起
+     * 
+     * @param chapterGroup 章节组
+     * @param expectedChapterCount 预期章节数量
+     * @param request API请求
+     * @param retryCount 已重试的次数
+     * @param worker 执行验证的线程池，响应在HTTP线程上到达
+     * @return 完成时给出验证通过的分析结果的Future，达到最大重试次数时给出null
+     */
+    private CompletableFuture<String> analyzeAsync(ChapterGroup chapterGroup, int expectedChapterCount,
+                                                   ApiRequest request, int retryCount, ExecutorService worker) {
+        if (retryCount > 0) {
+            logger.info("第{}次重试处理章节组: {}", retryCount, chapterGroup.getChapterGroupId());
+        }
+        return apiClient.analyzeChapterGroupAsync(request).thenComposeAsync(response -> {
+            if (isAccepted(chapterGroup, expectedChapterCount, request, response)) {
+                return CompletableFuture.completedFuture(response.responseBody());
+            }
+            if (retryCount < MAX_RETRY_COUNT) {
+                return analyzeAsync(chapterGroup, expectedChapterCount, request, retryCount + 1, worker);
+            }
+            logger.error("达到最大重试次数，放弃处理章节组: {}", chapterGroup.getChapterGroupId());
+            return CompletableFuture.completedFuture(null);
+        }, worker);
+    }
+    
+    /**
+     * 检查API调用是否成功且结果通过验证，验证不通过时通知API客户端丢弃该响应
+     */
+    private boolean isAccepted(ChapterGroup chapterGroup, int expectedChapterCount, ApiRequest request, ApiResponse response) {
+        // 检查API调用是否成功
+        if (!response.isSuccess()) {
+            logger.error("API调用失败: {}", response.errorMessage());
+            return false;
+        }
+        
+        // 被截断的输出不完整，即使章节数量凑巧匹配也不采用
+        if (response.isTruncated()) {
+            logger.warn("章节组{}的输出被截断，结束原因: {}", chapterGroup.getChapterGroupId(), response.finishReason());
+            apiClient.discardResponse(request);
+            return false;
+        }
+        
+        // 验证结果
+        String markdownResult = response.responseBody();
+        if (validator.validateResult(markdownResult, expectedChapterCount)) {
+            logger.info("章节组{}验证通过", chapterGroup.getChapterGroupId());
+            return true;
+        }
+        logger.warn("章节组{}验证失败: 预期章节数量{}, 实际解析出的章节数量不匹配", 
+                chapterGroup.getChapterGroupId(), expectedChapterCount);
+        logger.warn("GPT API返回内容: {}",markdownResult);
+        apiClient.discardResponse(request);
+        return false;
+    }
+    
+    /**
+     * 将超出token预算的单章拆分成若干部分并发分析，再拼接成一章的分析结果。
+     * 各部分在独立的线程池中分析，避免占满章节组线程池后互相等待
+     * 
+     * @param chapterGroup 只包含一章的章节组
+     * @return 拼接后的分析结果，任一部分分析失败时返回null
+     */
+    private String analyzeChapterInParts(ChapterGroup chapterGroup) {
+        List<ChapterGroup> partGroups = splitIntoPartGroups(chapterGroup);
+        
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(partGroups.size(), THREAD_COUNT));
+        try {
+            List<CompletableFuture<String>> futures = new ArrayList<>();
+            for (ChapterGroup partGroup : partGroups) {
+                futures.add(CompletableFuture.supplyAsync(() -> analyze(partGroup, 1), executor));
+            }
+            return stitchPartFutures(chapterGroup, futures);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    /**
+     * {@link #analyzeChapterInParts}的异步版本，各部分的请求同时发出
+     * 
+     * @param chapterGroup 只包含一章的章节组
+     * @param worker 执行验证的线程池
+     * @return 完成时给出拼接后的分析结果的Future，任一部分分析失败时给出null
+     */
+    private CompletableFuture<String> analyzeChapterInPartsAsync(ChapterGroup chapterGroup, ExecutorService worker) {
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (ChapterGroup partGroup : splitIntoPartGroups(chapterGroup)) {
+            futures.add(analyzeAsync(partGroup, 1, new ApiRequest(Configuration.getPrompt(), partGroup), 0, worker));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenApply(ignored -> stitchPartFutures(chapterGroup, futures));
+    }
+    
+    /**
+     * 将只包含一章的章节组拆分成若干部分，每部分作为一个章节组
+     */
+    private List<ChapterGroup> splitIntoPartGroups(ChapterGroup chapterGroup) {
+        Chapter chapter = chapterGroup.getChapters().get(0);
+        List<Chapter> parts = ChapterSplitter.splitChapterIntoParts(chapter, maxRequestTokens, tokenEstimator);
+        logger.info("第{}章超出单次请求的token预算，拆分为{}部分分析", chapter.getChapterNumber(), parts.size());
+        
+        List<ChapterGroup> partGroups = new ArrayList<>();
+        for (Chapter part : parts) {
+            ChapterGroup partGroup = new ChapterGroup(chapterGroup.getChapterGroupId(),
+                    part.getChapterNumber(), part.getChapterNumber());
+            partGroup.setTextNormalizer(chapterGroup.getTextNormalizer());
+            partGroup.addChapter(part);
+            partGroups.add(partGroup);
+        }
+        return partGroups;
+    }
+    
+    /**
+     * 等待各部分的分析结果并拼接，任一部分分析失败时返回null
+     */
+    private String stitchPartFutures(ChapterGroup chapterGroup, List<CompletableFuture<String>> futures) {
+        Chapter chapter = chapterGroup.getChapters().get(0);
+        List<String> partResults = new ArrayList<>();
+        for (CompletableFuture<String> future : futures) {
+            String partResult = future.join();
+            if (partResult == null) {
+                logger.error("第{}章的部分内容分析失败，放弃处理章节组: {}",
+                        chapter.getChapterNumber(), chapterGroup.getChapterGroupId());
+                return null;
+            }
+            partResults.add(partResult);
+        }
+        return stitchPartResults(chapter, partResults);
+    }
+    
+    /**
+     * 拼接一章各部分的分析结果，以章节标题开头，各部分依次作为小节
+     * 
+     * @param chapter 原章节
+     * @param partResults 各部分的分析结果，按顺序排列
+     * @return 拼接后的Markdown分析结果
+     */
+    static String stitchPartResults(Chapter chapter, List<String> partResults) {
+        StringBuilder stitched = new StringBuilder();
+        stitched.append("**").append(chapter.getChapterTitle()).append("**\n\n");
+        for (int k = 0; k < partResults.size(); k++) {
+            String text = ResultSaver.extractMarkdown(partResults.get(k));
+            stitched.append("### 第").append(k + 1).append('/').append(partResults.size()).append("部分\n\n");
+            if (text != null) {
+                text = stripChapterHeading(text.strip(), chapter.getChapterNumber());
+                if (!text.isEmpty()) {
+                    stitched.append(text).append("\n\n");
+                }
+            }
+        }
+        return stitched.toString();
+    }
+    
+    /**
+     * 去掉一部分分析结果开头的章节标题行（如"**第5章 长章（1/2）**"），拼接后每章只保留一个标题
+     */
+    private static String stripChapterHeading(String text, int chapterNumber) {
+        int lineEnd = text.indexOf('\n');
+        String firstLine = lineEnd < 0 ? text : text.substring(0, lineEnd);
+        Pattern heading = Pattern.compile("^[#*\\s]*第\\s*" + chapterNumber + "\\s*章.*$");
+        if (!heading.matcher(firstLine).matches()) {
+            return text;
+        }
+        return lineEnd < 0 ? "" : text.substring(lineEnd + 1).strip();
+    }
 }
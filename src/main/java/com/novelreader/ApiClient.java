@@ -1,5 +1,7 @@
 package com.novelreader;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * API客户端接口，定义统一的API调用方法
  */
@@ -11,9 +13,57 @@ public interface ApiClient {
      */
     ApiResponse analyzeChapterGroup(ApiRequest request);
     
+    /**
+     * 异步分析章节组内容，等待限流许可和响应时不占用线程。
+     * 默认在公共线程池中调用同步方法，HTTP客户端应覆盖为真正的异步实现
+     * @param request API请求
+     * @return 完成时给出API响应的Future，调用失败时给出失败的响应而不是异常完成
+     */
+    default CompletableFuture<ApiResponse> analyzeChapterGroupAsync(ApiRequest request) {
+        return CompletableFuture.supplyAsync(() -> analyzeChapterGroup(request));
+    }
+    
+    /**
+     * 通知客户端该请求的响应没有通过验证，缓存响应的客户端应丢弃它，默认不做任何事
+     * @param request API请求
+     */
+    default void discardResponse(ApiRequest request) {
+    }
+    
     /**
      * 获取API提供商名称
      * @return API提供商名称
      */
     String getProviderName();
+    
+    /**
+     * 获取使用的模型名称，用于区分缓存的响应
+     * @return 模型名称，未知时返回空字符串
+     */
+    default String getModelName() {
+        return "";
+    }
+    
+    /**
+     * 预热到API主机的连接，默认不做任何事
+     */
+    default void warmUp() {
+    }
+    
+    /**
+     * 获取当前允许同时进行的请求数
+     * @return 并发上限，不限制时返回0
+     */
+    default int getConcurrencyLimit() {
+        return 0;
+    }
+    
+    /**
+     * 在包装链中查找指定类型的客户端，包装其他客户端的实现应在自身不是该类型时继续查找被包装的客户端
+     * @param type 客户端类型
+     * @return 找到的客户端，没有时返回null
+     */
+    default <T extends ApiClient> T unwrap(Class<T> type) {
+        return type.isInstance(this) ? type.cast(this) : null;
+    }
 }
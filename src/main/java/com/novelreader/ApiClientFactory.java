@@ -3,6 +3,9 @@ package com.novelreader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 /**
  * API客户端工厂类，负责创建不同类型的API客户端
  */
@@ -29,11 +32,44 @@ public class ApiClientFactory {
     }
     
     /**
-     * 使用当前配置的提供商创建API客户端
+     * 使用当前配置的提供商创建API客户端，配置中开启响应缓存时包装为带缓存的客户端。
+     * 配置为录制时记录每次调用，配置为回放时直接返回录制的响应，不调用API。
+     * 开启自适应并发时，在实际调用API的客户端前限制同时进行的请求数，缓存命中的请求不占用并发
      * @param rateLimiter 速率限制器
      * @return API客户端
      */
     public static ApiClient createApiClient(RateLimiter rateLimiter) {
-        return createApiClient(Configuration.getCurrentProvider(), rateLimiter);
+        ApiClient apiClient = createApiClient(Configuration.getCurrentProvider(), rateLimiter);
+        Path cassettePath = Paths.get(Configuration.getCassetteFile());
+        switch (Configuration.getCassetteMode()) {
+            case "replay":
+                logger.info("回放录制的API调用: {}", cassettePath);
+                return new ReplayApiClient(cassettePath, apiClient.getProviderName(), apiClient.getModelName(),
+                        ReplayApiClient.LatencyModel.parse(Configuration.getCassetteLatency()));
+            case "record":
+                logger.info("录制API调用到: {}", cassettePath);
+                // 录制在缓存之外，缓存命中的响应也会录制
+                return new RecordingApiClient(withCache(withAdaptiveConcurrency(apiClient)), cassettePath);
+            case "off":
+                return withCache(withAdaptiveConcurrency(apiClient));
+            default:
+                throw new IllegalArgumentException("不支持的录制回放模式: " + Configuration.getCassetteMode());
+        }
+    }
+    
+    private static ApiClient withAdaptiveConcurrency(ApiClient apiClient) {
+        if (Configuration.isAdaptiveConcurrencyEnabled()) {
+            return new AdaptiveConcurrencyApiClient(apiClient, Configuration.getConcurrencyInitialLimit(),
+                    Configuration.getConcurrencyMinLimit(), Configuration.getConcurrencyMaxLimit());
+        }
+        return apiClient;
+    }
+    
+    private static ApiClient withCache(ApiClient apiClient) {
+        if (Configuration.isResponseCacheEnabled()) {
+            return new CachingApiClient(apiClient, Paths.get(Configuration.getResponseCacheDirectory()),
+                    Configuration.getResponseCacheMaxBytes());
+        }
+        return apiClient;
     }
 }
@@ -6,12 +6,26 @@ package com.novelreader;
 public class ApiRequest {
     private String prompt;
     private String chapterGroupContent;
+    // 请求分析的章节范围，用于流式输出的格式检查，0表示未知
+    private int startChapterNumber;
+    private int endChapterNumber;
+    // 已编码的请求体，重试时复用
+    private String encodedBodyKey;
+    private RequestBodyWriter.Body encodedBody;
+    // 最近一次调用等待限流许可的时间，自适应并发从响应时间中扣除
+    private volatile long permitWaitNanos;
     
     public ApiRequest(String prompt, String chapterGroupContent) {
         this.prompt = prompt;
         this.chapterGroupContent = chapterGroupContent;
     }
     
+    public ApiRequest(String prompt, ChapterGroup chapterGroup) {
+        this(prompt, chapterGroup.getContent());
+        this.startChapterNumber = chapterGroup.getStartChapterNumber();
+        this.endChapterNumber = chapterGroup.getEndChapterNumber();
+    }
+    
     // Getters and Setters
     public String getPrompt() {
         return prompt;
@@ -19,6 +33,8 @@ public class ApiRequest {
     
     public void setPrompt(String prompt) {
         this.prompt = prompt;
+        this.encodedBody = null;
+        this.encodedBodyKey = null;
     }
     
     public String getChapterGroupContent() {
@@ -27,5 +43,64 @@ public class ApiRequest {
     
     public void setChapterGroupContent(String chapterGroupContent) {
         this.chapterGroupContent = chapterGroupContent;
+        this.encodedBody = null;
+        this.encodedBodyKey = null;
+    }
+    
+    public int getStartChapterNumber() {
+        return startChapterNumber;
+    }
+    
+    public void setStartChapterNumber(int startChapterNumber) {
+        this.startChapterNumber = startChapterNumber;
+    }
+    
+    public int getEndChapterNumber() {
+        return endChapterNumber;
+    }
+    
+    public void setEndChapterNumber(int endChapterNumber) {
+        this.endChapterNumber = endChapterNumber;
+    }
+    
+    /**
+     * @return 最近一次调用等待限流许可的纳秒数，没有经过限流器时为0
+     */
+    public long getPermitWaitNanos() {
+        return permitWaitNanos;
+    }
+    
+    public void setPermitWaitNanos(long permitWaitNanos) {
+        this.permitWaitNanos = permitWaitNanos;
+    }
+    
+    /**
+     * 估算请求输入的token数，用于按每分钟token数限流
+     * @param tokenEstimator token数估算器
+     * @return 提示词和章节组内容的token数
+     */
+    public long estimateInputTokens(TokenEstimator tokenEstimator) {
+        long count = 0;
+        if (prompt != null) {
+            count += tokenEstimator.estimate(prompt);
+        }
+        if (chapterGroupContent != null) {
+            count += tokenEstimator.estimate(chapterGroupContent);
+        }
+        return count;
+    }
+    
+    /**
+     * 获取已编码的请求体
+     * @param bodyKey 请求体的格式
+     * @return 格式相同时返回已编码的请求体，否则返回null
+     */
+    public RequestBodyWriter.Body getEncodedBody(String bodyKey) {
+        return bodyKey.equals(encodedBodyKey) ? encodedBody : null;
+    }
+    
+    public void setEncodedBody(String bodyKey, RequestBodyWriter.Body encodedBody) {
+        this.encodedBodyKey = bodyKey;
+        this.encodedBody = encodedBody;
     }
 }
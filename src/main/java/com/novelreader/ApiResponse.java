@@ -2,22 +2,58 @@ package com.novelreader;
 
 /**
  * API响应对象，封装API响应结果
+ * <p>
+ * finishReason和usage是API返回的结束原因和token用量，API没有返回时为null。
+ * statusCode是HTTP状态码，没有收到响应（如超时、中断）时为0。
  */
 public record ApiResponse (
      boolean success,
      String responseBody,
-     String errorMessage
+     String errorMessage,
+     String finishReason,
+     Usage usage,
+     int statusCode
 ) {
   public boolean isSuccess() {
     return success;
   }
 
   public static ApiResponse success(String responseBody) {
-    return new ApiResponse(true, responseBody, null);
+    return success(responseBody, null, null);
+  }
+
+  public static ApiResponse success(String responseBody, String finishReason, Usage usage) {
+    return new ApiResponse(true, responseBody, null, finishReason, usage, 200);
   }
 
   public static ApiResponse failure(String errorMessage) {
-    return new ApiResponse(false, null, errorMessage);
+    return failure(errorMessage, 0);
   }
 
+  public static ApiResponse failure(String errorMessage, int statusCode) {
+    return new ApiResponse(false, null, errorMessage, null, null, statusCode);
+  }
+
+  /**
+   * @return 输出是否因达到最大输出token数而被截断（OpenAI格式为length，Gemini为MAX_TOKENS）
+   */
+  public boolean isTruncated() {
+    return "length".equals(finishReason) || "MAX_TOKENS".equals(finishReason);
+  }
+
+  /**
+   * @return 是否是API过载（429或503），应降低并发
+   */
+  public boolean isOverloaded() {
+    return statusCode == 429 || statusCode == 503;
+  }
+
+  /**
+   * 一次请求的token用量
+   * @param promptTokens 输入的token数
+   * @param completionTokens 输出的token数
+   * @param totalTokens 总token数
+   */
+  public record Usage(long promptTokens, long completionTokens, long totalTokens) {
+  }
 }
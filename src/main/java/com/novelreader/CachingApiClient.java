@@ -0,0 +1,255 @@
+package com.novelreader;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 带磁盘缓存的API客户端，包装任意ApiClient
+ * <p>
+ * 以请求指纹（提供商、模型、提示词和章节组内容的SHA-256）作为键，成功的响应压缩后保存在缓存目录中，
+ * 崩溃后重新运行或调整分组后，内容相同的章节组直接使用缓存的响应，不再调用API，也不占用限流许可。
+ * 缓存总大小超出上限时按最近使用时间淘汰。
+ * <p>
+ * 响应没有通过验证时调用方通过{@link #discardResponse}丢弃对应的缓存条目，重试时重新调用API，
+ * 所有重试都失败时也不会在下次运行时用到验证不通过的响应。
+ */
+public class CachingApiClient implements ApiClient {
+    private static final Logger logger = LoggerFactory.getLogger(CachingApiClient.class);
+    private static final String ENTRY_SUFFIX = ".json.gz";
+
+    private final ApiClient delegate;
+    private final Path cacheDirectory;
+    private final long maxBytes;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    // 按最近使用顺序排列的缓存条目及其大小
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param delegate 实际调用API的客户端
+     * @param cacheDirectory 缓存目录
+     * @param maxBytes 缓存的最大总字节数
+     */
+    public CachingApiClient(ApiClient delegate, Path cacheDirectory, long maxBytes) {
+        this.delegate = delegate;
+        this.cacheDirectory = cacheDirectory;
+        this.maxBytes = maxBytes;
+        loadEntries();
+    }
+
+    @Override
+    public ApiResponse analyzeChapterGroup(ApiRequest request) {
+        String key = RequestFingerprint.of(getProviderName(), getModelName(), request);
+        ApiResponse cached = lookup(key);
+        if (cached != null) {
+            return cached;
+        }
+        return store(key, delegate.analyzeChapterGroup(request));
+    }
+
+    @Override
+    public CompletableFuture<ApiResponse> analyzeChapterGroupAsync(ApiRequest request) {
+        String key = RequestFingerprint.of(getProviderName(), getModelName(), request);
+        ApiResponse cached = lookup(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return delegate.analyzeChapterGroupAsync(request).thenApply(response -> store(key, response));
+    }
+
+    /**
+     * 删除该请求的缓存条目，之后的同一请求重新调用API
+     */
+    @Override
+    public void discardResponse(ApiRequest request) {
+        String key = RequestFingerprint.of(getProviderName(), getModelName(), request);
+        boolean cached;
+        synchronized (entries) {
+            cached = entries.containsKey(key);
+        }
+        if (cached) {
+            logger.info("Discarding rejected {} response {}", getProviderName(), key.substring(0, 12));
+            remove(key);
+        }
+        delegate.discardResponse(request);
+    }
+
+    @Override
+    public String getProviderName() {
+        return delegate.getProviderName();
+    }
+
+    @Override
+    public String getModelName() {
+        return delegate.getModelName();
+    }
+
+    @Override
+    public void warmUp() {
+        delegate.warmUp();
+    }
+
+    @Override
+    public int getConcurrencyLimit() {
+        return delegate.getConcurrencyLimit();
+    }
+
+    @Override
+    public <T extends ApiClient> T unwrap(Class<T> type) {
+        return type.isInstance(this) ? type.cast(this) : delegate.unwrap(type);
+    }
+
+    /**
+     * @return 本次运行的缓存命中次数
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return 本次运行的缓存未命中次数
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private ApiResponse lookup(String key) {
+        Path entryPath = entryPath(key);
+        synchronized (entries) {
+            // get会把条目移到最近使用的一端，containsKey不会
+            if (entries.get(key) == null) {
+                misses.increment();
+                return null;
+            }
+        }
+        try (InputStream input = new GZIPInputStream(Files.newInputStream(entryPath))) {
+            CacheEntry entry = objectMapper.readValue(input, CacheEntry.class);
+            Files.setLastModifiedTime(entryPath, FileTime.fromMillis(System.currentTimeMillis()));
+            hits.increment();
+            logger.info("Cache hit for {} request {}", getProviderName(), key.substring(0, 12));
+            return ApiResponse.success(entry.responseBody(), entry.finishReason(), entry.usage());
+        } catch (IOException e) {
+            logger.warn("Discarding unreadable cache entry {}: {}", entryPath, e.getMessage());
+            remove(key);
+            misses.increment();
+            return null;
+        }
+    }
+
+    private ApiResponse store(String key, ApiResponse response) {
+        if (response == null || !response.isSuccess()) {
+            return response;
+        }
+        Path entryPath = entryPath(key);
+        try {
+            Files.createDirectories(cacheDirectory);
+            Path tempPath = Files.createTempFile(cacheDirectory, key, ".tmp");
+            try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(tempPath))) {
+                objectMapper.writeValue(output, new CacheEntry(response.responseBody(), response.finishReason(), response.usage()));
+            }
+            Files.move(tempPath, entryPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            long size = Files.size(entryPath);
+            synchronized (entries) {
+                Long previous = entries.put(key, size);
+                totalBytes += size - (previous == null ? 0 : previous);
+                evict();
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to cache {} response {}: {}", getProviderName(), key.substring(0, 12), e.getMessage());
+        }
+        return response;
+    }
+
+    // 持有entries锁时调用，淘汰最久未使用的条目直到不超过上限
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            try {
+                Files.deleteIfExists(entryPath(eldest.getKey()));
+            } catch (IOException e) {
+                logger.warn("Failed to evict cache entry {}: {}", eldest.getKey(), e.getMessage());
+            }
+            totalBytes -= eldest.getValue();
+            iterator.remove();
+        }
+    }
+
+    private void remove(String key) {
+        synchronized (entries) {
+            Long size = entries.remove(key);
+            if (size != null) {
+                totalBytes -= size;
+            }
+        }
+        try {
+            Files.deleteIfExists(entryPath(key));
+        } catch (IOException e) {
+            logger.warn("Failed to delete cache entry {}: {}", key, e.getMessage());
+        }
+    }
+
+    // 按最后使用时间从旧到新载入已有的缓存条目
+    private void loadEntries() {
+        if (!Files.isDirectory(cacheDirectory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.list(cacheDirectory)) {
+            List<Path> entryPaths = paths.filter(path -> path.getFileName().toString().endsWith(ENTRY_SUFFIX))
+                    .sorted(Comparator.comparing(CachingApiClient::lastModified))
+                    .collect(Collectors.toList());
+            synchronized (entries) {
+                for (Path path : entryPaths) {
+                    String fileName = path.getFileName().toString();
+                    long size = Files.size(path);
+                    entries.put(fileName.substring(0, fileName.length() - ENTRY_SUFFIX.length()), size);
+                    totalBytes += size;
+                }
+                evict();
+            }
+            logger.info("Loaded {} cached responses ({} KB) from {}", entries.size(), totalBytes / 1024, cacheDirectory);
+        } catch (IOException e) {
+            logger.warn("Failed to load response cache from {}: {}", cacheDirectory, e.getMessage());
+        }
+    }
+
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private Path entryPath(String key) {
+        return cacheDirectory.resolve(key + ENTRY_SUFFIX);
+    }
+
+    /**
+     * 缓存文件的内容
+     */
+    private record CacheEntry(String responseBody, String finishReason, ApiResponse.Usage usage) {
+    }
+}
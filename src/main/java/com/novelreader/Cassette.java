@@ -0,0 +1,82 @@
+package com.novelreader;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 录制的API调用记录文件，每行一个JSON格式的调用记录，按调用完成的顺序追加
+ */
+public class Cassette {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private Cassette() {
+    }
+
+    /**
+     * 一次API调用的记录
+     * @param fingerprint 请求指纹
+     * @param providerName API提供商名称
+     * @param modelName 模型名称
+     * @param startChapterNumber 请求的起始章节号
+     * @param endChapterNumber 请求的结束章节号
+     * @param latencyMillis 调用耗时（毫秒）
+     * @param success 是否成功
+     * @param responseBody 响应内容
+     * @param errorMessage 错误信息
+     * @param finishReason 结束原因
+     * @param usage token用量
+     * @param statusCode HTTP状态码
+     */
+    public record Entry(String fingerprint, String providerName, String modelName,
+                        int startChapterNumber, int endChapterNumber, long latencyMillis,
+                        boolean success, String responseBody, String errorMessage,
+                        String finishReason, ApiResponse.Usage usage, int statusCode) {
+
+        /**
+         * @return 记录的API响应
+         */
+        public ApiResponse toApiResponse() {
+            return new ApiResponse(success, responseBody, errorMessage, finishReason, usage, statusCode);
+        }
+    }
+
+    /**
+     * 追加一条记录，文件不存在时创建
+     * @param path 记录文件
+     * @param entry 调用记录
+     */
+    public static synchronized void append(Path path, Entry entry) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Files.writeString(path, OBJECT_MAPPER.writeValueAsString(entry) + "\n", StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * 读取全部记录，跳过空行
+     * @param path 记录文件
+     * @return 按录制顺序排列的调用记录
+     */
+    public static List<Entry> read(Path path) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    entries.add(OBJECT_MAPPER.readValue(line, Entry.class));
+                }
+            }
+        }
+        return entries;
+    }
+}
@@ -14,6 +14,15 @@ public class Chapter {
         this.chapterContent = chapterContent;
     }
     
+    /**
+     * 估算章节标题和正文的token数
+     * @param tokenEstimator token数估算器
+     * @return 估算的token数
+     */
+    public long estimateTokens(TokenEstimator tokenEstimator) {
+        return tokenEstimator.estimate(getChapterTitle()) + tokenEstimator.estimate(getChapterContent());
+    }
+    
     // Getters and Setters
     public int getChapterNumber() {
         return chapterNumber;
@@ -0,0 +1,106 @@
+package com.novelreader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 章节内容指纹，使用64位FNV-1a哈希。每个分析结果旁保存一份章节组的指纹文件，
+ * 原文修订后只有指纹变化的章节组需要重新分析
+ */
+public class ChapterFingerprints {
+    private static final Logger logger = LoggerFactory.getLogger(ChapterFingerprints.class);
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private ChapterFingerprints() {}
+
+    /**
+     * 计算章节标题和正文的64位哈希
+     * @param chapter 章节
+     * @return 哈希值
+     */
+    public static long hash(Chapter chapter) {
+        long hash = hash(FNV_OFFSET_BASIS, chapter.getChapterTitle());
+        hash = (hash ^ '\n') * FNV_PRIME;
+        return hash(hash, chapter.getChapterContent());
+    }
+
+    private static long hash(long hash, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            hash = (hash ^ (c & 0xFF)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * 保存章节组的指纹文件，每行为"章节号 十六进制哈希"
+     * @param chapterGroup 章节组
+     * @param outputDirectory 输出目录
+     */
+    public static void write(ChapterGroup chapterGroup, String outputDirectory) {
+        Path path = Paths.get(outputDirectory, chapterGroup.getFingerprintFileName());
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            for (Chapter chapter : chapterGroup.getChapters()) {
+                writer.write(chapter.getChapterNumber() + " " + Long.toHexString(hash(chapter)));
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            logger.error("Error writing chapter fingerprints: {}", path, e);
+            throw new RuntimeException("Error writing chapter fingerprints", e);
+        }
+    }
+
+    /**
+     * 判断章节组的分析结果是否仍与原文一致，不修改任何文件。
+     * 旧版本的结果没有指纹文件，视为一致，由调用方以当前内容补写指纹
+     * @param chapterGroup 章节组
+     * @param outputDirectory 分析结果所在目录
+     * @return 所有章节的指纹都未变化或没有指纹文件时返回true
+     */
+    public static boolean isUpToDate(ChapterGroup chapterGroup, String outputDirectory) {
+        Path path = Paths.get(outputDirectory, chapterGroup.getFingerprintFileName());
+        if (!Files.exists(path)) {
+            return true;
+        }
+
+        Map<Integer, Long> savedHashes = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf(' ');
+                if (separator > 0) {
+                    savedHashes.put(Integer.parseInt(line.substring(0, separator)),
+                            Long.parseUnsignedLong(line.substring(separator + 1).trim(), 16));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            logger.warn("Unreadable chapter fingerprints, re-analyzing group {}: {}", chapterGroup.getChapterGroupId(), path, e);
+            return false;
+        }
+
+        if (savedHashes.size() != chapterGroup.getChapterCount()) {
+            return false;
+        }
+        boolean upToDate = true;
+        for (Chapter chapter : chapterGroup.getChapters()) {
+            Long savedHash = savedHashes.get(chapter.getChapterNumber());
+            if (savedHash == null || savedHash != hash(chapter)) {
+                logger.info("Chapter {} changed since the last analysis", chapter.getChapterNumber());
+                upToDate = false;
+            }
+        }
+        return upToDate;
+    }
+}
@@ -7,10 +7,15 @@ import java.util.List;
  * 表示一组章节，用于API调用
  */
 public class ChapterGroup {
+    // 每章的标题和正文之后各有一个空行
+    private static final String SEPARATOR = "\n\n";
     private int chapterGroupId;
     private int startChapterNumber;
     private int endChapterNumber;
     private List<Chapter> chapters;
+    private TextNormalizer textNormalizer;
+    // 拼接后的内容，第一次使用时生成，重试和多个使用方共用同一份
+    private String content;
     
     public ChapterGroup(int chapterGroupId, int startChapterNumber, int endChapterNumber) {
         this.chapterGroupId = chapterGroupId;
@@ -21,6 +26,7 @@ public class ChapterGroup {
     
     public void addChapter(Chapter chapter) {
         chapters.add(chapter);
+        content = null;
     }
     
     public String getFileName() {
@@ -31,15 +37,74 @@ public class ChapterGroup {
         return String.format("%03d第%d-%d章_分析.json", chapterGroupId, startChapterNumber, endChapterNumber);
     }
     
+    public String getFingerprintFileName() {
+        return String.format("%03d第%d-%d章_分析.hash", chapterGroupId, startChapterNumber, endChapterNumber);
+    }
+    
+    /**
+     * 获取章节组内容，每章依次为标题和（规范化后的）正文。
+     * 内容只生成一次并缓存，章节组分析完成后应调用{@link #clearContent()}释放
+     * @return 章节组内容
+     */
     public String getContent() {
-        StringBuilder content = new StringBuilder();
-        for (Chapter chapter : chapters) {
-            content.append(chapter.getChapterTitle()).append("\n\n");
-            content.append(chapter.getChapterContent()).append("\n\n");
+        String content = this.content;
+        if (content == null) {
+            content = buildContent();
+            this.content = content;
+        }
+        return content;
+    }
+    
+    /**
+     * 释放缓存的内容，再次调用getContent时重新生成
+     */
+    public void clearContent() {
+        content = null;
+    }
+    
+    private String buildContent() {
+        // 先取出所有正文，按总长度一次分配
+        String[] chapterContents = new String[chapters.size()];
+        int length = 0;
+        for (int i = 0; i < chapterContents.length; i++) {
+            Chapter chapter = chapters.get(i);
+            String chapterContent = textNormalizer != null ? textNormalizer.normalize(chapter) : chapter.getChapterContent();
+            chapterContents[i] = chapterContent;
+            length += chapter.getChapterTitle().length() + chapterContent.length() + 2 * SEPARATOR.length();
+        }
+        
+        StringBuilder content = new StringBuilder(length);
+        for (int i = 0; i < chapterContents.length; i++) {
+            content.append(chapters.get(i).getChapterTitle()).append(SEPARATOR);
+            content.append(chapterContents[i]).append(SEPARATOR);
         }
         return content.toString();
     }
     
+    /**
+     * 估算章节组中所有章节原文的token数，包括{@link #getContent()}在标题和正文后加入的空行，
+     * 是规范化后实际提交内容的上限
+     * @param tokenEstimator token数估算器
+     * @return 估算的token数
+     */
+    public long estimateTokens(TokenEstimator tokenEstimator) {
+        long tokens = 0;
+        for (Chapter chapter : chapters) {
+            tokens += estimateTokens(chapter, tokenEstimator);
+        }
+        return tokens;
+    }
+    
+    /**
+     * 估算一章在章节组内容中占用的token数，即标题、正文和其后的空行
+     * @param chapter 章节
+     * @param tokenEstimator token数估算器
+     * @return 估算的token数
+     */
+    public static long estimateTokens(Chapter chapter, TokenEstimator tokenEstimator) {
+        return chapter.estimateTokens(tokenEstimator) + tokenEstimator.estimate(SEPARATOR + SEPARATOR);
+    }
+    
     // Getters and Setters
     public int getChapterGroupId() {
         return chapterGroupId;
@@ -71,6 +136,16 @@ public class ChapterGroup {
     
     public void setChapters(List<Chapter> chapters) {
         this.chapters = chapters;
+        content = null;
+    }
+    
+    public TextNormalizer getTextNormalizer() {
+        return textNormalizer;
+    }
+    
+    public void setTextNormalizer(TextNormalizer textNormalizer) {
+        this.textNormalizer = textNormalizer;
+        content = null;
     }
     
     public int getChapterCount() {
@@ -0,0 +1,199 @@
+package com.novelreader;
+
+/**
+ * 手写的章节标题匹配器，逐字符解析，不分配对象
+ * <p>
+ * 标题必须以"第"开头（允许前导空白），之后是阿拉伯数字、全角数字或中文数字，再跟一个章节单位（默认章、回、节），
+ * 整行长度不超过最大标题长度。正文中的"在第3章里"或以句号结尾的句子不会被识别为标题。
+ */
+public class ChapterHeadingMatcher implements HeadingMatcher {
+    /** 默认的章节单位 */
+    public static final String DEFAULT_UNITS = "章回节";
+    /** 默认的最大标题长度 */
+    public static final int DEFAULT_MAX_TITLE_LENGTH = 50;
+
+    // 章节号上限，防止溢出
+    private static final int MAX_CHAPTER_NUMBER = 100_000_000;
+
+    private final String units;
+    private final int maxTitleLength;
+
+    public ChapterHeadingMatcher() {
+        this(DEFAULT_UNITS, DEFAULT_MAX_TITLE_LENGTH);
+    }
+
+    /**
+     * @param units 可识别的章节单位，例如"章回节"
+     * @param maxTitleLength 最大标题长度（字符数）
+     */
+    public ChapterHeadingMatcher(String units, int maxTitleLength) {
+        this.units = units;
+        this.maxTitleLength = maxTitleLength;
+    }
+
+    @Override
+    public int match(CharSequence line) {
+        int start = 0;
+        int end = line.length();
+        while (start < end && isSpace(line.charAt(start))) {
+            start++;
+        }
+        while (end > start && isSpace(line.charAt(end - 1))) {
+            end--;
+        }
+        if (end - start < 3 || end - start > maxTitleLength || line.charAt(start) != '第') {
+            return NO_MATCH;
+        }
+        // 以句号、逗号结尾的是正文中的句子
+        char last = line.charAt(end - 1);
+        if (last == '。' || last == '，' || last == ',') {
+            return NO_MATCH;
+        }
+
+        int position = start + 1;
+        int number;
+        char first = line.charAt(position);
+        if (digitValue(first) >= 0) {
+            // 阿拉伯数字或全角数字
+            long value = 0;
+            int digit;
+            while (position < end && (digit = digitValue(line.charAt(position))) >= 0) {
+                value = value * 10 + digit;
+                if (value > MAX_CHAPTER_NUMBER) {
+                    return NO_MATCH;
+                }
+                position++;
+            }
+            number = (int) value;
+        } else {
+            int numeralEnd = position;
+            while (numeralEnd < end && isChineseNumeral(line.charAt(numeralEnd))) {
+                numeralEnd++;
+            }
+            if (numeralEnd == position) {
+                return NO_MATCH;
+            }
+            number = parseChineseNumeral(line, position, numeralEnd);
+            position = numeralEnd;
+        }
+        if (number < 0 || position >= end || units.indexOf(line.charAt(position)) < 0) {
+            return NO_MATCH;
+        }
+
+        // 单位之后应为行尾、分隔符或标题文字；"回"、"节"后紧跟汉字时多半是"回合"、"节奏"之类的正文
+        position++;
+        if (position < end && line.charAt(position - 1) != '章' && !isSeparator(line.charAt(position))) {
+            return NO_MATCH;
+        }
+        return number;
+    }
+
+    @Override
+    public int maxTitleLength() {
+        return maxTitleLength;
+    }
+
+    @Override
+    public String requiredText() {
+        return "第";
+    }
+
+    /**
+     * 解析中文数字，支持"一百二十三"、"两千零五"、"十二"以及"一二三"、"一〇二"这类逐位写法
+     * @return 数值，格式不合法时返回-1
+     */
+    static int parseChineseNumeral(CharSequence text, int start, int end) {
+        long total = 0;
+        long section = 0;
+        int digit = -1;
+        boolean positional = false;
+
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            int value = chineseDigitValue(c);
+            if (value >= 0) {
+                if (digit >= 0 && !positional) {
+                    // 连续两个数字：零之后的数字（如"一百零五"）或逐位写法（如"一〇二"）
+                    if (digit == 0) {
+                        digit = value;
+                        continue;
+                    }
+                    if (section != 0 || total != 0) {
+                        return -1;
+                    }
+                    positional = true;
+                }
+                digit = positional ? digit * 10 + value : value;
+                if (digit > MAX_CHAPTER_NUMBER) {
+                    return -1;
+                }
+                continue;
+            }
+            if (positional) {
+                return -1;
+            }
+            int unit = chineseUnitValue(c);
+            if (unit == 10_000) {
+                total = (total + section + Math.max(digit, 0)) * unit;
+                section = 0;
+            } else {
+                // "十二"中的十前面没有数字，按一十处理
+                section += (long) (digit < 0 ? 1 : digit) * unit;
+            }
+            digit = -1;
+            if (total + section > MAX_CHAPTER_NUMBER) {
+                return -1;
+            }
+        }
+        return (int) (total + section + Math.max(digit, 0));
+    }
+
+    private static int digitValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= '０' && c <= '９') {
+            return c - '０';
+        }
+        return -1;
+    }
+
+    private static boolean isChineseNumeral(char c) {
+        return chineseDigitValue(c) >= 0 || chineseUnitValue(c) > 0;
+    }
+
+    private static int chineseDigitValue(char c) {
+        switch (c) {
+            case '零': case '〇': return 0;
+            case '一': case '壹': return 1;
+            case '二': case '贰': case '两': return 2;
+            case '三': case '叁': return 3;
+            case '四': case '肆': return 4;
+            case '五': case '伍': return 5;
+            case '六': case '陆': return 6;
+            case '七': case '柒': return 7;
+            case '八': case '捌': return 8;
+            case '九': case '玖': return 9;
+            default: return -1;
+        }
+    }
+
+    private static int chineseUnitValue(char c) {
+        switch (c) {
+            case '十': case '拾': return 10;
+            case '百': case '佰': return 100;
+            case '千': case '仟': return 1000;
+            case '万': return 10_000;
+            default: return 0;
+        }
+    }
+
+    private static boolean isSpace(char c) {
+        return c <= ' ' || c == '\u3000' || c == '\u00A0' || c == '\uFEFF';
+    }
+
+    private static boolean isSeparator(char c) {
+        return isSpace(c) || c == '：' || c == ':' || c == '、' || c == '.' || c == '．' || c == '-' || c == '—'
+                || c == '_' || c == '·' || c == '（' || c == '(' || c == '【' || c == '[' || c == '《';
+    }
+}
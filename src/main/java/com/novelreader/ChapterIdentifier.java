@@ -3,20 +3,75 @@ package com.novelreader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ForkJoinPool;
 
 /**
- * 章节识别器，使用正则表达式识别章节标题
+ * 章节识别器，使用章节标题匹配器识别章节标题
  */
 public class ChapterIdentifier {
     private static final Logger logger = LoggerFactory.getLogger(ChapterIdentifier.class);
-    private static final Pattern CHAPTER_PATTERN = Pattern.compile("第(\\d+)章");
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 章节扫描模式
+     */
+    public enum ScanMode {
+        /** 逐行读取文本 */
+        STREAM,
+        /** 内存映射文件，直接在字节缓冲区上定位章节 */
+        MAPPED,
+        /** 内存映射文件，按行边界切分后在ForkJoinPool中并行定位章节 */
+        PARALLEL
+    }
+
+    private final ScanMode scanMode;
+    private final boolean lazyContent;
+    private final HeadingMatcher headingMatcher;
+
+    public ChapterIdentifier() {
+        this(ScanMode.STREAM);
+    }
+
+    public ChapterIdentifier(ScanMode scanMode) {
+        this(scanMode, false);
+    }
+
+    /**
+     * @param scanMode 章节扫描模式
+     * @param lazyContent 是否按需读取章节正文，仅内存映射模式支持
+     */
+    public ChapterIdentifier(ScanMode scanMode, boolean lazyContent) {
+        this(scanMode, lazyContent, new ChapterHeadingMatcher());
+    }
+
+    /**
+     * @param scanMode 章节扫描模式
+     * @param lazyContent 是否按需读取章节正文，仅内存映射模式支持
+     * @param headingMatcher 章节标题匹配器
+     */
+    public ChapterIdentifier(ScanMode scanMode, boolean lazyContent, HeadingMatcher headingMatcher) {
+        if (lazyContent && scanMode == ScanMode.STREAM) {
+            throw new IllegalArgumentException("Lazy chapter content requires a byte-offset scan mode");
+        }
+        this.scanMode = scanMode;
+        this.lazyContent = lazyContent;
+        this.headingMatcher = headingMatcher;
+    }
     
     /**
      * 识别小说文件中的所有章节
@@ -24,25 +79,40 @@ public class ChapterIdentifier {
      * @return 识别出的章节列表
      */
     public List<Chapter> identifyChapters(String filePath) {
+        if (scanMode != ScanMode.STREAM) {
+            ChapterLayout layout = scanLayout(filePath);
+            if (layout != null) {
+                return toChapters(layout);
+            }
+            logger.warn("Charset of {} is not ASCII-compatible, falling back to stream scanning", filePath);
+        }
+
         List<Chapter> chapters = new ArrayList<>();
         
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
+        try (BufferedInputStream input = new BufferedInputStream(new FileInputStream(filePath), STREAM_BUFFER_SIZE)) {
+            // 在同一个流上探测编码，开头的字节留在缓冲区中，不会重复读取文件
+            input.mark(CharsetDetector.SNIFF_BYTES);
+            CharsetDetector.Detection detection = CharsetDetector.detect(ByteBuffer.wrap(input.readNBytes(CharsetDetector.SNIFF_BYTES)));
+            input.reset();
+            input.skipNBytes(detection.bomLength());
+            logger.info("Detected charset {} for {}", detection.charset(), filePath);
+            
+            BufferedReader reader = new BufferedReader(new InputStreamReader(input, CharsetDetector.newDecoder(detection.charset())));
             StringBuilder content = new StringBuilder();
             String line;
             String currentTitle = null;
             int currentChapterNumber = -1;
             
             while ((line = reader.readLine()) != null) {
-                Matcher matcher = CHAPTER_PATTERN.matcher(line);
-                if (matcher.find()) {
+                int chapterNumber = headingMatcher.match(line);
+                if (chapterNumber != HeadingMatcher.NO_MATCH) {
                     // 如果已经有章节内容，保存前一章节
                     if (currentTitle != null) {
                         chapters.add(new Chapter(currentChapterNumber, currentTitle, content.toString().trim()));
                         content = new StringBuilder();
                     }
                     
-                    // 提取章节号
-                    currentChapterNumber = Integer.parseInt(matcher.group(1));
+                    currentChapterNumber = chapterNumber;
                     currentTitle = line.trim();
                     logger.info("Identified chapter: {}", currentTitle);
                 } else if (currentTitle != null) {
@@ -63,4 +133,123 @@ public class ChapterIdentifier {
             throw new RuntimeException("Error reading novel file", e);
         }
     }
+
+    /**
+     * 扫描小说文件的章节布局，只返回章节的字节偏移和长度，不复制章节文本
+     * @param filePath 小说文件路径
+     * @return 章节布局
+     */
+    public ChapterLayout scanChapterLayout(String filePath) {
+        ChapterLayout layout = scanLayout(filePath);
+        if (layout == null) {
+            throw new IllegalStateException("Mapped scanning requires an ASCII-compatible charset: " + filePath);
+        }
+        return layout;
+    }
+
+    /**
+     * 从检查点续读章节布局，只扫描续读章节组及之后追加的内容；
+     * 检查点为null或不再适用（例如文件被替换或截断）时扫描整个文件
+     * @param filePath 小说文件路径
+     * @param checkpoint 上次保存的检查点，可以为null
+     * @return 章节布局，文件编码不兼容ASCII（如UTF-16）时返回null
+     */
+    public ChapterLayout scanChapterLayout(String filePath, IngestionCheckpoint checkpoint) {
+        if (checkpoint != null) {
+            ChapterLayout layout = resumeLayout(filePath, checkpoint);
+            if (layout != null) {
+                return layout;
+            }
+        }
+        return scanLayout(filePath);
+    }
+
+    /**
+     * 从检查点记录的字节偏移开始扫描，文件开头的页不会被读取
+     * @return 章节布局，检查点不适用时返回null
+     */
+    private ChapterLayout resumeLayout(String filePath, IngestionCheckpoint checkpoint) {
+        Path path = Paths.get(filePath);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < checkpoint.getFileSize() || checkpoint.getGroupStartOffset() >= size) {
+                logger.warn("{} is smaller than at the last checkpoint, rescanning the whole file", filePath);
+                return null;
+            }
+            MappedByteBuffer buffer = MappedChapterScanner.map(channel);
+            Charset charset = Charset.forName(checkpoint.getCharset());
+            MappedChapterScanner scanner = new MappedChapterScanner(charset, headingMatcher);
+            ChapterLayout layout = new ChapterLayout(path, charset, scanSpans(scanner, buffer, (int) checkpoint.getGroupStartOffset()));
+            if (!checkpoint.isResumedBy(layout)) {
+                logger.warn("Checkpoint does not match {}, rescanning the whole file", filePath);
+                return null;
+            }
+            logger.info("Resumed {} from chapter {} at offset {}: {} new bytes, {} chapters to process",
+                    filePath, checkpoint.getGroupStartChapterNumber(), checkpoint.getGroupStartOffset(),
+                    size - checkpoint.getFileSize(), layout.size());
+            return layout;
+        } catch (IOException e) {
+            logger.error("Error reading novel file: {}", filePath, e);
+            throw new RuntimeException("Error reading novel file", e);
+        }
+    }
+
+    /**
+     * 内存映射文件，探测编码后扫描章节布局
+     * @return 章节布局，文件编码不兼容ASCII（如UTF-16）时返回null
+     */
+    private ChapterLayout scanLayout(String filePath) {
+        Path path = Paths.get(filePath);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = MappedChapterScanner.map(channel);
+            CharsetDetector.Detection detection = CharsetDetector.detect(buffer);
+            if (!detection.isAsciiCompatible()) {
+                return null;
+            }
+            logger.info("Detected charset {} for {}", detection.charset(), filePath);
+            
+            MappedChapterScanner scanner = new MappedChapterScanner(detection.charset(), headingMatcher);
+            List<ChapterSpan> spans = scanSpans(scanner, buffer, detection.bomLength());
+            logger.info("Total chapters identified: {}", spans.size());
+            return new ChapterLayout(path, detection.charset(), spans);
+        } catch (IOException e) {
+            logger.error("Error reading novel file: {}", filePath, e);
+            throw new RuntimeException("Error reading novel file", e);
+        }
+    }
+
+    private List<ChapterSpan> scanSpans(MappedChapterScanner scanner, ByteBuffer buffer, int from) {
+        return scanMode == ScanMode.PARALLEL
+                ? scanner.scanParallel(buffer, from, ForkJoinPool.commonPool())
+                : scanner.scan(buffer, from);
+    }
+
+    /**
+     * 根据章节布局创建章节列表，按需读取模式下只保留正文的偏移和长度
+     * @param layout 章节布局
+     * @return 章节列表
+     */
+    public List<Chapter> toChapters(ChapterLayout layout) {
+        Path path = layout.sourcePath();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = MappedChapterScanner.map(channel);
+            CharsetDecoder decoder = CharsetDetector.newDecoder(layout.charset());
+            List<Chapter> chapters = new ArrayList<>(layout.size());
+            for (ChapterSpan span : layout.spans()) {
+                String title = MappedChapterScanner.decode(buffer, (int) span.titleOffset(), span.titleLength(), decoder);
+                if (lazyContent) {
+                    chapters.add(new OffsetChapter(span.chapterNumber(), title, path, layout.charset(),
+                            span.titleOffset(), span.titleLength(), span.contentOffset(), span.contentLength()));
+                } else {
+                    String content = MappedChapterScanner.decode(buffer, (int) span.contentOffset(), span.contentLength(), decoder);
+                    chapters.add(new Chapter(span.chapterNumber(), title, content));
+                }
+                logger.info("Identified chapter: {}", title);
+            }
+            return chapters;
+        } catch (IOException e) {
+            logger.error("Error reading novel file: {}", path, e);
+            throw new RuntimeException("Error reading novel file", e);
+        }
+    }
 }
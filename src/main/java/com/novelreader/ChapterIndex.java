@@ -0,0 +1,198 @@
+package com.novelreader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 章节索引文件，保存在小说文件旁（小说文件名.idx），记录已通过校验的章节布局。
+ * 小说文件未变化时直接从索引加载章节布局，无需重新扫描和校验
+ * <p>
+ * 文件格式（大端）：魔数、版本、文件大小、修改时间、内容哈希、编码名、章节数，
+ * 之后每章依次为章节号、标题偏移、标题长度、正文偏移、正文长度。
+ * 内容哈希只对文件开头和结尾各64KB计算，文件大小和修改时间已能发现绝大多数修改。
+ */
+public class ChapterIndex {
+    private static final Logger logger = LoggerFactory.getLogger(ChapterIndex.class);
+    private static final int MAGIC = 0x4E524958; // "NRIX"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 8;
+    private static final int SPAN_BYTES = 4 + 8 + 4 + 8 + 4;
+    private static final int HASH_SAMPLE_BYTES = 64 * 1024;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private ChapterIndex() {}
+
+    /**
+     * 小说文件对应的索引文件路径
+     * @param novelFilePath 小说文件路径
+     * @return 索引文件路径
+     */
+    public static Path pathFor(String novelFilePath) {
+        return Paths.get(novelFilePath + ".idx");
+    }
+
+    /**
+     * 加载章节布局，只有小说文件的大小、修改时间和内容哈希都与索引一致时才使用索引
+     * @param indexPath 索引文件路径
+     * @param novelFilePath 小说文件路径
+     * @return 章节布局，索引不存在、已过期或损坏时返回null
+     */
+    public static ChapterLayout load(Path indexPath, String novelFilePath) {
+        if (!Files.exists(indexPath)) {
+            return null;
+        }
+        Path sourcePath = Paths.get(novelFilePath);
+        try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = MappedChapterScanner.map(channel);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                logger.warn("Ignoring chapter index with unknown format: {}", indexPath);
+                return null;
+            }
+            long fileSize = buffer.getLong();
+            long modifiedTime = buffer.getLong();
+            long contentHash = buffer.getLong();
+            if (fileSize != Files.size(sourcePath)
+                    || modifiedTime != Files.getLastModifiedTime(sourcePath).toMillis()
+                    || contentHash != contentHash(sourcePath)) {
+                logger.info("Chapter index is out of date: {}", indexPath);
+                return null;
+            }
+            ChapterLayout layout = readLayout(buffer, sourcePath);
+            if (layout == null) {
+                logger.warn("Ignoring truncated chapter index: {}", indexPath);
+                return null;
+            }
+            logger.info("Loaded {} chapters from index {}", layout.size(), indexPath);
+            return layout;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Ignoring unreadable chapter index: {}", indexPath, e);
+            return null;
+        }
+    }
+
+    /**
+     * 写入章节索引，应在章节布局通过校验后调用
+     * @param indexPath 索引文件路径
+     * @param layout 覆盖整个小说文件的章节布局
+     */
+    public static void write(Path indexPath, ChapterLayout layout) {
+        Path sourcePath = layout.sourcePath();
+        byte[] charsetName = layout.charset().name().getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + 2 + charsetName.length + 4 + layout.size() * SPAN_BYTES);
+        try {
+            buffer.putInt(MAGIC).putInt(VERSION);
+            buffer.putLong(Files.size(sourcePath));
+            buffer.putLong(Files.getLastModifiedTime(sourcePath).toMillis());
+            buffer.putLong(contentHash(sourcePath));
+            buffer.putShort((short) charsetName.length).put(charsetName);
+            buffer.putInt(layout.size());
+            for (ChapterSpan span : layout.spans()) {
+                buffer.putInt(span.chapterNumber())
+                        .putLong(span.titleOffset()).putInt(span.titleLength())
+                        .putLong(span.contentOffset()).putInt(span.contentLength());
+            }
+            buffer.flip();
+
+            // 先写临时文件再替换，避免中断时留下不完整的索引
+            Path tempPath = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(tempPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Saved chapter index with {} chapters: {}", layout.size(), indexPath);
+        } catch (IOException e) {
+            logger.error("Error writing chapter index: {}", indexPath, e);
+            throw new RuntimeException("Error writing chapter index", e);
+        }
+    }
+
+    /**
+     * 用增量读取得到的尾部章节补全上一版索引，得到覆盖整个文件的章节布局。
+     * 小说只在末尾追加内容，尾部第一章之前的章节沿用上一版索引
+     * @param indexPath 索引文件路径
+     * @param tail 从检查点续读得到的章节布局
+     * @return 完整的章节布局，上一版索引不存在或编码不一致时返回null
+     */
+    public static ChapterLayout extend(Path indexPath, ChapterLayout tail) {
+        if (!Files.exists(indexPath) || tail.size() == 0) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = MappedChapterScanner.map(channel);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            buffer.position(HEADER_BYTES);
+            ChapterLayout previous = readLayout(buffer, tail.sourcePath());
+            if (previous == null || !previous.charset().equals(tail.charset())) {
+                return null;
+            }
+            long tailStart = tail.spans().get(0).titleOffset();
+            List<ChapterSpan> spans = new ArrayList<>(previous.size() + tail.size());
+            for (ChapterSpan span : previous.spans()) {
+                if (span.titleOffset() >= tailStart) {
+                    break;
+                }
+                spans.add(span);
+            }
+            spans.addAll(tail.spans());
+            return new ChapterLayout(tail.sourcePath(), tail.charset(), spans);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Ignoring unreadable chapter index: {}", indexPath, e);
+            return null;
+        }
+    }
+
+    // 读取编码和章节位置，章节数与剩余字节数不符时说明索引已损坏，返回null
+    private static ChapterLayout readLayout(ByteBuffer buffer, Path sourcePath) {
+        byte[] charsetName = new byte[buffer.getShort()];
+        buffer.get(charsetName);
+        Charset charset = Charset.forName(new String(charsetName, StandardCharsets.US_ASCII));
+        int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining() / SPAN_BYTES) {
+            return null;
+        }
+        List<ChapterSpan> spans = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            spans.add(new ChapterSpan(buffer.getInt(), buffer.getLong(), buffer.getInt(), buffer.getLong(), buffer.getInt()));
+        }
+        return new ChapterLayout(sourcePath, charset, spans);
+    }
+
+    /**
+     * 对文件开头和结尾各64KB计算FNV-1a哈希
+     */
+    static long contentHash(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = MappedChapterScanner.map(channel);
+            int limit = buffer.limit();
+            long hash = hash(FNV_OFFSET_BASIS, buffer, 0, Math.min(limit, HASH_SAMPLE_BYTES));
+            return hash(hash, buffer, Math.max(HASH_SAMPLE_BYTES, limit - HASH_SAMPLE_BYTES), limit);
+        }
+    }
+
+    private static long hash(long hash, ByteBuffer buffer, int from, int to) {
+        for (int i = from; i < to; i++) {
+            hash = (hash ^ (buffer.get(i) & 0xFF)) * FNV_PRIME;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,18 @@
+package com.novelreader;
+
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * 小说文件的章节布局，记录源文件、编码以及每个章节的字节区间
+ */
+public record ChapterLayout(
+     Path sourcePath,
+     Charset charset,
+     List<ChapterSpan> spans
+) {
+  public int size() {
+    return spans.size();
+  }
+}
@@ -0,0 +1,19 @@
+package com.novelreader;
+
+/**
+ * 章节在源文件中的字节区间，标题和正文均已去除首尾空白
+ */
+public record ChapterSpan(
+     int chapterNumber,
+     long titleOffset,
+     int titleLength,
+     long contentOffset,
+     int contentLength
+) {
+  /**
+   * 章节在源文件中的结束位置（不含）
+   */
+  public long endOffset() {
+    return Math.max(titleOffset + titleLength, contentOffset + contentLength);
+  }
+}
@@ -7,8 +7,14 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * 章节分割器，将小说内容按章节分割，并合并章节生成分割文件
@@ -17,14 +23,86 @@ public class ChapterSplitter {
     private static final Logger logger = LoggerFactory.getLogger(ChapterSplitter.class);
     private static final int CHAPTERS_PER_GROUP = 10;
     
+    private final TextNormalizer textNormalizer;
+    private final long maxGroupTokens;
+    private final int maxGroupChapters;
+    private final TokenEstimator tokenEstimator;
+    private final boolean exportSlices;
+    
+    public ChapterSplitter() {
+        this(null);
+    }
+    
+    /**
+     * 按固定章节数分组
+     * @param textNormalizer 生成章节组内容时使用的文本规范化器，为null时不做规范化
+     */
+    public ChapterSplitter(TextNormalizer textNormalizer) {
+        this(textNormalizer, 0, CHAPTERS_PER_GROUP, new TokenEstimator());
+    }
+    
+    /**
+     * 按token预算分组，将连续的章节装入同一组，直到再加一章就会超出预算或达到章节数上限。
+     * 单章超出预算时独占一组
+     * @param textNormalizer 生成章节组内容时使用的文本规范化器，为null时不做规范化
+     * @param maxGroupTokens 每组章节内容的token预算，不包括提示词，不大于0时按每组固定10章分组
+     * @param maxGroupChapters 每组的最大章节数，避免分析结果超出模型的输出长度
+     * @param tokenEstimator token数估算器
+     */
+    public ChapterSplitter(TextNormalizer textNormalizer, long maxGroupTokens, int maxGroupChapters, TokenEstimator tokenEstimator) {
+        this(textNormalizer, maxGroupTokens, maxGroupChapters, tokenEstimator, false);
+    }
+    
+    /**
+     * @param textNormalizer 生成章节组内容时使用的文本规范化器，为null时不做规范化
+     * @param maxGroupTokens 每组章节内容的token预算，不包括提示词，不大于0时按每组固定10章分组
+     * @param maxGroupChapters 每组的最大章节数
+     * @param tokenEstimator token数估算器
+     * @param exportSlices 是否将每个章节组的原文写入分割文件
+     */
+    public ChapterSplitter(TextNormalizer textNormalizer, long maxGroupTokens, int maxGroupChapters, TokenEstimator tokenEstimator,
+                           boolean exportSlices) {
+        this.textNormalizer = textNormalizer;
+        this.maxGroupTokens = maxGroupTokens;
+        this.maxGroupChapters = maxGroupChapters;
+        this.tokenEstimator = tokenEstimator;
+        this.exportSlices = exportSlices;
+    }
+    
     /**
-     * 将小说按章节分割成多个组，每组10章
+     * 将小说按章节分割成多个组，默认每组10章，设置了token预算时按预算分组
      * @param chapters 章节列表
      * @param outputDirectory 输出目录
      * @return 章节组列表
      */
     public List<ChapterGroup> splitNovelIntoChapterGroups(List<Chapter> chapters, String outputDirectory) {
+        return splitNovelIntoChapterGroups(chapters, outputDirectory, 1);
+    }
+    
+    /**
+     * 将小说按章节分割成多个组，章节组编号从指定值开始，用于增量读取时续接上次的章节组
+     * @param chapters 章节列表，第一章必须是某个章节组的起始章节
+     * @param outputDirectory 输出目录
+     * @param firstGroupId 第一个章节组的编号
+     * @return 章节组列表
+     */
+    public List<ChapterGroup> splitNovelIntoChapterGroups(List<Chapter> chapters, String outputDirectory, int firstGroupId) {
         List<ChapterGroup> chapterGroups = new ArrayList<>();
+        splitNovelIntoChapterGroups(chapters, outputDirectory, firstGroupId, chapterGroups::add);
+        return chapterGroups;
+    }
+    
+    /**
+     * 将小说按章节分割成多个组，每生成一组立即交给consumer，用于流水线处理
+     * @param chapters 章节列表，第一章必须是某个章节组的起始章节
+     * @param outputDirectory 输出目录
+     * @param firstGroupId 第一个章节组的编号
+     * @param consumer 章节组的接收方
+     * @return 生成的章节组数量
+     */
+    public int splitNovelIntoChapterGroups(List<Chapter> chapters, String outputDirectory, int firstGroupId,
+                                           Consumer<ChapterGroup> consumer) {
+        int groupCount = 0;
         
         // 创建输出目录
         File outputDir = new File(outputDirectory);
@@ -34,30 +112,171 @@ public class ChapterSplitter {
         }
         
         int totalChapters = chapters.size();
-        int groupCount = (int) Math.ceil((double) totalChapters / CHAPTERS_PER_GROUP);
+        int startChapterIndex = 0;
+        long totalTokens = 0;
+        // 因超出预算没有装入上一组的章节的估算值，作为下一组的第一章时直接使用
+        long carriedTokens = -1;
         
-        for (int i = 0; i < groupCount; i++) {
-            int startChapterIndex = i * CHAPTERS_PER_GROUP;
-            int endChapterIndex = Math.min((i + 1) * CHAPTERS_PER_GROUP - 1, totalChapters - 1);
+        while (startChapterIndex < totalChapters) {
+            int endChapterIndex;
+            long groupTokens = 0;
+            if (maxGroupTokens > 0) {
+                // 按原文估算，规范化只会减少token，不会超出预算
+                groupTokens = carriedTokens >= 0 ? carriedTokens
+                        : ChapterGroup.estimateTokens(chapters.get(startChapterIndex), tokenEstimator);
+                carriedTokens = -1;
+                endChapterIndex = startChapterIndex;
+                while (endChapterIndex + 1 < totalChapters && endChapterIndex + 1 - startChapterIndex < maxGroupChapters) {
+                    long chapterTokens = ChapterGroup.estimateTokens(chapters.get(endChapterIndex + 1), tokenEstimator);
+                    if (groupTokens + chapterTokens > maxGroupTokens) {
+                        carriedTokens = chapterTokens;
+                        break;
+                    }
+                    groupTokens += chapterTokens;
+                    endChapterIndex++;
+                }
+                if (groupTokens > maxGroupTokens) {
+                    logger.warn("Chapter {} alone exceeds the group token budget: ~{} > {}",
+                            chapters.get(startChapterIndex).getChapterNumber(), groupTokens, maxGroupTokens);
+                }
+                totalTokens += groupTokens;
+            } else {
+                endChapterIndex = Math.min(startChapterIndex + CHAPTERS_PER_GROUP - 1, totalChapters - 1);
+            }
             
             int startChapterNumber = chapters.get(startChapterIndex).getChapterNumber();
             int endChapterNumber = chapters.get(endChapterIndex).getChapterNumber();
             
-            ChapterGroup group = new ChapterGroup(i + 1, startChapterNumber, endChapterNumber);
+            ChapterGroup group = new ChapterGroup(firstGroupId + groupCount, startChapterNumber, endChapterNumber);
+            group.setTextNormalizer(textNormalizer);
             
             for (int j = startChapterIndex; j <= endChapterIndex; j++) {
                 group.addChapter(chapters.get(j));
             }
             
             // 写入文件
-//            writeChapterGroupToFile(group); //todo 需要保存章节组时再放开
+            if (exportSlices) {
+                writeChapterGroupSlice(group);
+            }
             
-            chapterGroups.add(group);
-            logger.info("Created chapter group {}: {} chapters ({})", 
-                    group.getChapterGroupId(), group.getChapterCount(), group.getFileName());
+            groupCount++;
+            if (maxGroupTokens > 0) {
+                logger.info("Created chapter group {}: {} chapters, ~{} tokens ({})",
+                        group.getChapterGroupId(), group.getChapterCount(), groupTokens, group.getFileName());
+            } else {
+                logger.info("Created chapter group {}: {} chapters ({})", 
+                        group.getChapterGroupId(), group.getChapterCount(), group.getFileName());
+            }
+            consumer.accept(group);
+            startChapterIndex = endChapterIndex + 1;
         }
         
-        return chapterGroups;
+        if (maxGroupTokens > 0) {
+            logger.info("Packed {} chapters into {} groups, ~{} tokens in total, budget {} tokens per group",
+                    totalChapters, groupCount, totalTokens, maxGroupTokens);
+        }
+        return groupCount;
+    }
+    
+    /**
+     * 将章节组在源文件中的字节区间直接复制到分割文件，不解码也不重新编码，分割文件与源文件编码相同。
+     * 同一组的章节在源文件中是连续的，只需一次transferTo。
+     * 章节不是按偏移从源文件读取的（例如逐行读取的UTF-16文件）时退回writeChapterGroupToFile
+     *
+     * @param group 章节组
+     */
+    public void writeChapterGroupSlice(ChapterGroup group) {
+        List<Chapter> chapters = group.getChapters();
+        if (chapters.isEmpty() || !(chapters.get(0) instanceof OffsetChapter first)) {
+            writeChapterGroupToFile(group);
+            return;
+        }
+        for (Chapter chapter : chapters) {
+            if (!(chapter instanceof OffsetChapter offsetChapter) || !offsetChapter.getSourcePath().equals(first.getSourcePath())) {
+                writeChapterGroupToFile(group);
+                return;
+            }
+        }
+        
+        long start = first.getTitleOffset();
+        long end = ((OffsetChapter) chapters.get(chapters.size() - 1)).getEndOffset();
+        Path filePath = Paths.get(Configuration.fileSliceDirPath, group.getFileName());
+        try {
+            Files.createDirectories(filePath.toAbsolutePath().getParent());
+            try (FileChannel source = FileChannel.open(first.getSourcePath(), StandardOpenOption.READ);
+                 FileChannel target = FileChannel.open(filePath, StandardOpenOption.CREATE,
+                         StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                long position = start;
+                while (position < end) {
+                    long transferred = source.transferTo(position, end - position, target);
+                    if (transferred <= 0) {
+                        throw new IOException("Unexpected end of file: " + first.getSourcePath());
+                    }
+                    position += transferred;
+                }
+            }
+            logger.info("Exported chapter group slice: {} ({} bytes)", filePath, end - start);
+        } catch (IOException e) {
+            logger.error("Error exporting chapter group slice: {}", filePath, e);
+            throw new RuntimeException("Error exporting chapter group slice", e);
+        }
+    }
+    
+    /**
+     * 将超出token预算的单章按段落拆分成若干部分，每部分单独提交分析。
+     * 优先在段落末尾断开，单个段落超出预算时在句末断开，没有句末时按字符断开
+     * @param chapter 章节
+     * @param maxTokens 每部分的token预算，包括标题
+     * @param tokenEstimator token数估算器
+     * @return 拆分后的各部分，章节号与原章节相同，标题后附加"（k/n）"；未超出预算时只包含原章节
+     */
+    public static List<Chapter> splitChapterIntoParts(Chapter chapter, long maxTokens, TokenEstimator tokenEstimator) {
+        String content = chapter.getChapterContent();
+        String title = chapter.getChapterTitle();
+        // 预留标题及后缀"（k/n）"的token
+        String partTitle = title + "（00/00）";
+        long budgetMillis = maxTokens * 1000 - tokenEstimator.estimateMillis(partTitle, 0, partTitle.length());
+        List<String> parts = new ArrayList<>();
+        int partStart = 0;
+        int lastParagraphEnd = -1;
+        int lastSentenceEnd = -1;
+        long partMillis = 0;
+        int length = content.length();
+        for (int i = 0; i < length; i++) {
+            // 与前一个字符一起计算增量，单词系数只计一次
+            int from = Math.max(partStart, i - 1);
+            long charMillis = tokenEstimator.estimateMillis(content, from, i + 1) - tokenEstimator.estimateMillis(content, from, i);
+            if (partMillis + charMillis > budgetMillis && i > partStart) {
+                int cut = lastParagraphEnd > partStart ? lastParagraphEnd
+                        : lastSentenceEnd > partStart ? lastSentenceEnd
+                        : Character.isLowSurrogate(content.charAt(i)) && i - 1 > partStart ? i - 1 : i;
+                parts.add(content.substring(partStart, cut));
+                partStart = cut;
+                partMillis = tokenEstimator.estimateMillis(content, partStart, i);
+            }
+            partMillis += charMillis;
+            char c = content.charAt(i);
+            if (c == '\n') {
+                lastParagraphEnd = i + 1;
+            } else if (c == '。' || c == '！' || c == '？' || c == '…') {
+                lastSentenceEnd = i + 1;
+            }
+        }
+        if (partStart < length || parts.isEmpty()) {
+            parts.add(content.substring(partStart));
+        }
+        if (parts.size() == 1) {
+            return List.of(chapter);
+        }
+        
+        List<Chapter> chapters = new ArrayList<>(parts.size());
+        for (int k = 0; k < parts.size(); k++) {
+            chapters.add(new Chapter(chapter.getChapterNumber(),
+                    title + "（" + (k + 1) + "/" + parts.size() + "）", parts.get(k)));
+        }
+        logger.info("Split chapter {} into {} parts, budget {} tokens per part",
+                chapter.getChapterNumber(), chapters.size(), maxTokens);
+        return chapters;
     }
     
     /**
@@ -19,13 +19,23 @@ public class ChapterValidator {
      * @return 验证结果
      */
     public ValidationResult validateChapterOrder(List<Chapter> chapters) {
+        return validateChapterOrder(chapters, 1);
+    }
+    
+    /**
+     * 验证从指定章节开始的章节顺序和完整性，用于增量读取时只校验新读取的章节
+     * @param chapters 章节列表
+     * @param firstChapterNumber 第一章的章节号
+     * @return 验证结果
+     */
+    public ValidationResult validateChapterOrder(List<Chapter> chapters, int firstChapterNumber) {
         if (chapters == null || chapters.isEmpty()) {
             return ValidationResult.failure("No chapters found");
         }
         
         // 检查章节顺序和重复/缺失
         Set<Integer> chapterNumbers = new HashSet<>();
-        int expectedChapterNumber = 1;
+        int expectedChapterNumber = firstChapterNumber;
         
         for (Chapter chapter : chapters) {
             int chapterNumber = chapter.getChapterNumber();
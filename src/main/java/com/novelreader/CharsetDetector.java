@@ -0,0 +1,110 @@
+package com.novelreader;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 编码探测器，根据BOM和文件开头若干字节的统计特征判断小说文件的编码
+ */
+public class CharsetDetector {
+    /** 用于探测编码的文件开头字节数 */
+    public static final int SNIFF_BYTES = 8 * 1024;
+    /** GB18030兼容GBK和GB2312 */
+    public static final Charset GB18030 = Charset.forName("GB18030");
+
+    /**
+     * 编码探测结果
+     * @param charset 探测出的编码
+     * @param bomLength 文件开头BOM的字节数，没有BOM时为0
+     */
+    public record Detection(Charset charset, int bomLength) {
+        /**
+         * 编码是否兼容ASCII，即换行符和数字都是单字节且不会出现在多字节字符内部
+         */
+        public boolean isAsciiCompatible() {
+            return !charset.equals(StandardCharsets.UTF_16LE) && !charset.equals(StandardCharsets.UTF_16BE);
+        }
+    }
+
+    private CharsetDetector() {}
+
+    /**
+     * 探测编码，只读取缓冲区开头最多SNIFF_BYTES个字节，不改变缓冲区的位置
+     * @param buffer 文件内容或文件开头的字节
+     * @return 探测结果
+     */
+    public static Detection detect(ByteBuffer buffer) {
+        int length = Math.min(buffer.limit(), SNIFF_BYTES);
+
+        // 1. 检查BOM
+        if (length >= 3 && (buffer.get(0) & 0xFF) == 0xEF && (buffer.get(1) & 0xFF) == 0xBB && (buffer.get(2) & 0xFF) == 0xBF) {
+            return new Detection(StandardCharsets.UTF_8, 3);
+        }
+        if (length >= 2 && (buffer.get(0) & 0xFF) == 0xFF && (buffer.get(1) & 0xFF) == 0xFE) {
+            return new Detection(StandardCharsets.UTF_16LE, 2);
+        }
+        if (length >= 2 && (buffer.get(0) & 0xFF) == 0xFE && (buffer.get(1) & 0xFF) == 0xFF) {
+            return new Detection(StandardCharsets.UTF_16BE, 2);
+        }
+
+        // 2. 没有BOM的UTF-16，中文文本中换行和标点的高字节为0
+        int evenZeros = 0;
+        int oddZeros = 0;
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(i) == 0) {
+                if ((i & 1) == 0) {
+                    evenZeros++;
+                } else {
+                    oddZeros++;
+                }
+            }
+        }
+        if (evenZeros + oddZeros > length / 8) {
+            return new Detection(oddZeros >= evenZeros ? StandardCharsets.UTF_16LE : StandardCharsets.UTF_16BE, 0);
+        }
+
+        // 3. 校验UTF-8多字节序列，出现非法序列时按GB18030处理
+        int i = 0;
+        while (i < length) {
+            int b = buffer.get(i) & 0xFF;
+            int continuation;
+            if (b < 0x80) {
+                i++;
+                continue;
+            } else if (b >= 0xC2 && b <= 0xDF) {
+                continuation = 1;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                continuation = 2;
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                continuation = 3;
+            } else {
+                return new Detection(GB18030, 0);
+            }
+            for (int k = 1; k <= continuation; k++) {
+                if (i + k >= length) {
+                    // 探测窗口末尾被截断的字符不作为判断依据
+                    return new Detection(StandardCharsets.UTF_8, 0);
+                }
+                if ((buffer.get(i + k) & 0xC0) != 0x80) {
+                    return new Detection(GB18030, 0);
+                }
+            }
+            i += continuation + 1;
+        }
+        return new Detection(StandardCharsets.UTF_8, 0);
+    }
+
+    /**
+     * 创建解码器，遇到非法字节时替换为替换字符，与FileReader的行为一致
+     * @param charset 编码
+     * @return 可复用的解码器
+     */
+    public static CharsetDecoder newDecoder(Charset charset) {
+        return charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+}
@@ -9,6 +9,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -26,9 +27,30 @@ public class Configuration {
     // 其他配置
     private static String inputFilePath;
     private static String outputDirectory;
-    private static int rateLimitPerMinute = 1; // 默认每分钟15次API调用
+    private static int rateLimitPerMinute = 15; // 默认每分钟15次API调用
+    private static long tokenLimitPerMinute = 0; // 默认不限制每分钟token数
+    private static String rateLimitSharedFile; // 默认不与其他进程共享限额
+    private static boolean adaptiveConcurrencyEnabled = true;
+    private static int concurrencyInitialLimit = AdaptiveConcurrencyApiClient.DEFAULT_INITIAL_LIMIT;
+    private static int concurrencyMinLimit = AdaptiveConcurrencyApiClient.DEFAULT_MIN_LIMIT;
+    private static int concurrencyMaxLimit = AdaptiveConcurrencyApiClient.DEFAULT_MAX_LIMIT;
     private static int threadCount = 10; // 默认10个线程
     private static String prompt;
+    private static boolean normalizationEnabled = true;
+    private static List<String> normalizationDropPatterns = TextNormalizer.DEFAULT_DROP_PATTERNS;
+    private static int normalizationMaxDropLineLength = TextNormalizer.DEFAULT_MAX_DROP_LINE_LENGTH;
+    private static int pipelineQueueCapacity = NovelPipeline.DEFAULT_QUEUE_CAPACITY;
+    private static boolean pipelineAsync = false;
+    private static boolean sliceExportEnabled = false;
+    private static Duration httpConnectTimeout = HttpTransport.DEFAULT_CONNECT_TIMEOUT;
+    private static Duration httpRequestTimeout = HttpTransport.DEFAULT_REQUEST_TIMEOUT;
+    private static int httpThreads = HttpTransport.DEFAULT_THREADS;
+    private static boolean responseCacheEnabled = true;
+    private static String responseCacheDirectory = Paths.get("output", "cache").toString();
+    private static long responseCacheMaxBytes = 256L * 1024 * 1024;
+    private static String cassetteMode = "off";
+    private static String cassetteFile = Paths.get("output", "cassette.jsonl").toString();
+    private static String cassetteLatency = "none";
     public static String analysisResultsDirPath = Paths.get("output","analysis").toString();
     public static String fileSliceDirPath = Paths.get("output","slices").toString();
 
@@ -68,6 +90,124 @@ public class Configuration {
                 }
             }
             
+            // 解析文本规范化配置（可选）
+            Map<String, Object> normalization = (Map<String, Object>) config.get("normalization");
+            if (normalization != null) {
+                if (normalization.containsKey("enabled")) {
+                    normalizationEnabled = Boolean.parseBoolean(String.valueOf(normalization.get("enabled")));
+                }
+                if (normalization.containsKey("drop_patterns")) {
+                    normalizationDropPatterns = (List<String>) normalization.get("drop_patterns");
+                }
+                if (normalization.containsKey("max_drop_line_length")) {
+                    normalizationMaxDropLineLength = Integer.parseInt(String.valueOf(normalization.get("max_drop_line_length")));
+                }
+                logger.info("加载文本规范化配置: enabled={}, {}条过滤规则", normalizationEnabled, normalizationDropPatterns.size());
+            }
+            
+            // 解析流水线配置（可选）
+            Map<String, Object> pipeline = (Map<String, Object>) config.get("pipeline");
+            if (pipeline != null) {
+                if (pipeline.containsKey("queue_capacity")) {
+                    pipelineQueueCapacity = Integer.parseInt(String.valueOf(pipeline.get("queue_capacity")));
+                }
+                if (pipeline.containsKey("async")) {
+                    pipelineAsync = Boolean.parseBoolean(String.valueOf(pipeline.get("async")));
+                }
+                logger.info("加载流水线配置: queue_capacity={}, async={}", pipelineQueueCapacity, pipelineAsync);
+            }
+            
+            // 解析分割文件导出配置（可选）
+            Map<String, Object> slices = (Map<String, Object>) config.get("slices");
+            if (slices != null && slices.containsKey("enabled")) {
+                sliceExportEnabled = Boolean.parseBoolean(String.valueOf(slices.get("enabled")));
+                logger.info("加载分割文件导出配置: enabled={}", sliceExportEnabled);
+            }
+            
+            // 解析HTTP传输配置（可选）
+            Map<String, Object> http = (Map<String, Object>) config.get("http");
+            if (http != null) {
+                if (http.containsKey("connect_timeout_seconds")) {
+                    httpConnectTimeout = Duration.ofSeconds(Long.parseLong(String.valueOf(http.get("connect_timeout_seconds"))));
+                }
+                if (http.containsKey("request_timeout_seconds")) {
+                    httpRequestTimeout = Duration.ofSeconds(Long.parseLong(String.valueOf(http.get("request_timeout_seconds"))));
+                }
+                if (http.containsKey("threads")) {
+                    httpThreads = Integer.parseInt(String.valueOf(http.get("threads")));
+                }
+                logger.info("加载HTTP配置: connect_timeout={}, request_timeout={}, threads={}",
+                        httpConnectTimeout, httpRequestTimeout, httpThreads);
+            }
+            
+            // 解析响应缓存配置（可选）
+            Map<String, Object> cache = (Map<String, Object>) config.get("cache");
+            if (cache != null) {
+                if (cache.containsKey("enabled")) {
+                    responseCacheEnabled = Boolean.parseBoolean(String.valueOf(cache.get("enabled")));
+                }
+                if (cache.containsKey("dir")) {
+                    responseCacheDirectory = String.valueOf(cache.get("dir"));
+                }
+                if (cache.containsKey("max_size_mb")) {
+                    responseCacheMaxBytes = Long.parseLong(String.valueOf(cache.get("max_size_mb"))) * 1024 * 1024;
+                }
+                logger.info("加载响应缓存配置: enabled={}, dir={}, max_size={}MB",
+                        responseCacheEnabled, responseCacheDirectory, responseCacheMaxBytes / 1024 / 1024);
+            }
+            
+            // 解析限流配置（可选）
+            Map<String, Object> rateLimit = (Map<String, Object>) config.get("rate_limit");
+            if (rateLimit != null) {
+                if (rateLimit.containsKey("requests_per_minute")) {
+                    rateLimitPerMinute = Integer.parseInt(String.valueOf(rateLimit.get("requests_per_minute")));
+                }
+                if (rateLimit.containsKey("tokens_per_minute")) {
+                    tokenLimitPerMinute = Long.parseLong(String.valueOf(rateLimit.get("tokens_per_minute")));
+                }
+                if (rateLimit.get("shared_file") != null) {
+                    rateLimitSharedFile = String.valueOf(rateLimit.get("shared_file"));
+                }
+                logger.info("加载限流配置: requests_per_minute={}, tokens_per_minute={}, shared_file={}",
+                        rateLimitPerMinute, tokenLimitPerMinute, rateLimitSharedFile);
+            } else {
+                logger.info("未配置rate_limit，使用默认限流: requests_per_minute={}", rateLimitPerMinute);
+            }
+            
+            // 解析自适应并发配置（可选）
+            Map<String, Object> concurrency = (Map<String, Object>) config.get("concurrency");
+            if (concurrency != null) {
+                if (concurrency.containsKey("adaptive")) {
+                    adaptiveConcurrencyEnabled = Boolean.parseBoolean(String.valueOf(concurrency.get("adaptive")));
+                }
+                if (concurrency.containsKey("initial_limit")) {
+                    concurrencyInitialLimit = Integer.parseInt(String.valueOf(concurrency.get("initial_limit")));
+                }
+                if (concurrency.containsKey("min_limit")) {
+                    concurrencyMinLimit = Integer.parseInt(String.valueOf(concurrency.get("min_limit")));
+                }
+                if (concurrency.containsKey("max_limit")) {
+                    concurrencyMaxLimit = Integer.parseInt(String.valueOf(concurrency.get("max_limit")));
+                }
+                logger.info("加载并发配置: adaptive={}, initial_limit={}, min_limit={}, max_limit={}",
+                        adaptiveConcurrencyEnabled, concurrencyInitialLimit, concurrencyMinLimit, concurrencyMaxLimit);
+            }
+            
+            // 解析录制回放配置（可选）
+            Map<String, Object> cassette = (Map<String, Object>) config.get("cassette");
+            if (cassette != null) {
+                if (cassette.containsKey("mode")) {
+                    cassetteMode = String.valueOf(cassette.get("mode")).toLowerCase();
+                }
+                if (cassette.containsKey("file")) {
+                    cassetteFile = String.valueOf(cassette.get("file"));
+                }
+                if (cassette.containsKey("latency")) {
+                    cassetteLatency = String.valueOf(cassette.get("latency"));
+                }
+                logger.info("加载录制回放配置: mode={}, file={}, latency={}", cassetteMode, cassetteFile, cassetteLatency);
+            }
+            
             if (apiProviders.isEmpty()) {
                 throw new RuntimeException("No API providers found in configuration");
             }
@@ -158,10 +298,176 @@ public class Configuration {
     }
 
 
+    /**
+     * 获取当前API提供商每次请求的token预算，对应提供商配置中的max_group_tokens，包括提示词和章节组内容
+     * @return token预算，未配置时返回0，表示按固定章节数分组
+     */
+    public static long getMaxGroupTokens() {
+        String value = getCurrentProviderConfig("max_group_tokens");
+        return value == null ? 0 : Long.parseLong(value);
+    }
+    
+    /**
+     * 获取当前API提供商每个章节组的最大章节数，对应提供商配置中的max_group_chapters
+     * @return 最大章节数，未配置时默认20
+     */
+    public static int getMaxGroupChapters() {
+        String value = getCurrentProviderConfig("max_group_chapters");
+        return value == null ? 20 : Integer.parseInt(value);
+    }
+    
+    /**
+     * 获取流水线中等待分析的章节组的最大数量，对应pipeline.queue_capacity
+     * @return 队列容量，未配置时默认20
+     */
+    public static int getPipelineQueueCapacity() {
+        return pipelineQueueCapacity;
+    }
+    
+    /**
+     * 是否以异步方式分析章节组，请求并发只受限流器限制，对应pipeline.async
+     * @return 是否异步，未配置时使用线程池同步调用
+     */
+    public static boolean isPipelineAsync() {
+        return pipelineAsync;
+    }
+    
+    /**
+     * 是否缓存API响应，对应cache.enabled
+     * @return 是否缓存，未配置时缓存
+     */
+    public static boolean isResponseCacheEnabled() {
+        return responseCacheEnabled;
+    }
+    
+    /**
+     * 获取响应缓存目录，对应cache.dir
+     * @return 缓存目录，未配置时为output/cache
+     */
+    public static String getResponseCacheDirectory() {
+        return responseCacheDirectory;
+    }
+    
+    /**
+     * 获取响应缓存的最大字节数，对应cache.max_size_mb
+     * @return 最大字节数，未配置时为256MB
+     */
+    public static long getResponseCacheMaxBytes() {
+        return responseCacheMaxBytes;
+    }
+    
+    /**
+     * 获取API调用的录制回放模式，对应cassette.mode
+     * @return off、record或replay，未配置时为off
+     */
+    public static String getCassetteMode() {
+        return cassetteMode;
+    }
+    
+    /**
+     * 获取录制回放的记录文件，对应cassette.file
+     * @return 记录文件，未配置时为output/cassette.jsonl
+     */
+    public static String getCassetteFile() {
+        return cassetteFile;
+    }
+    
+    /**
+     * 获取回放时模拟的响应延迟，对应cassette.latency
+     * @return 延迟模型配置，未配置时为none
+     */
+    public static String getCassetteLatency() {
+        return cassetteLatency;
+    }
+    
+    /**
+     * 是否将每个章节组的原文导出到分割文件目录，对应slices.enabled
+     * @return 是否导出，未配置时不导出
+     */
+    public static boolean isSliceExportEnabled() {
+        return sliceExportEnabled;
+    }
+    
+    /**
+     * 获取HTTP连接超时，对应http.connect_timeout_seconds
+     * @return 连接超时，未配置时默认30秒
+     */
+    public static Duration getHttpConnectTimeout() {
+        return httpConnectTimeout;
+    }
+    
+    /**
+     * 获取HTTP请求超时，对应http.request_timeout_seconds
+     * @return 请求超时，未配置时默认240秒
+     */
+    public static Duration getHttpRequestTimeout() {
+        return httpRequestTimeout;
+    }
+    
+    /**
+     * 获取HTTP传输层的线程数，对应http.threads
+     * @return 线程数，未配置时默认4
+     */
+    public static int getHttpThreads() {
+        return httpThreads;
+    }
+    
+    /**
+     * 获取每分钟的请求数上限，对应rate_limit.requests_per_minute
+     * @return 请求数上限，未配置时默认15
+     */
     public static int getRateLimitPerMinute() {
         return rateLimitPerMinute;
     }
     
+    /**
+     * 获取每分钟的token数上限，对应rate_limit.tokens_per_minute
+     * @return token数上限，未配置时为0，表示不限制
+     */
+    public static long getTokenLimitPerMinute() {
+        return tokenLimitPerMinute;
+    }
+    
+    /**
+     * 获取多个进程共享限额的配额文件，对应rate_limit.shared_file
+     * @return 配额文件，未配置时为null，限额只在本进程内生效
+     */
+    public static String getRateLimitSharedFile() {
+        return rateLimitSharedFile;
+    }
+    
+    /**
+     * 是否按API的反馈自动调整并发请求数，对应concurrency.adaptive
+     * @return 是否自适应，未配置时自适应
+     */
+    public static boolean isAdaptiveConcurrencyEnabled() {
+        return adaptiveConcurrencyEnabled;
+    }
+    
+    /**
+     * 获取初始的并发上限，对应concurrency.initial_limit
+     * @return 初始并发上限，未配置时为4
+     */
+    public static int getConcurrencyInitialLimit() {
+        return concurrencyInitialLimit;
+    }
+    
+    /**
+     * 获取最小的并发上限，对应concurrency.min_limit
+     * @return 最小并发上限，未配置时为1
+     */
+    public static int getConcurrencyMinLimit() {
+        return concurrencyMinLimit;
+    }
+    
+    /**
+     * 获取最大的并发上限，对应concurrency.max_limit
+     * @return 最大并发上限，未配置时为32
+     */
+    public static int getConcurrencyMaxLimit() {
+        return concurrencyMaxLimit;
+    }
+    
     public static int getThreadCount() {
         return threadCount;
     }
@@ -169,5 +475,18 @@ public class Configuration {
     public static String getPrompt() {
         return prompt;
     }
+    
+    /**
+     * 根据配置创建文本规范化器
+     * @param tokenEstimator 用于统计删除的token数
+     * @return 文本规范化器，配置中关闭规范化时返回null
+     */
+    public static TextNormalizer createTextNormalizer(TokenEstimator tokenEstimator) {
+        if (!normalizationEnabled) {
+            return null;
+        }
+        return new TextNormalizer(normalizationDropPatterns == null ? List.of() : normalizationDropPatterns,
+                normalizationMaxDropLineLength, tokenEstimator);
+    }
 
 }
@@ -1,38 +1,49 @@
 package com.novelreader;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.time.Duration;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * DeepSeek API客户端，封装API调用细节
  */
 public class DeepSeekApiClient implements ApiClient {
     private static final Logger logger = LoggerFactory.getLogger(DeepSeekApiClient.class);
-    private static final int TIMEOUT_SECONDS = 240;
     private static final String PROVIDER_NAME = "deepseek";
     
     private final RateLimiter rateLimiter;
-    private final HttpClient httpClient;
-    private final ObjectMapper objectMapper;
+    private final HttpTransport transport;
+    private final TokenEstimator tokenEstimator = TokenEstimator.forProvider(PROVIDER_NAME);
+    private final boolean streaming;
     
     public DeepSeekApiClient(RateLimiter rateLimiter) {
+        this(rateLimiter, HttpTransport.shared());
+    }
+    
+    public DeepSeekApiClient(RateLimiter rateLimiter, HttpTransport transport) {
+        this(rateLimiter, transport, isStreaming());
+    }
+    
+    /**
+     * @param rateLimiter 速率限制器
+     * @param transport HTTP传输层
+     * @param streaming 是否以流式方式接收输出并检查格式
+     */
+    public DeepSeekApiClient(RateLimiter rateLimiter, HttpTransport transport, boolean streaming) {
         this.rateLimiter = rateLimiter;
-        this.httpClient = HttpClient.newBuilder()
-                .connectTimeout(Duration.ofSeconds(TIMEOUT_SECONDS))
-                .build();
-        this.objectMapper = new ObjectMapper();
+        this.transport = transport;
+        this.streaming = streaming;
     }
     
     @Override
@@ -40,6 +51,17 @@ public class DeepSeekApiClient implements ApiClient {
         return PROVIDER_NAME;
     }
     
+    @Override
+    public String getModelName() {
+        // 在配置中是"deepseek"
+        return Configuration.getProviderConfig(PROVIDER_NAME, "deepseek");
+    }
+    
+    @Override
+    public void warmUp() {
+        transport.warmUp(PROVIDER_NAME, URI.create(Configuration.getProviderConfig(PROVIDER_NAME, "url")));
+    }
+    
     /**
      * 分析章节组内容
      * @param request API请求
@@ -47,59 +69,21 @@ public class DeepSeekApiClient implements ApiClient {
      */
     @Override
     public ApiResponse analyzeChapterGroup(ApiRequest request) {
+        long tokenCount = request.estimateInputTokens(tokenEstimator);
         try {
-            rateLimiter.acquire();
-            
-            // 从配置中获取URL和API密钥
-            String apiKey = Configuration.getProviderConfig(PROVIDER_NAME, "api_key");
-            String modelName = Configuration.getProviderConfig(PROVIDER_NAME, "deepseek"); // 在配置中是"deepseek"
-            String url = Configuration.getProviderConfig(PROVIDER_NAME, "url");
+            rateLimiter.acquire(request, tokenCount);
             
-            // 构建DeepSeek请求格式
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("model", modelName);
-            requestBody.put("stream", false);
+            HttpRequest httpRequest = buildHttpRequest(request, streaming);
             
-            // 构建消息
-            List<Map<String, String>> messages = new ArrayList<>();
-            
-            // 系统消息（提示）
-            Map<String, String> systemMessage = new HashMap<>();
-            systemMessage.put("role", "system");
-            systemMessage.put("content", request.getPrompt());
-            messages.add(systemMessage);
-            
-            // 用户消息（章节内容）
-            Map<String, String> userMessage = new HashMap<>();
-            userMessage.put("role", "user");
-            userMessage.put("content", request.getChapterGroupContent());
-            messages.add(userMessage);
-            
-            requestBody.put("messages", messages);
-            
-            String jsonBody = objectMapper.writeValueAsString(requestBody);
-            
-            HttpRequest httpRequest = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .header("Content-Type", "application/json")
-                    .header("Authorization", "Bearer " + apiKey)
-                    .POST(HttpRequest.BodyPublishers.ofString(jsonBody))
-                    .build();
-            
-            HttpResponse<String> response = httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofString());
-            
-            if (response.statusCode() == 200) {
-                String responseBody = response.body();
-                logger.info("DeepSeek API call successful for chapter group");
-                
-                // 解析DeepSeek响应并提取内容
-                String extractedContent = extractContentFromDeepSeekResponse(responseBody);
-                return ApiResponse.success(extractedContent);
+            ApiResponse apiResponse;
+            if (streaming) {
+                apiResponse = StreamingFormatGuard.stream(transport, getProviderName(), httpRequest, request, this::extractStreamEvent);
             } else {
-                String errorMessage = "DeepSeek API call failed with status code: " + response.statusCode() + ", body: " + response.body();
-                logger.error(errorMessage);
-                return ApiResponse.failure(errorMessage);
+                HttpResponse<InputStream> response = transport.send(getProviderName(), httpRequest, HttpResponse.BodyHandlers.ofInputStream());
+                apiResponse = toApiResponse(response.statusCode(), response.body());
             }
+            rateLimiter.settle(tokenCount, apiResponse.usage());
+            return apiResponse;
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             logger.error("DeepSeek API call interrupted", e);
@@ -107,37 +91,131 @@ public class DeepSeekApiClient implements ApiClient {
         } catch (IOException e) {
             logger.error("DeepSeek API call failed", e);
             return ApiResponse.failure("DeepSeek API call failed: " + e.getMessage());
-        } finally {
-            rateLimiter.release();
         }
     }
     
     /**
-     * 从DeepSeek响应中提取内容
-     * @param responseBody DeepSeek响应体
-     * @return 提取的内容
+     * 异步分析章节组内容，排队等待限流许可，响应到达后在HTTP线程上完成
+     * @param request API请求
+     * @return 完成时给出API响应的Future
      */
-    private String extractContentFromDeepSeekResponse(String responseBody) {
+    @Override
+    public CompletableFuture<ApiResponse> analyzeChapterGroupAsync(ApiRequest request) {
+        long tokenCount = request.estimateInputTokens(tokenEstimator);
+        return rateLimiter.acquireAsync(request, tokenCount)
+                .thenCompose(permit -> sendAsync(request))
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    logger.error("DeepSeek API call failed", cause);
+                    return ApiResponse.failure("DeepSeek API call failed: " + cause.getMessage());
+                })
+                .thenApply(response -> {
+                    rateLimiter.settle(tokenCount, response.usage());
+                    return response;
+                });
+    }
+    
+    private CompletableFuture<ApiResponse> sendAsync(ApiRequest request) {
+        HttpRequest httpRequest;
         try {
-            // 解析JSON响应
-            Map<String, Object> responseMap = objectMapper.readValue(responseBody, Map.class);
-            
-            // 获取choices部分
-            List<Map<String, Object>> choices = (List<Map<String, Object>>) responseMap.get("choices");
-            if (choices != null && !choices.isEmpty()) {
-                // 获取第一个选择的消息
-                Map<String, Object> message = (Map<String, Object>) choices.get(0).get("message");
-                if (message != null) {
-                    // 返回消息内容
-                    return (String) message.get("content");
+            httpRequest = buildHttpRequest(request, streaming);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (streaming) {
+            return StreamingFormatGuard.streamAsync(transport, getProviderName(), httpRequest, request, this::extractStreamEvent);
+        }
+        // 响应体先收成字节数组再解析，解析时不会阻塞等待网络
+        return transport.sendAsync(getProviderName(), httpRequest, HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> toApiResponse(response.statusCode(), new ByteArrayInputStream(response.body())));
+    }
+    
+    private static boolean isStreaming() {
+        return Boolean.parseBoolean(Configuration.getProviderConfig(PROVIDER_NAME, "stream"));
+    }
+    
+    private HttpRequest buildHttpRequest(ApiRequest request, boolean streaming) throws IOException {
+        // 从配置中获取URL和API密钥
+        String apiKey = Configuration.getProviderConfig(PROVIDER_NAME, "api_key");
+        String modelName = getModelName();
+        String url = Configuration.getProviderConfig(PROVIDER_NAME, "url");
+        
+        RequestBodyWriter.Body body = RequestBodyWriter.encode(request, streaming ? PROVIDER_NAME + ":stream" : PROVIDER_NAME,
+                generator -> writeRequestBody(generator, request, modelName, streaming));
+        
+        return transport.newRequest(URI.create(url))
+                .header("Content-Type", "application/json")
+                .header("Authorization", "Bearer " + apiKey)
+                .POST(body.publisher())
+                .build();
+    }
+    
+    /**
+     * 写出DeepSeek请求体，提示词作为系统消息只转义一次，章节内容作为用户消息直接转义写出
+     */
+    private void writeRequestBody(JsonGenerator generator, ApiRequest request, String modelName, boolean streaming)
+            throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("model", modelName);
+        generator.writeBooleanField("stream", streaming);
+        if (streaming) {
+            // 流式响应默认不带token用量，要求在最后一条事件中给出
+            generator.writeObjectFieldStart("stream_options");
+            generator.writeBooleanField("include_usage", true);
+            generator.writeEndObject();
+        }
+        generator.writeArrayFieldStart("messages");
+        
+        // 系统消息（提示）
+        generator.writeStartObject();
+        generator.writeStringField("role", "system");
+        generator.writeFieldName("content");
+        generator.writeString(RequestBodyWriter.preEscaped(request.getPrompt()));
+        generator.writeEndObject();
+        
+        // 用户消息（章节内容）
+        generator.writeStartObject();
+        generator.writeStringField("role", "user");
+        generator.writeStringField("content", request.getChapterGroupContent());
+        generator.writeEndObject();
+        
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+    
+    /**
+     * 以流式方式解析响应体，只取出输出文本、结束原因和token用量
+     */
+    private ApiResponse toApiResponse(int statusCode, InputStream body) {
+        try (InputStream input = body) {
+            if (statusCode == 200) {
+                ResponseExtractor.Extracted extracted = ResponseExtractor.extractChatCompletion(input);
+                logger.info("DeepSeek API call successful for chapter group, finish reason: {}, usage: {}",
+                        extracted.finishReason(), extracted.usage());
+                if (extracted.text().isEmpty()) {
+                    logger.error("Failed to extract content from DeepSeek response");
                 }
+                return ApiResponse.success(extracted.text(), extracted.finishReason(), extracted.usage());
+            } else {
+                String errorMessage = "DeepSeek API call failed with status code: " + statusCode
+                        + ", body: " + new String(input.readAllBytes(), StandardCharsets.UTF_8);
+                logger.error(errorMessage);
+                return ApiResponse.failure(errorMessage, statusCode);
             }
-            
-            logger.error("Failed to extract content from DeepSeek response: " + responseBody);
-            return "";
-        } catch (Exception e) {
+        } catch (IOException e) {
             logger.error("Error parsing DeepSeek response", e);
-            return "";
+            return ApiResponse.failure("DeepSeek API call failed: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 从流式响应的一条事件中取出新输出的文本（位于choices[0].delta.content）、结束原因和token用量
+     */
+    private ResponseExtractor.Extracted extractStreamEvent(String data) {
+        try {
+            return ResponseExtractor.extractChatCompletion(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Malformed DeepSeek stream event", e);
         }
     }
 }
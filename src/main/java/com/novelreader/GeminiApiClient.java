@@ -1,38 +1,50 @@
 package com.novelreader;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URLEncoder;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
-import java.time.Duration;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Gemini API客户端，封装API调用细节
  */
 public class GeminiApiClient implements ApiClient {
     private static final Logger logger = LoggerFactory.getLogger(GeminiApiClient.class);
-    private static final int TIMEOUT_SECONDS = 240;
     private static final String PROVIDER_NAME = "gemini";
     
     private final RateLimiter rateLimiter;
-    private final HttpClient httpClient;
-    private final ObjectMapper objectMapper;
+    private final HttpTransport transport;
+    private final TokenEstimator tokenEstimator = TokenEstimator.forProvider(PROVIDER_NAME);
+    private final boolean streaming;
     
     public GeminiApiClient(RateLimiter rateLimiter) {
+        this(rateLimiter, HttpTransport.shared());
+    }
+    
+    public GeminiApiClient(RateLimiter rateLimiter, HttpTransport transport) {
+        this(rateLimiter, transport, isStreaming());
+    }
+    
+    /**
+     * @param rateLimiter 速率限制器
+     * @param transport HTTP传输层
+     * @param streaming 是否以流式方式接收输出并检查格式
+     */
+    public GeminiApiClient(RateLimiter rateLimiter, HttpTransport transport, boolean streaming) {
         this.rateLimiter = rateLimiter;
-        this.httpClient = HttpClient.newBuilder()
-                .connectTimeout(Duration.ofSeconds(TIMEOUT_SECONDS))
-                .build();
-        this.objectMapper = new ObjectMapper();
+        this.transport = transport;
+        this.streaming = streaming;
     }
     
     @Override
@@ -40,6 +52,17 @@ public class GeminiApiClient implements ApiClient {
         return PROVIDER_NAME;
     }
     
+    @Override
+    public String getModelName() {
+        return Configuration.getProviderConfig(PROVIDER_NAME, "model");
+    }
+    
+    @Override
+    public void warmUp() {
+        String urlTemplate = Configuration.getProviderConfig(PROVIDER_NAME, "url");
+        transport.warmUp(PROVIDER_NAME, URI.create(urlTemplate.replace("{model}", "model").replace("{api_key}", "")));
+    }
+    
     /**
      * 分析章节组内容
      * @param request API请求
@@ -47,46 +70,21 @@ public class GeminiApiClient implements ApiClient {
      */
     @Override
     public ApiResponse analyzeChapterGroup(ApiRequest request) {
+        long tokenCount = request.estimateInputTokens(tokenEstimator);
         try {
-            rateLimiter.acquire();
-            
-            // 从配置中获取URL和API密钥
-            String apiKey = Configuration.getProviderConfig(PROVIDER_NAME, "api_key");
-            String modelName = Configuration.getProviderConfig(PROVIDER_NAME, "model");
-            String urlTemplate = Configuration.getProviderConfig(PROVIDER_NAME, "url");
-            
-            // 替换URL模板中的占位符
-            String url = urlTemplate
-                    .replace("{model}", URLEncoder.encode(modelName, StandardCharsets.UTF_8))
-                    .replace("{api_key}", URLEncoder.encode(apiKey, StandardCharsets.UTF_8));
-            
-            Map<String, Object> requestBody = new HashMap<>();
-            Map<String, Object> contents = new HashMap<>();
-            Map<String, Object> parts = new HashMap<>();
+            rateLimiter.acquire(request, tokenCount);
             
-            parts.put("text", request.getPrompt() + "\n\n" + request.getChapterGroupContent());
-            contents.put("parts", new Object[]{parts});
-            requestBody.put("contents", new Object[]{contents});
+            HttpRequest httpRequest = buildHttpRequest(request, streaming);
             
-            String jsonBody = objectMapper.writeValueAsString(requestBody);
-            
-            HttpRequest httpRequest = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(jsonBody))
-                    .build();
-            
-            HttpResponse<String> response = httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofString());
-            
-            if (response.statusCode() == 200) {
-                String responseBody = response.body();
-                logger.info("API call successful for chapter group");
-                return ApiResponse.success(responseBody);
+            ApiResponse apiResponse;
+            if (streaming) {
+                apiResponse = StreamingFormatGuard.stream(transport, PROVIDER_NAME, httpRequest, request, this::extractStreamEvent);
             } else {
-                String errorMessage = "API call failed with status code: " + response.statusCode() + ", body: " + response.body();
-                logger.error(errorMessage);
-                return ApiResponse.failure(errorMessage);
+                HttpResponse<InputStream> response = transport.send(getProviderName(), httpRequest, HttpResponse.BodyHandlers.ofInputStream());
+                apiResponse = toApiResponse(response.statusCode(), response.body());
             }
+            rateLimiter.settle(tokenCount, apiResponse.usage());
+            return apiResponse;
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             logger.error("API call interrupted", e);
@@ -94,8 +92,134 @@ public class GeminiApiClient implements ApiClient {
         } catch (IOException e) {
             logger.error("API call failed", e);
             return ApiResponse.failure("API call failed: " + e.getMessage());
-        } finally {
-            rateLimiter.release();
+        }
+    }
+    
+    /**
+     * 异步分析章节组内容，排队等待限流许可，响应到达后在HTTP线程上完成
+     * @param request API请求
+     * @return 完成时给出API响应的Future
+     */
+    @Override
+    public CompletableFuture<ApiResponse> analyzeChapterGroupAsync(ApiRequest request) {
+        long tokenCount = request.estimateInputTokens(tokenEstimator);
+        return rateLimiter.acquireAsync(request, tokenCount)
+                .thenCompose(permit -> sendAsync(request))
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    logger.error("API call failed", cause);
+                    return ApiResponse.failure("API call failed: " + cause.getMessage());
+                })
+                .thenApply(response -> {
+                    rateLimiter.settle(tokenCount, response.usage());
+                    return response;
+                });
+    }
+    
+    private CompletableFuture<ApiResponse> sendAsync(ApiRequest request) {
+        HttpRequest httpRequest;
+        try {
+            httpRequest = buildHttpRequest(request, streaming);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (streaming) {
+            return StreamingFormatGuard.streamAsync(transport, PROVIDER_NAME, httpRequest, request, this::extractStreamEvent);
+        }
+        // 响应体先收成字节数组再解析，解析时不会阻塞等待网络
+        return transport.sendAsync(PROVIDER_NAME, httpRequest, HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> toApiResponse(response.statusCode(), new ByteArrayInputStream(response.body())));
+    }
+    
+    private static boolean isStreaming() {
+        return Boolean.parseBoolean(Configuration.getProviderConfig(PROVIDER_NAME, "stream"));
+    }
+    
+    private HttpRequest buildHttpRequest(ApiRequest request, boolean streaming) throws IOException {
+        // 从配置中获取URL和API密钥
+        String apiKey = Configuration.getProviderConfig(PROVIDER_NAME, "api_key");
+        String modelName = Configuration.getProviderConfig(PROVIDER_NAME, "model");
+        String urlTemplate = Configuration.getProviderConfig(PROVIDER_NAME, "url");
+        
+        // 替换URL模板中的占位符
+        String url = urlTemplate
+                .replace("{model}", URLEncoder.encode(modelName, StandardCharsets.UTF_8))
+                .replace("{api_key}", URLEncoder.encode(apiKey, StandardCharsets.UTF_8));
+        if (streaming) {
+            url = toStreamingUrl(url);
+        }
+        
+        RequestBodyWriter.Body body = RequestBodyWriter.encode(request, PROVIDER_NAME, generator -> writeRequestBody(generator, request));
+        
+        return transport.newRequest(URI.create(url))
+                .header("Content-Type", "application/json")
+                .POST(body.publisher())
+                .build();
+    }
+    
+    /**
+     * 写出generateContent请求体。提示词和章节内容作为同一条消息的两个part，Gemini按顺序拼接，
+     * 提示词连同分隔的空行只转义一次，章节内容直接转义写出
+     */
+    private void writeRequestBody(JsonGenerator generator, ApiRequest request) throws IOException {
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("contents");
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("parts");
+        generator.writeStartObject();
+        generator.writeFieldName("text");
+        generator.writeString(RequestBodyWriter.preEscaped(request.getPrompt(), "\n\n"));
+        generator.writeEndObject();
+        generator.writeStartObject();
+        generator.writeStringField("text", request.getChapterGroupContent());
+        generator.writeEndObject();
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+    
+    /**
+     * 以流式方式解析响应体，只取出输出文本、结束原因和token用量
+     */
+    private ApiResponse toApiResponse(int statusCode, InputStream body) {
+        try (InputStream input = body) {
+            if (statusCode == 200) {
+                ResponseExtractor.Extracted extracted = ResponseExtractor.extractGemini(input);
+                logger.info("API call successful for chapter group, finish reason: {}, usage: {}",
+                        extracted.finishReason(), extracted.usage());
+                if (extracted.text().isEmpty()) {
+                    logger.error("Failed to extract content from Gemini response");
+                }
+                return ApiResponse.success(extracted.text(), extracted.finishReason(), extracted.usage());
+            } else {
+                String errorMessage = "API call failed with status code: " + statusCode
+                        + ", body: " + new String(input.readAllBytes(), StandardCharsets.UTF_8);
+                logger.error(errorMessage);
+                return ApiResponse.failure(errorMessage, statusCode);
+            }
+        } catch (IOException e) {
+            logger.error("Error parsing Gemini response", e);
+            return ApiResponse.failure("API call failed: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 将generateContent地址转换为以Server-Sent Events返回的streamGenerateContent地址
+     */
+    static String toStreamingUrl(String url) {
+        String streamingUrl = url.replace(":generateContent", ":streamGenerateContent");
+        return streamingUrl + (streamingUrl.contains("?") ? "&" : "?") + "alt=sse";
+    }
+    
+    /**
+     * 从流式响应的一条事件中取出新输出的文本、结束原因和token用量，每条事件是一个完整的GenerateContentResponse
+     */
+    private ResponseExtractor.Extracted extractStreamEvent(String data) {
+        try {
+            return ResponseExtractor.extractGemini(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Malformed Gemini stream event", e);
         }
     }
 }
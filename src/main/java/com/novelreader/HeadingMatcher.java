@@ -0,0 +1,28 @@
+package com.novelreader;
+
+/**
+ * 章节标题匹配器，判断一行文本是否为章节标题并解析章节号
+ */
+public interface HeadingMatcher {
+    /** 不是章节标题 */
+    int NO_MATCH = -1;
+    
+    /**
+     * 匹配一行文本
+     * @param line 不含换行符的一行文本
+     * @return 章节号，不是章节标题时返回{@link #NO_MATCH}
+     */
+    int match(CharSequence line);
+    
+    /**
+     * 章节标题的最大字符数，扫描器据此在解码前跳过过长的行
+     * @return 最大字符数，不限制时返回Integer.MAX_VALUE
+     */
+    int maxTitleLength();
+    
+    /**
+     * 章节标题中必然出现的文字，扫描器据此在解码前快速过滤
+     * @return 必然出现的文字，没有时返回空字符串
+     */
+    String requiredText();
+}
@@ -0,0 +1,401 @@
+package com.novelreader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * 共享的HTTP传输层，所有API客户端通过它发送请求
+ * <p>
+ * 每个主机使用一个优先HTTP/2的HttpClient，同一主机的请求复用连接；所有HttpClient共用一个专用线程池。
+ * 启动时可以预热连接，提前完成DNS解析、TLS握手和HTTP/2协商，第一个分析请求不再承担建连开销。
+ * 支持Server-Sent Events流式响应，可以在输出不符合格式时提前取消请求。请求都有异步版本，等待响应时不占用线程。
+ * 按API提供商统计请求数、失败数、取消数、HTTP/2响应数和耗时，流式请求的耗时为收到响应头的时间。
+ */
+public class HttpTransport {
+    private static final Logger logger = LoggerFactory.getLogger(HttpTransport.class);
+    /** 默认的连接超时 */
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(30);
+    /** 默认的请求超时，模型生成长篇分析需要较长时间 */
+    public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(240);
+    /** 默认的线程数 */
+    public static final int DEFAULT_THREADS = 4;
+    private static final Duration WARM_UP_TIMEOUT = Duration.ofSeconds(10);
+
+    private static HttpTransport shared;
+
+    private final Duration connectTimeout;
+    private final Duration requestTimeout;
+    private final ExecutorService executor;
+    private final Map<String, HttpClient> clients = new ConcurrentHashMap<>();
+    private final Map<String, Metrics> metrics = new ConcurrentHashMap<>();
+
+    /**
+     * @param connectTimeout 连接超时
+     * @param requestTimeout 请求超时，从发出请求到收到响应头
+     * @param threads 处理HTTP连接的线程数
+     */
+    public HttpTransport(Duration connectTimeout, Duration requestTimeout, int threads) {
+        this.connectTimeout = connectTimeout;
+        this.requestTimeout = requestTimeout;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "http-transport-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 获取按配置创建的共享传输层
+     * @return 共享的传输层
+     */
+    public static synchronized HttpTransport shared() {
+        if (shared == null) {
+            shared = new HttpTransport(Configuration.getHttpConnectTimeout(), Configuration.getHttpRequestTimeout(),
+                    Configuration.getHttpThreads());
+        }
+        return shared;
+    }
+
+    /**
+     * 创建请求，设置请求超时
+     * @param uri 请求地址
+     * @return 请求构建器
+     */
+    public HttpRequest.Builder newRequest(URI uri) {
+        return HttpRequest.newBuilder(uri).timeout(requestTimeout);
+    }
+
+    /**
+     * 发送请求并记录统计
+     * @param providerName API提供商名称
+     * @param request 请求
+     * @return 响应
+     */
+    public HttpResponse<String> send(String providerName, HttpRequest request) throws IOException, InterruptedException {
+        return send(providerName, request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * 发送请求并记录统计，响应体按指定方式处理
+     * @param providerName API提供商名称
+     * @param request 请求
+     * @param bodyHandler 响应体的处理方式，如以InputStream读取
+     * @return 响应
+     */
+    public <T> HttpResponse<T> send(String providerName, HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler)
+            throws IOException, InterruptedException {
+        Metrics providerMetrics = metrics(providerName);
+        long start = System.nanoTime();
+        try {
+            HttpResponse<T> response = clientFor(request.uri()).send(request, bodyHandler);
+            providerMetrics.record(response.version(), System.nanoTime() - start);
+            return response;
+        } catch (IOException e) {
+            providerMetrics.recordFailure(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    /**
+     * 异步发送请求并记录统计，不占用调用线程
+     * @param providerName API提供商名称
+     * @param request 请求
+     * @return 收到完整响应时完成的Future
+     */
+    public CompletableFuture<HttpResponse<String>> sendAsync(String providerName, HttpRequest request) {
+        return sendAsync(providerName, request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * 异步发送请求并记录统计，响应体按指定方式处理
+     * @param providerName API提供商名称
+     * @param request 请求
+     * @param bodyHandler 响应体的处理方式
+     * @return 响应体处理完成时完成的Future
+     */
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(String providerName, HttpRequest request,
+                                                            HttpResponse.BodyHandler<T> bodyHandler) {
+        Metrics providerMetrics = metrics(providerName);
+        long start = System.nanoTime();
+        return clientFor(request.uri()).sendAsync(request, bodyHandler)
+                .whenComplete((response, e) -> {
+                    if (e != null) {
+                        providerMetrics.recordFailure(System.nanoTime() - start);
+                    } else {
+                        providerMetrics.record(response.version(), System.nanoTime() - start);
+                    }
+                });
+    }
+
+    /**
+     * 发送请求并按Server-Sent Events逐条读取响应，每读到一条data就交给handler。
+     * handler返回false时立即关闭响应流，取消请求，不再等待剩余输出
+     * @param providerName API提供商名称
+     * @param request 请求
+     * @param handler data内容的处理器，返回是否继续读取
+     * @return 流式响应的结果
+     */
+    public StreamResult stream(String providerName, HttpRequest request, Predicate<String> handler)
+            throws IOException, InterruptedException {
+        try {
+            return streamAsync(providerName, request, handler).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * {@link #stream}的异步版本，响应体按行推送给handler，不占用调用线程
+     * @param providerName API提供商名称
+     * @param request 请求
+     * @param handler data内容的处理器，返回是否继续读取，在HTTP线程上调用
+     * @return 流式响应结束或被取消时完成的Future
+     */
+    public CompletableFuture<StreamResult> streamAsync(String providerName, HttpRequest request, Predicate<String> handler) {
+        Metrics providerMetrics = metrics(providerName);
+        long start = System.nanoTime();
+        CompletableFuture<StreamResult> result = new CompletableFuture<>();
+        AtomicBoolean headersReceived = new AtomicBoolean();
+        Consumer<Throwable> failure = e -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (result.completeExceptionally(cause)) {
+                if (headersReceived.get()) {
+                    // 读取响应体时连接中断，请求已经计入统计
+                    providerMetrics.failures.increment();
+                } else {
+                    providerMetrics.recordFailure(System.nanoTime() - start);
+                }
+            }
+        };
+        HttpResponse.BodyHandler<Void> bodyHandler = responseInfo -> {
+            // 流式请求的耗时只统计到收到响应头
+            headersReceived.set(true);
+            providerMetrics.record(responseInfo.version(), System.nanoTime() - start);
+            if (responseInfo.statusCode() != 200) {
+                return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8),
+                        body -> {
+                            result.complete(new StreamResult(responseInfo.statusCode(), body, false));
+                            return null;
+                        });
+            }
+            return HttpResponse.BodySubscribers.fromLineSubscriber(
+                    new EventSubscriber(handler, providerMetrics, result, failure));
+        };
+        clientFor(request.uri()).sendAsync(request, bodyHandler)
+                .whenComplete((response, e) -> {
+                    if (e != null) {
+                        failure.accept(e);
+                    }
+                });
+        return result;
+    }
+
+    /**
+     * 流式响应的结果
+     * @param statusCode HTTP状态码
+     * @param errorBody 状态码不是200时的响应体
+     * @param aborted 是否被handler提前取消
+     */
+    public record StreamResult(int statusCode, String errorBody, boolean aborted) {
+    }
+
+    /**
+     * 预热到API主机的连接，向主机根路径发送HEAD请求，不携带密钥。失败只记录日志
+     * @param providerName API提供商名称
+     * @param uri API地址
+     * @return 预热完成时结束的Future
+     */
+    public CompletableFuture<Void> warmUp(String providerName, URI uri) {
+        URI origin = URI.create(uri.getScheme() + "://" + uri.getRawAuthority() + "/");
+        HttpRequest request = HttpRequest.newBuilder(origin)
+                .timeout(WARM_UP_TIMEOUT)
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .build();
+        long start = System.nanoTime();
+        return clientFor(origin).sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .handle((response, e) -> {
+                    long millis = (System.nanoTime() - start) / 1_000_000;
+                    if (e != null) {
+                        logger.warn("Connection warm-up for {} failed after {} ms: {}", providerName, millis, e.toString());
+                    } else {
+                        metrics(providerName).warmUps.increment();
+                        logger.info("Warmed up {} connection to {} in {} ms ({})", providerName, origin.getHost(), millis, response.version());
+                    }
+                    return null;
+                });
+    }
+
+    /**
+     * 获取API提供商的连接统计
+     * @param providerName API提供商名称
+     * @return 统计
+     */
+    public Metrics metrics(String providerName) {
+        return metrics.computeIfAbsent(providerName, name -> new Metrics());
+    }
+
+    /**
+     * 输出各API提供商的连接统计
+     */
+    public void logMetrics() {
+        metrics.forEach((providerName, providerMetrics) ->
+                logger.info("HTTP {}: {} requests, {} failed, {} aborted, {} over HTTP/2, {} warm-ups, avg {} ms",
+                        providerName, providerMetrics.getRequests(), providerMetrics.getFailures(), providerMetrics.getAborted(),
+                        providerMetrics.getHttp2Responses(), providerMetrics.getWarmUps(), providerMetrics.getAverageMillis()));
+    }
+
+    private HttpClient clientFor(URI uri) {
+        String origin = uri.getScheme() + "://" + uri.getRawAuthority();
+        return clients.computeIfAbsent(origin, key -> HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .executor(executor)
+                .build());
+    }
+
+    /**
+     * 逐行读取Server-Sent Events，把data内容交给handler，读到[DONE]或handler返回false时结束
+     */
+    private static class EventSubscriber implements Flow.Subscriber<String> {
+        private final Predicate<String> handler;
+        private final Metrics providerMetrics;
+        private final CompletableFuture<StreamResult> result;
+        private final Consumer<Throwable> failure;
+        private Flow.Subscription subscription;
+
+        private EventSubscriber(Predicate<String> handler, Metrics providerMetrics,
+                                CompletableFuture<StreamResult> result, Consumer<Throwable> failure) {
+            this.handler = handler;
+            this.providerMetrics = providerMetrics;
+            this.result = result;
+            this.failure = failure;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String line) {
+            // 取消之后可能还会收到已经缓冲的行
+            if (result.isDone() || !line.startsWith("data:")) {
+                return;
+            }
+            String data = line.substring(5).strip();
+            if (data.equals("[DONE]")) {
+                result.complete(new StreamResult(200, null, false));
+                subscription.cancel();
+                return;
+            }
+            boolean proceed;
+            try {
+                proceed = handler.test(data);
+            } catch (RuntimeException e) {
+                failure.accept(e);
+                subscription.cancel();
+                return;
+            }
+            if (!proceed) {
+                providerMetrics.aborted.increment();
+                result.complete(new StreamResult(200, null, true));
+                subscription.cancel();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            failure.accept(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            result.complete(new StreamResult(200, null, false));
+        }
+    }
+
+    /**
+     * 一个API提供商的连接统计
+     */
+    public static class Metrics {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder http2Responses = new LongAdder();
+        private final LongAdder warmUps = new LongAdder();
+        private final LongAdder aborted = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+
+        private void record(HttpClient.Version version, long nanos) {
+            requests.increment();
+            totalNanos.add(nanos);
+            if (version == HttpClient.Version.HTTP_2) {
+                http2Responses.increment();
+            }
+        }
+
+        private void recordFailure(long nanos) {
+            requests.increment();
+            failures.increment();
+            totalNanos.add(nanos);
+        }
+
+        public long getRequests() {
+            return requests.sum();
+        }
+
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        public long getHttp2Responses() {
+            return http2Responses.sum();
+        }
+
+        public long getWarmUps() {
+            return warmUps.sum();
+        }
+
+        public long getAborted() {
+            return aborted.sum();
+        }
+
+        public long getAverageMillis() {
+            long count = requests.sum();
+            return count == 0 ? 0 : totalNanos.sum() / count / 1_000_000;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.novelreader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * 增量读取检查点，记录上次解析到的位置，连载小说追加新章节后只需从最后一个章节组开始重新扫描
+ * <p>
+ * 最后一个章节组可能不满，或者尚有分析失败的章节组，因此续读位置取第一个未完成分析的章节组的起始章节，
+ * 续读时该章节组会连同新追加的章节重新生成。
+ */
+public class IngestionCheckpoint {
+    private static final Logger logger = LoggerFactory.getLogger(IngestionCheckpoint.class);
+    private static final String FILE_SUFFIX = ".checkpoint";
+
+    private long fileSize;
+    private String charset;
+    private int lastChapterNumber;
+    private long lastChapterOffset;
+    private int groupId;
+    private int groupStartChapterNumber;
+    private long groupStartOffset;
+
+    /**
+     * 根据章节布局和续读的章节组创建检查点
+     * @param layout 本次扫描得到的章节布局
+     * @param fileSize 扫描时的文件大小
+     * @param resumeGroup 下次续读的章节组，其起始章节必须在布局中
+     * @return 检查点
+     */
+    public static IngestionCheckpoint of(ChapterLayout layout, long fileSize, ChapterGroup resumeGroup) {
+        ChapterSpan groupStart = null;
+        for (ChapterSpan span : layout.spans()) {
+            if (span.chapterNumber() == resumeGroup.getStartChapterNumber()) {
+                groupStart = span;
+                break;
+            }
+        }
+        if (groupStart == null) {
+            throw new IllegalArgumentException("Chapter " + resumeGroup.getStartChapterNumber() + " is not in the layout");
+        }
+        ChapterSpan last = layout.spans().get(layout.size() - 1);
+
+        IngestionCheckpoint checkpoint = new IngestionCheckpoint();
+        checkpoint.setFileSize(fileSize);
+        checkpoint.setCharset(layout.charset().name());
+        checkpoint.setLastChapterNumber(last.chapterNumber());
+        checkpoint.setLastChapterOffset(last.titleOffset());
+        checkpoint.setGroupId(resumeGroup.getChapterGroupId());
+        checkpoint.setGroupStartChapterNumber(groupStart.chapterNumber());
+        checkpoint.setGroupStartOffset(groupStart.titleOffset());
+        return checkpoint;
+    }
+
+    /**
+     * 小说文件对应的检查点文件路径
+     * @param outputDirectory 输出目录
+     * @param novelFilePath 小说文件路径
+     * @return 检查点文件路径
+     */
+    public static Path pathFor(String outputDirectory, String novelFilePath) {
+        return Paths.get(outputDirectory, Paths.get(novelFilePath).getFileName() + FILE_SUFFIX);
+    }
+
+    /**
+     * 读取检查点文件
+     * @param path 检查点文件路径
+     * @return 检查点，文件不存在或内容损坏时返回null
+     */
+    public static IngestionCheckpoint load(Path path) {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+            IngestionCheckpoint checkpoint = new IngestionCheckpoint();
+            checkpoint.setFileSize(Long.parseLong(properties.getProperty("fileSize")));
+            checkpoint.setCharset(properties.getProperty("charset"));
+            checkpoint.setLastChapterNumber(Integer.parseInt(properties.getProperty("lastChapterNumber")));
+            checkpoint.setLastChapterOffset(Long.parseLong(properties.getProperty("lastChapterOffset")));
+            checkpoint.setGroupId(Integer.parseInt(properties.getProperty("groupId")));
+            checkpoint.setGroupStartChapterNumber(Integer.parseInt(properties.getProperty("groupStartChapterNumber")));
+            checkpoint.setGroupStartOffset(Long.parseLong(properties.getProperty("groupStartOffset")));
+            return checkpoint;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Ignoring unreadable checkpoint: {}", path, e);
+            return null;
+        }
+    }
+
+    /**
+     * 保存检查点文件
+     * @param path 检查点文件路径
+     */
+    public void save(Path path) {
+        Properties properties = new Properties();
+        properties.setProperty("fileSize", Long.toString(fileSize));
+        properties.setProperty("charset", charset);
+        properties.setProperty("lastChapterNumber", Integer.toString(lastChapterNumber));
+        properties.setProperty("lastChapterOffset", Long.toString(lastChapterOffset));
+        properties.setProperty("groupId", Integer.toString(groupId));
+        properties.setProperty("groupStartChapterNumber", Integer.toString(groupStartChapterNumber));
+        properties.setProperty("groupStartOffset", Long.toString(groupStartOffset));
+        try {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+                properties.store(writer, "novel-reader ingestion checkpoint");
+            }
+            logger.info("Saved checkpoint at chapter {} (group {}): {}", lastChapterNumber, groupId, path);
+        } catch (IOException e) {
+            logger.error("Error writing checkpoint: {}", path, e);
+            throw new RuntimeException("Error writing checkpoint", e);
+        }
+    }
+
+    /**
+     * 判断章节布局是否从本检查点续读得到，即布局的第一章正好是续读章节组的起始章节
+     * @param layout 章节布局
+     * @return 是否从检查点续读
+     */
+    public boolean isResumedBy(ChapterLayout layout) {
+        if (layout.size() == 0) {
+            return false;
+        }
+        ChapterSpan first = layout.spans().get(0);
+        return first.chapterNumber() == groupStartChapterNumber && first.titleOffset() == groupStartOffset;
+    }
+
+    /**
+     * 从覆盖整个文件的章节布局中截取续读章节组及之后的章节
+     * @param layout 完整的章节布局，例如从章节索引加载的布局
+     * @return 截取后的章节布局，找不到续读位置时返回原布局
+     */
+    public ChapterLayout tailOf(ChapterLayout layout) {
+        List<ChapterSpan> spans = layout.spans();
+        for (int i = 0; i < spans.size(); i++) {
+            ChapterSpan span = spans.get(i);
+            if (span.chapterNumber() == groupStartChapterNumber && span.titleOffset() == groupStartOffset) {
+                return new ChapterLayout(layout.sourcePath(), layout.charset(), spans.subList(i, spans.size()));
+            }
+        }
+        return layout;
+    }
+
+    // Getters and Setters
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    public String getCharset() {
+        return charset;
+    }
+
+    public void setCharset(String charset) {
+        this.charset = charset;
+    }
+
+    public int getLastChapterNumber() {
+        return lastChapterNumber;
+    }
+
+    public void setLastChapterNumber(int lastChapterNumber) {
+        this.lastChapterNumber = lastChapterNumber;
+    }
+
+    public long getLastChapterOffset() {
+        return lastChapterOffset;
+    }
+
+    public void setLastChapterOffset(long lastChapterOffset) {
+        this.lastChapterOffset = lastChapterOffset;
+    }
+
+    public int getGroupId() {
+        return groupId;
+    }
+
+    public void setGroupId(int groupId) {
+        this.groupId = groupId;
+    }
+
+    public int getGroupStartChapterNumber() {
+        return groupStartChapterNumber;
+    }
+
+    public void setGroupStartChapterNumber(int groupStartChapterNumber) {
+        this.groupStartChapterNumber = groupStartChapterNumber;
+    }
+
+    public long getGroupStartOffset() {
+        return groupStartOffset;
+    }
+
+    public void setGroupStartOffset(long groupStartOffset) {
+        this.groupStartOffset = groupStartOffset;
+    }
+}
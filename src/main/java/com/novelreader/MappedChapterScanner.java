@@ -0,0 +1,327 @@
+package com.novelreader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * 基于内存映射的章节扫描器，直接在字节缓冲区上定位章节边界，不复制章节文本
+ */
+public class MappedChapterScanner {
+    // 并行扫描时单个任务处理的最大字节数
+    private static final int DEFAULT_SPLIT_THRESHOLD = 8 * 1024 * 1024;
+    // 标题行前后允许的空白字符数，用于估算标题行的最大字节数
+    private static final int TITLE_PADDING_CHARS = 16;
+
+    private final Charset charset;
+    private final HeadingMatcher headingMatcher;
+    private final int splitThreshold;
+    // 标题行必然包含的文字在文件编码下的字节序列
+    private final byte[] requiredBytes;
+    // 标题行的最大字节数，超过的行不解码
+    private final long maxHeadingBytes;
+
+    public MappedChapterScanner() {
+        this(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param charset 文件编码，必须兼容ASCII
+     */
+    public MappedChapterScanner(Charset charset) {
+        this(charset, new ChapterHeadingMatcher());
+    }
+
+    /**
+     * @param charset 文件编码，必须兼容ASCII
+     * @param headingMatcher 章节标题匹配器
+     */
+    public MappedChapterScanner(Charset charset, HeadingMatcher headingMatcher) {
+        this(charset, headingMatcher, DEFAULT_SPLIT_THRESHOLD);
+    }
+
+    /**
+     * @param charset 文件编码，必须兼容ASCII
+     * @param headingMatcher 章节标题匹配器
+     * @param splitThreshold 并行扫描时单个任务处理的最大字节数
+     */
+    public MappedChapterScanner(Charset charset, HeadingMatcher headingMatcher, int splitThreshold) {
+        this.charset = charset;
+        this.headingMatcher = headingMatcher;
+        this.splitThreshold = splitThreshold;
+        this.requiredBytes = headingMatcher.requiredText().getBytes(charset);
+        int maxTitleLength = headingMatcher.maxTitleLength();
+        this.maxHeadingBytes = maxTitleLength == Integer.MAX_VALUE
+                ? Long.MAX_VALUE
+                : (long) Math.ceil((maxTitleLength + TITLE_PADDING_CHARS) * (double) charset.newEncoder().maxBytesPerChar());
+    }
+
+    /**
+     * 以只读方式映射整个文件
+     * @param channel 文件通道
+     * @return 映射后的缓冲区
+     * @throws IOException 文件超过2GB或映射失败时抛出
+     */
+    public static MappedByteBuffer map(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("File too large for mapped scanning: " + size + " bytes");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+
+    /**
+     * 扫描整个缓冲区中的章节
+     * @param buffer 小说文件内容
+     * @return 章节字节区间列表，偏移量相对于缓冲区起始位置
+     */
+    public List<ChapterSpan> scan(ByteBuffer buffer) {
+        return scan(buffer, 0);
+    }
+
+    /**
+     * 从指定位置开始扫描缓冲区中的章节
+     * @param buffer 小说文件内容
+     * @param from 起始位置，必须位于行首（例如跳过BOM之后）
+     * @return 章节字节区间列表，偏移量相对于缓冲区起始位置
+     */
+    public List<ChapterSpan> scan(ByteBuffer buffer, int from) {
+        return toSpans(buffer, findHeadings(buffer, from, buffer.limit(), new LineDecoder()));
+    }
+
+    /**
+     * 将缓冲区按行边界切分成多个区间，在ForkJoinPool中并行查找章节标题，结果与顺序扫描完全一致
+     * @param buffer 小说文件内容
+     * @param pool 执行扫描任务的线程池
+     * @return 章节字节区间列表，偏移量相对于缓冲区起始位置
+     */
+    public List<ChapterSpan> scanParallel(ByteBuffer buffer, ForkJoinPool pool) {
+        return scanParallel(buffer, 0, pool);
+    }
+
+    /**
+     * 从指定位置开始并行扫描缓冲区中的章节
+     * @param buffer 小说文件内容
+     * @param from 起始位置，必须位于行首
+     * @param pool 执行扫描任务的线程池
+     * @return 章节字节区间列表，偏移量相对于缓冲区起始位置
+     */
+    public List<ChapterSpan> scanParallel(ByteBuffer buffer, int from, ForkJoinPool pool) {
+        List<Heading> headings = pool.invoke(new HeadingScanTask(buffer, from, buffer.limit()));
+        return toSpans(buffer, headings);
+    }
+
+    /**
+     * 查找[from, to)范围内的所有章节标题行，from和to必须位于行首
+     */
+    private List<Heading> findHeadings(ByteBuffer buffer, int from, int to, LineDecoder lineDecoder) {
+        List<Heading> headings = new ArrayList<>();
+        int position = from;
+
+        while (position < to) {
+            // 定位当前行的结束位置，与BufferedReader.readLine一致，\r、\n、\r\n均视为换行
+            int lineStart = position;
+            int lineEnd = lineStart;
+            while (lineEnd < to) {
+                byte b = buffer.get(lineEnd);
+                if (b == '\n' || b == '\r') {
+                    break;
+                }
+                lineEnd++;
+            }
+            position = skipLineBreak(buffer, lineEnd, to);
+
+            int chapterNumber = matchHeading(buffer, lineStart, lineEnd, lineDecoder);
+            if (chapterNumber >= 0) {
+                headings.add(new Heading(chapterNumber, lineStart, lineEnd, position));
+            }
+        }
+        return headings;
+    }
+
+    /**
+     * 由章节标题行计算章节区间，每章正文到下一个标题行为止
+     */
+    private static List<ChapterSpan> toSpans(ByteBuffer buffer, List<Heading> headings) {
+        List<ChapterSpan> spans = new ArrayList<>(headings.size());
+        for (int i = 0; i < headings.size(); i++) {
+            Heading heading = headings.get(i);
+            int contentEnd = i + 1 < headings.size() ? headings.get(i + 1).lineStart() : buffer.limit();
+            spans.add(toSpan(buffer, heading.chapterNumber(), heading.lineStart(), heading.lineEnd(),
+                    heading.contentStart(), contentEnd));
+        }
+        return spans;
+    }
+
+    /**
+     * 跳过位于position的换行符，返回下一行的起始位置
+     */
+    private static int skipLineBreak(ByteBuffer buffer, int position, int to) {
+        if (position >= to) {
+            return position;
+        }
+        if (buffer.get(position) == '\r' && position + 1 < to && buffer.get(position + 1) == '\n') {
+            return position + 2;
+        }
+        return position + 1;
+    }
+
+    /**
+     * 从position开始查找下一行的行首，找不到时返回limit
+     */
+    private static int nextLineStart(ByteBuffer buffer, int position, int limit) {
+        while (position < limit) {
+            byte b = buffer.get(position);
+            if (b == '\n' || b == '\r') {
+                return skipLineBreak(buffer, position, limit);
+            }
+            position++;
+        }
+        return limit;
+    }
+
+    /**
+     * 将缓冲区中的一段字节解码为字符串，换行统一为\n
+     * @param buffer 小说文件内容
+     * @param offset 起始偏移
+     * @param length 字节长度
+     * @param decoder 可复用的解码器，参见{@link CharsetDetector#newDecoder}
+     * @return 解码后的文本
+     */
+    public static String decode(ByteBuffer buffer, int offset, int length, CharsetDecoder decoder) {
+        String text;
+        try {
+            text = decoder.decode(buffer.slice(offset, length)).toString();
+        } catch (CharacterCodingException e) {
+            // 解码器使用REPLACE策略，不会抛出该异常
+            throw new IllegalStateException(e);
+        }
+        if (text.indexOf('\r') < 0) {
+            return text;
+        }
+        return text.replace("\r\n", "\n").replace('\r', '\n');
+    }
+
+    /**
+     * 判断一行是否为章节标题，先按行长度和必然出现的文字在字节上过滤，再解码交给标题匹配器
+     * @return 章节号，不是章节标题时返回-1
+     */
+    private int matchHeading(ByteBuffer buffer, int lineStart, int lineEnd, LineDecoder lineDecoder) {
+        if (lineEnd - lineStart > maxHeadingBytes || !contains(buffer, lineStart, lineEnd, requiredBytes)) {
+            return HeadingMatcher.NO_MATCH;
+        }
+        return headingMatcher.match(lineDecoder.decode(buffer, lineStart, lineEnd));
+    }
+
+    private static boolean contains(ByteBuffer buffer, int from, int to, byte[] pattern) {
+        for (int i = from; i <= to - pattern.length; i++) {
+            if (startsWith(buffer, i, pattern)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int offset, byte[] pattern) {
+        for (int k = 0; k < pattern.length; k++) {
+            if (buffer.get(offset + k) != pattern[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 构建章节区间，去除标题和正文首尾的空白字节（与String.trim一致）
+     */
+    private static ChapterSpan toSpan(ByteBuffer buffer, int chapterNumber,
+                                      int titleStart, int titleEnd, int contentStart, int contentEnd) {
+        while (titleStart < titleEnd && isBlank(buffer.get(titleStart))) {
+            titleStart++;
+        }
+        while (titleEnd > titleStart && isBlank(buffer.get(titleEnd - 1))) {
+            titleEnd--;
+        }
+        while (contentStart < contentEnd && isBlank(buffer.get(contentStart))) {
+            contentStart++;
+        }
+        while (contentEnd > contentStart && isBlank(buffer.get(contentEnd - 1))) {
+            contentEnd--;
+        }
+        return new ChapterSpan(chapterNumber, titleStart, titleEnd - titleStart, contentStart, contentEnd - contentStart);
+    }
+
+    private static boolean isBlank(byte b) {
+        return b >= 0 && b <= ' ';
+    }
+
+    /**
+     * 章节标题行的位置
+     */
+    private record Heading(int chapterNumber, int lineStart, int lineEnd, int contentStart) {
+    }
+
+    /**
+     * 将候选行解码到复用的字符缓冲区中，每个扫描任务独占一个实例
+     */
+    private class LineDecoder {
+        private final CharsetDecoder decoder = CharsetDetector.newDecoder(charset);
+        private CharBuffer chars = CharBuffer.allocate(256);
+
+        CharBuffer decode(ByteBuffer buffer, int lineStart, int lineEnd) {
+            int capacity = (int) Math.ceil((lineEnd - lineStart) * (double) decoder.maxCharsPerByte());
+            if (chars.capacity() < capacity) {
+                chars = CharBuffer.allocate(capacity);
+            }
+            chars.clear();
+            decoder.reset();
+            decoder.decode(buffer.slice(lineStart, lineEnd - lineStart), chars, true);
+            decoder.flush(chars);
+            chars.flip();
+            return chars;
+        }
+    }
+
+    /**
+     * 并行查找章节标题的任务，区间超过阈值时在行边界处一分为二
+     */
+    private class HeadingScanTask extends RecursiveTask<List<Heading>> {
+        private final ByteBuffer buffer;
+        private final int from;
+        private final int to;
+
+        HeadingScanTask(ByteBuffer buffer, int from, int to) {
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<Heading> compute() {
+            if (to - from > splitThreshold) {
+                // 分界点取中点之后的第一个行首
+                int middle = nextLineStart(buffer, from + (to - from) / 2, to);
+                if (middle > from && middle < to) {
+                    HeadingScanTask left = new HeadingScanTask(buffer, from, middle);
+                    HeadingScanTask right = new HeadingScanTask(buffer, middle, to);
+                    left.fork();
+                    List<Heading> rightHeadings = right.compute();
+                    List<Heading> headings = left.join();
+                    headings.addAll(rightHeadings);
+                    return headings;
+                }
+            }
+            return findHeadings(buffer, from, to, new LineDecoder());
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.novelreader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * 保存在内存映射文件中的配额，同一台机器上使用同一文件的进程共享每分钟的请求数和token数
+ * <p>
+ * 每个令牌桶只用一个long保存"桶被用完的时间"（GCRA算法）：扣除时把它向后推，推到超过当前时间一分钟以上说明余量不足。
+ * 一次扣除只需要对一个long做CAS，直接在映射的缓冲区上进行，不需要锁，也不需要外部服务。
+ * 平台不支持在映射缓冲区上CAS时改用文件锁，同一台机器上的进程会选择同一种方式。
+ * <p>
+ * 文件中同时保存限额，最后启动的进程的配置生效。时间使用系统时钟，各进程之间可以比较。
+ * <p>
+ * 文件锁由整个进程持有，同一进程内打开同一文件的多个实例重复加锁会抛出OverlappingFileLockException，
+ * 因此加文件锁前先在按文件路径共享的对象锁上互斥。
+ */
+public class MappedFileQuota implements RateQuota, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(MappedFileQuota.class);
+    private static final long MAGIC = 0x4e524c51_00000001L;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int REQUESTS_PER_MINUTE_OFFSET = 8;
+    private static final int TOKENS_PER_MINUTE_OFFSET = 16;
+    private static final int REQUESTS_EMPTY_AT_OFFSET = 24;
+    private static final int TOKENS_EMPTY_AT_OFFSET = 32;
+    private static final int FILE_SIZE = 64;
+    private static final long NANOS_PER_MINUTE = TimeUnit.MINUTES.toNanos(1);
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    // 同一进程内每个配额文件一个对象锁，配额文件只有一两个，不需要清理
+    private static final Map<Path, Object> PATH_LOCKS = new ConcurrentHashMap<>();
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final boolean fileLocking;
+    private final LongSupplier clock;
+    private final Object pathLock;
+
+    /**
+     * 打开或创建配额文件，并写入本进程的限额
+     * @param path 配额文件
+     * @param requestsPerMinute 每分钟的请求数
+     * @param tokensPerMinute 每分钟的token数，不大于0时不限制
+     */
+    public MappedFileQuota(Path path, int requestsPerMinute, long tokensPerMinute) {
+        this(path, requestsPerMinute, tokensPerMinute, false, MappedFileQuota::epochNanos);
+    }
+
+    /**
+     * @param forceFileLock 是否不使用CAS，始终使用文件锁
+     * @param clock 纪元纳秒时钟，各进程必须一致
+     */
+    MappedFileQuota(Path path, int requestsPerMinute, long tokensPerMinute, boolean forceFileLock, LongSupplier clock) {
+        if (requestsPerMinute <= 0) {
+            throw new IllegalArgumentException("requestsPerMinute must be positive: " + requestsPerMinute);
+        }
+        this.path = path;
+        this.clock = clock;
+        this.pathLock = PATH_LOCKS.computeIfAbsent(path.toAbsolutePath().normalize(), key -> new Object());
+        try {
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+            buffer.order(ByteOrder.nativeOrder());
+            fileLocking = forceFileLock || !supportsCompareAndSet(buffer);
+            initialize(requestsPerMinute, Math.max(tokensPerMinute, 0));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open shared rate limit file: " + path, e);
+        }
+        logger.info("Using shared rate limit file {} ({}), requests_per_minute={}, tokens_per_minute={}",
+                path, fileLocking ? "file lock" : "CAS", requestsPerMinute, tokensPerMinute);
+    }
+
+    @Override
+    public long tryTake(long tokenCount) {
+        return locked(() -> {
+            long now = clock.getAsLong();
+            long waitNanos = take(REQUESTS_EMPTY_AT_OFFSET, read(REQUESTS_PER_MINUTE_OFFSET), 1, now);
+            if (waitNanos > 0) {
+                return waitNanos;
+            }
+            long tokensPerMinute = read(TOKENS_PER_MINUTE_OFFSET);
+            if (tokensPerMinute > 0 && tokenCount > 0) {
+                waitNanos = take(TOKENS_EMPTY_AT_OFFSET, tokensPerMinute, Math.min(tokenCount, tokensPerMinute), now);
+                if (waitNanos > 0) {
+                    // token不足，退回已扣除的请求数
+                    give(REQUESTS_EMPTY_AT_OFFSET, read(REQUESTS_PER_MINUTE_OFFSET), 1, now);
+                    return waitNanos;
+                }
+            }
+            return 0;
+        });
+    }
+
+    @Override
+    public void adjust(long requestCount, long tokenCount) {
+        locked(() -> {
+            long now = clock.getAsLong();
+            if (requestCount != 0) {
+                give(REQUESTS_EMPTY_AT_OFFSET, read(REQUESTS_PER_MINUTE_OFFSET), requestCount, now);
+            }
+            long tokensPerMinute = read(TOKENS_PER_MINUTE_OFFSET);
+            if (tokenCount != 0 && tokensPerMinute > 0) {
+                give(TOKENS_EMPTY_AT_OFFSET, tokensPerMinute, tokenCount, now);
+            }
+            return 0;
+        });
+    }
+
+    @Override
+    public long tokenCapacity() {
+        return locked(() -> read(TOKENS_PER_MINUTE_OFFSET));
+    }
+
+    /**
+     * @return 是否使用文件锁而不是CAS
+     */
+    public boolean isFileLocking() {
+        return fileLocking;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // 把桶被用完的时间向后推amount份，推过当前时间一分钟以上时不扣除，返回需要等待的纳秒数
+    private long take(int offset, long perMinute, long amount, long now) {
+        long increment = increment(perMinute, amount);
+        while (true) {
+            long emptyAt = read(offset);
+            long next = Math.max(emptyAt, now) + increment;
+            long waitNanos = next - now - NANOS_PER_MINUTE;
+            if (waitNanos > 0) {
+                return waitNanos;
+            }
+            if (compareAndSet(offset, emptyAt, next)) {
+                return 0;
+            }
+        }
+    }
+
+    // 退回amount份，为负时追加扣除
+    private void give(int offset, long perMinute, long amount, long now) {
+        long increment = increment(perMinute, amount);
+        while (true) {
+            long emptyAt = read(offset);
+            // 桶已满时用完时间早于当前时间，追加扣除要从当前时间算起
+            long next = amount < 0 ? Math.max(emptyAt, now) - increment : emptyAt - increment;
+            if (compareAndSet(offset, emptyAt, next)) {
+                return;
+            }
+        }
+    }
+
+    private static long increment(long perMinute, long amount) {
+        return (long) ((double) amount * NANOS_PER_MINUTE / perMinute);
+    }
+
+    private void initialize(int requestsPerMinute, long tokensPerMinute) throws IOException {
+        synchronized (pathLock) {
+            try (FileLock lock = channel.lock(0, FILE_SIZE, false)) {
+                if (buffer.getLong(MAGIC_OFFSET) != MAGIC) {
+                    buffer.putLong(REQUESTS_EMPTY_AT_OFFSET, 0);
+                    buffer.putLong(TOKENS_EMPTY_AT_OFFSET, 0);
+                    buffer.putLong(MAGIC_OFFSET, MAGIC);
+                } else if (buffer.getLong(REQUESTS_PER_MINUTE_OFFSET) != requestsPerMinute
+                        || buffer.getLong(TOKENS_PER_MINUTE_OFFSET) != tokensPerMinute) {
+                    logger.info("Updating shared rate limits in {} from requests_per_minute={}, tokens_per_minute={}",
+                            path, buffer.getLong(REQUESTS_PER_MINUTE_OFFSET), buffer.getLong(TOKENS_PER_MINUTE_OFFSET));
+                }
+                buffer.putLong(REQUESTS_PER_MINUTE_OFFSET, requestsPerMinute);
+                buffer.putLong(TOKENS_PER_MINUTE_OFFSET, tokensPerMinute);
+                buffer.force();
+            }
+        }
+    }
+
+    // 使用文件锁时在锁内执行，同一进程内的线程先用按路径共享的对象锁互斥，避免重复加锁
+    private long locked(LongSupplier operation) {
+        if (!fileLocking) {
+            return operation.getAsLong();
+        }
+        synchronized (pathLock) {
+            try (FileLock lock = channel.lock(0, FILE_SIZE, false)) {
+                return operation.getAsLong();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to lock shared rate limit file: " + path, e);
+            }
+        }
+    }
+
+    private long read(int offset) {
+        return fileLocking ? buffer.getLong(offset) : (long) LONGS.getVolatile(buffer, offset);
+    }
+
+    private boolean compareAndSet(int offset, long expected, long value) {
+        if (fileLocking) {
+            if (buffer.getLong(offset) != expected) {
+                return false;
+            }
+            buffer.putLong(offset, value);
+            return true;
+        }
+        return LONGS.compareAndSet(buffer, offset, expected, value);
+    }
+
+    private static boolean supportsCompareAndSet(MappedByteBuffer buffer) {
+        try {
+            long value = (long) LONGS.getVolatile(buffer, MAGIC_OFFSET);
+            LONGS.compareAndSet(buffer, MAGIC_OFFSET, value, value);
+            return true;
+        } catch (UnsupportedOperationException | IllegalStateException e) {
+            logger.warn("Memory-mapped CAS not supported, falling back to file lock: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private static long epochNanos() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000_000L + now.getNano();
+    }
+}
@@ -3,6 +3,8 @@ package com.novelreader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
 
@@ -20,25 +22,86 @@ public class NovelAnalyzer {
 
             logger.info("开始分析小说: {}", novelFilePath);
             
-            // 1. 识别章节
-            logger.info("步骤1: 识别章节");
-            ChapterIdentifier chapterIdentifier = new ChapterIdentifier();
-            List<Chapter> chapters = chapterIdentifier.identifyChapters(novelFilePath);
+            // 创建API客户端，在识别章节的同时预热到API主机的连接
+            // 配置了共享配额文件时，同一台机器上的多个进程共用限额
+            MappedFileQuota sharedQuota = Configuration.getRateLimitSharedFile() == null ? null
+                    : new MappedFileQuota(Paths.get(Configuration.getRateLimitSharedFile()),
+                            Configuration.getRateLimitPerMinute(), Configuration.getTokenLimitPerMinute());
+            RateLimiter rateLimiter = sharedQuota == null
+                    ? new RateLimiter(Configuration.getRateLimitPerMinute(), Configuration.getTokenLimitPerMinute())
+                    : new RateLimiter(sharedQuota);
+            ApiClient apiClient = ApiClientFactory.createApiClient(rateLimiter);
+            apiClient.warmUp();
             
-            // 2. 验证章节顺序
-            logger.info("步骤2: 验证章节顺序");
-            ChapterValidator chapterValidator = new ChapterValidator();
-            ValidationResult validationResult = chapterValidator.validateChapterOrder(chapters);
+            // 1. 识别章节：文件未变化时直接加载章节索引，存在检查点时只读取上次未完成的章节组及之后追加的内容
+            logger.info("步骤1: 识别章节");
+            Path checkpointPath = IngestionCheckpoint.pathFor(outputDirectory, novelFilePath);
+            IngestionCheckpoint checkpoint = IngestionCheckpoint.load(checkpointPath);
+            Path indexPath = ChapterIndex.pathFor(novelFilePath);
+            long fileSize = Files.size(Paths.get(novelFilePath));
+            ChapterIdentifier chapterIdentifier = new ChapterIdentifier(ChapterIdentifier.ScanMode.PARALLEL, true);
+            ChapterLayout layout = ChapterIndex.load(indexPath, novelFilePath);
+            boolean indexed = layout != null;
+            if (indexed) {
+                if (checkpoint != null) {
+                    layout = checkpoint.tailOf(layout);
+                }
+            } else {
+                layout = chapterIdentifier.scanChapterLayout(novelFilePath, checkpoint);
+            }
+            List<Chapter> chapters;
+            int firstGroupId = 1;
+            int firstChapterNumber = 1;
+            boolean resumed = false;
+            if (layout == null) {
+                // UTF-16等编码无法按字节偏移续读，逐行读取整个文件
+                chapters = chapterIdentifier.identifyChapters(novelFilePath);
+            } else {
+                chapters = chapterIdentifier.toChapters(layout);
+                if (checkpoint != null && checkpoint.isResumedBy(layout)) {
+                    resumed = true;
+                    firstGroupId = checkpoint.getGroupId();
+                    firstChapterNumber = checkpoint.getGroupStartChapterNumber();
+                }
+            }
             
-            if (!validationResult.isValid()) {
-                logger.error("章节验证失败: {}", validationResult.getErrorMessage());
-                System.exit(1);
+            // 2. 验证章节顺序，索引中的章节已在写入索引前通过验证
+            if (!indexed) {
+                logger.info("步骤2: 验证章节顺序");
+                ChapterValidator chapterValidator = new ChapterValidator();
+                ValidationResult validationResult = chapterValidator.validateChapterOrder(chapters, firstChapterNumber);
+                
+                if (!validationResult.isValid()) {
+                    logger.error("章节验证失败: {}", validationResult.getErrorMessage());
+                    System.exit(1);
+                }
+                
+                if (layout != null) {
+                    ChapterLayout fullLayout = resumed ? ChapterIndex.extend(indexPath, layout) : layout;
+                    if (fullLayout != null) {
+                        ChapterIndex.write(indexPath, fullLayout);
+                    }
+                }
             }
             
-            // 3. 分割小说
+            // 3. 分割小说，与分析在流水线中同时进行
             logger.info("步骤3: 分割小说");
-            ChapterSplitter chapterSplitter = new ChapterSplitter();
-            List<ChapterGroup> chapterGroups = chapterSplitter.splitNovelIntoChapterGroups(chapters, outputDirectory);
+            TokenEstimator tokenEstimator = TokenEstimator.forProvider(Configuration.getCurrentProvider());
+            TextNormalizer textNormalizer = Configuration.createTextNormalizer(tokenEstimator);
+            // 每次请求都带上提示词，章节组内容只能使用扣除提示词后的预算
+            long maxContentTokens = Configuration.getMaxGroupTokens();
+            if (maxContentTokens > 0) {
+                long promptTokens = Configuration.getPrompt() == null ? 0 : tokenEstimator.estimate(Configuration.getPrompt());
+                maxContentTokens -= promptTokens;
+                if (maxContentTokens <= 0) {
+                    logger.error("提示词约{}个token，已用完max_group_tokens={}的预算", promptTokens, Configuration.getMaxGroupTokens());
+                    System.exit(1);
+                }
+                logger.info("每组章节内容的token预算: {}（扣除提示词约{}个token）", maxContentTokens, promptTokens);
+            }
+            ChapterSplitter chapterSplitter = new ChapterSplitter(textNormalizer,
+                    maxContentTokens, Configuration.getMaxGroupChapters(), tokenEstimator,
+                    Configuration.isSliceExportEnabled());
             
             // 4 & 5. 分析小说并保存结果
             logger.info("步骤4 & 5: 分析小说并保存结果");
@@ -47,9 +110,6 @@ public class NovelAnalyzer {
             // 检查配置
             // 此处不再需要检查 API 密钥，因为已经在 Configuration 类初始化时验证
             
-            // 创建API客户端
-            ApiClient apiClient = ApiClientFactory.createApiClient(new RateLimiter(Configuration.getRateLimitPerMinute()));
-            
             // 创建结果验证器和保存器
             ResultValidator validator = new ResultValidator();
             ResultSaver resultSaver = new ResultSaver();
@@ -57,12 +117,44 @@ public class NovelAnalyzer {
             // 创建分析处理器
             String finalOutputFile = Paths.get("output", "全本总结.md").toString();
             AnalysisProcessor processor = new AnalysisProcessor(
-                    apiClient, validator, resultSaver, Configuration.analysisResultsDirPath, finalOutputFile);
+                    apiClient, validator, resultSaver, Configuration.analysisResultsDirPath, finalOutputFile,
+                    tokenEstimator, maxContentTokens);
             
-            // 处理章节组
-            boolean success = processor.processChapterGroups(chapterGroups);
+            // 处理章节组，每分割出一组立即提交分析
+            NovelPipeline pipeline = new NovelPipeline(chapterSplitter, processor, Configuration.getPipelineQueueCapacity(),
+                    Configuration.isPipelineAsync());
+            boolean success = pipeline.run(chapters, outputDirectory, firstGroupId);
+            // 分析结束后不再调用API，释放共享配额文件的映射
+            if (sharedQuota != null) {
+                sharedQuota.close();
+            }
+            List<ChapterGroup> chapterGroups = pipeline.getChapterGroups();
+            if (textNormalizer != null) {
+                textNormalizer.logStatistics();
+            }
+            HttpTransport.shared().logMetrics();
+            if (apiClient.getConcurrencyLimit() > 0) {
+                logger.info("结束时的并发上限: {}", apiClient.getConcurrencyLimit());
+            }
+            // 录制时缓存被包装在录制客户端内，需要沿包装链查找
+            CachingApiClient cachingApiClient = apiClient.unwrap(CachingApiClient.class);
+            if (cachingApiClient != null) {
+                logger.info("响应缓存命中{}次，未命中{}次", cachingApiClient.getHits(), cachingApiClient.getMisses());
+            }
+            ReplayApiClient replayApiClient = apiClient.unwrap(ReplayApiClient.class);
+            if (replayApiClient != null && replayApiClient.getMisses() > 0) {
+                logger.warn("回放时有{}个请求没有录制的响应", replayApiClient.getMisses());
+            }
             
             if (success) {
+                // 6. 保存检查点，下次从第一个未完成分析的章节组续读
+                if (layout != null) {
+                    ChapterGroup resumeGroup = chapterGroups.stream()
+                            .filter(group -> !Files.exists(Paths.get(Configuration.analysisResultsDirPath, group.getAnalysisFileName())))
+                            .findFirst()
+                            .orElse(chapterGroups.get(chapterGroups.size() - 1));
+                    IngestionCheckpoint.of(layout, fileSize, resumeGroup).save(checkpointPath);
+                }
                 logger.info("小说分析完成，结果保存在: {}", finalOutputFile);
             } else {
                 logger.error("小说分析过程中发生错误");
@@ -0,0 +1,155 @@
+package com.novelreader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 章节组流水线，分割和分析同时进行
+ * <p>
+ * 分割线程每生成一个章节组就放入有界队列，分析处理器从队列中取出章节组立即提交分析，
+ * 第一个章节组生成后即可开始调用API。分析跟不上时队列写满，分割线程阻塞，
+ * 内存中的章节组不超过队列容量加上正在分析的数量，与小说长度无关。
+ * 可以选择以异步方式分析，请求并发只受限流器限制，不再受分析线程数限制。
+ */
+public class NovelPipeline {
+    private static final Logger logger = LoggerFactory.getLogger(NovelPipeline.class);
+    /** 默认的队列容量 */
+    public static final int DEFAULT_QUEUE_CAPACITY = 20;
+    // 分割结束的标记
+    private static final ChapterGroup END_OF_GROUPS = new ChapterGroup(0, 0, 0);
+
+    private final ChapterSplitter chapterSplitter;
+    private final AnalysisProcessor analysisProcessor;
+    private final int queueCapacity;
+    private final boolean async;
+    private final List<ChapterGroup> chapterGroups = new ArrayList<>();
+
+    /**
+     * @param chapterSplitter 章节分割器
+     * @param analysisProcessor 分析处理器
+     * @param queueCapacity 等待分析的章节组的最大数量
+     */
+    public NovelPipeline(ChapterSplitter chapterSplitter, AnalysisProcessor analysisProcessor, int queueCapacity) {
+        this(chapterSplitter, analysisProcessor, queueCapacity, false);
+    }
+
+    /**
+     * @param chapterSplitter 章节分割器
+     * @param analysisProcessor 分析处理器
+     * @param queueCapacity 等待分析的章节组的最大数量
+     * @param async 是否以异步方式分析章节组
+     */
+    public NovelPipeline(ChapterSplitter chapterSplitter, AnalysisProcessor analysisProcessor, int queueCapacity,
+                         boolean async) {
+        this.chapterSplitter = chapterSplitter;
+        this.analysisProcessor = analysisProcessor;
+        this.queueCapacity = queueCapacity;
+        this.async = async;
+    }
+
+    /**
+     * 分割并分析小说
+     * @param chapters 章节列表，第一章必须是某个章节组的起始章节
+     * @param outputDirectory 输出目录
+     * @param firstGroupId 第一个章节组的编号
+     * @return 是否成功处理所有章节组
+     */
+    public boolean run(List<Chapter> chapters, String outputDirectory, int firstGroupId) {
+        BlockingQueue<ChapterGroup> queue = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        chapterGroups.clear();
+
+        Thread splitter = new Thread(() -> {
+            try {
+                chapterSplitter.splitNovelIntoChapterGroups(chapters, outputDirectory, firstGroupId, group -> {
+                    // 只保留编号和章节范围，章节内容随分析完成释放
+                    chapterGroups.add(new ChapterGroup(group.getChapterGroupId(),
+                            group.getStartChapterNumber(), group.getEndChapterNumber()));
+                    put(queue, group);
+                });
+            } catch (RuntimeException e) {
+                failure.set(e);
+            } finally {
+                put(queue, END_OF_GROUPS);
+            }
+        }, "chapter-splitter");
+        // 分析异常退出时不阻止JVM退出
+        splitter.setDaemon(true);
+        splitter.start();
+
+        QueueIterator groups = new QueueIterator(queue);
+        boolean success = async
+                ? analysisProcessor.processChapterGroupsAsync(groups)
+                : analysisProcessor.processChapterGroups(groups);
+        try {
+            splitter.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure.get() != null) {
+            logger.error("Error splitting chapter groups: {}", failure.get().getMessage());
+            throw failure.get();
+        }
+        return success;
+    }
+
+    /**
+     * 本次运行生成的章节组，只包含编号和章节范围，不包含章节内容
+     * @return 章节组列表，应在run返回后调用
+     */
+    public List<ChapterGroup> getChapterGroups() {
+        return chapterGroups;
+    }
+
+    private static void put(BlockingQueue<ChapterGroup> queue, ChapterGroup group) {
+        try {
+            queue.put(group);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while queueing chapter group", e);
+        }
+    }
+
+    /**
+     * 按顺序读取队列中的章节组，读到结束标记为止
+     */
+    private static class QueueIterator implements Iterator<ChapterGroup> {
+        private final BlockingQueue<ChapterGroup> queue;
+        private ChapterGroup next;
+
+        QueueIterator(BlockingQueue<ChapterGroup> queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                try {
+                    next = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    next = END_OF_GROUPS;
+                }
+            }
+            return next != END_OF_GROUPS;
+        }
+
+        @Override
+        public ChapterGroup next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ChapterGroup group = next;
+            next = null;
+            return group;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.novelreader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 基于文件偏移的章节，只记录标题和正文在源文件中的位置，在需要时才读取并解码正文
+ */
+public class OffsetChapter extends Chapter {
+    private final Path sourcePath;
+    private final Charset charset;
+    private final long titleOffset;
+    private final int titleLength;
+    private final long contentOffset;
+    private final int contentLength;
+    
+    public OffsetChapter(int chapterNumber, String chapterTitle, Path sourcePath, Charset charset,
+                         long titleOffset, int titleLength, long contentOffset, int contentLength) {
+        super(chapterNumber, chapterTitle, null);
+        this.sourcePath = sourcePath;
+        this.charset = charset;
+        this.titleOffset = titleOffset;
+        this.titleLength = titleLength;
+        this.contentOffset = contentOffset;
+        this.contentLength = contentLength;
+    }
+    
+    /**
+     * 获取章节正文，未显式设置时每次都从源文件读取，不在内存中保留
+     * @return 章节正文
+     */
+    @Override
+    public String getChapterContent() {
+        String content = super.getChapterContent();
+        if (content != null) {
+            return content;
+        }
+        
+        try (FileChannel channel = FileChannel.open(sourcePath, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(contentLength);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, contentOffset + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of file: " + sourcePath);
+                }
+            }
+            return MappedChapterScanner.decode(buffer, 0, contentLength, CharsetDetector.newDecoder(charset));
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading chapter content: " + getChapterTitle(), e);
+        }
+    }
+    
+    /**
+     * 章节在源文件中的结束位置（不含）
+     */
+    public long getEndOffset() {
+        return Math.max(titleOffset + titleLength, contentOffset + contentLength);
+    }
+    
+    // Getters
+    public Path getSourcePath() {
+        return sourcePath;
+    }
+    
+    public Charset getCharset() {
+        return charset;
+    }
+    
+    public long getTitleOffset() {
+        return titleOffset;
+    }
+    
+    public int getTitleLength() {
+        return titleLength;
+    }
+    
+    public long getContentOffset() {
+        return contentOffset;
+    }
+    
+    public int getContentLength() {
+        return contentLength;
+    }
+}
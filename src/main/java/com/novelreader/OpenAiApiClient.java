@@ -1,19 +1,19 @@
 package com.novelreader;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.time.Duration;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * OpenAI API客户端，封装API调用细节
@@ -21,20 +21,28 @@ import java.util.Map;
 public class OpenAiApiClient implements ApiClient {
     private static final Logger logger = LoggerFactory.getLogger(OpenAiApiClient.class);
     private static final String API_URL = "https://api.openai.com/v1/chat/completions";
-    private static final int TIMEOUT_SECONDS = 240;
     
     private final String apiKey;
     private final RateLimiter rateLimiter;
-    private final HttpClient httpClient;
-    private final ObjectMapper objectMapper;
+    private final HttpTransport transport;
+    private final TokenEstimator tokenEstimator = TokenEstimator.forProvider("openai");
+    private final boolean streaming;
     
     public OpenAiApiClient(String apiKey, RateLimiter rateLimiter) {
+        this(apiKey, rateLimiter, HttpTransport.shared(), false);
+    }
+    
+    /**
+     * @param apiKey API密钥
+     * @param rateLimiter 速率限制器
+     * @param transport HTTP传输层
+     * @param streaming 是否以流式方式接收输出并检查格式
+     */
+    public OpenAiApiClient(String apiKey, RateLimiter rateLimiter, HttpTransport transport, boolean streaming) {
         this.apiKey = apiKey;
         this.rateLimiter = rateLimiter;
-        this.httpClient = HttpClient.newBuilder()
-                .connectTimeout(Duration.ofSeconds(TIMEOUT_SECONDS))
-                .build();
-        this.objectMapper = new ObjectMapper();
+        this.transport = transport;
+        this.streaming = streaming;
     }
     
     /**
@@ -44,53 +52,21 @@ public class OpenAiApiClient implements ApiClient {
      */
     @Override
     public ApiResponse analyzeChapterGroup(ApiRequest request) {
+        long tokenCount = request.estimateInputTokens(tokenEstimator);
         try {
-            rateLimiter.acquire();
-            
-            // 构建OpenAI请求体，格式与Gemini不同
-            Map<String, Object> requestBody = new HashMap<>();
-            // 设置模型，将Gemini模型名称映射到OpenAI模型
-            requestBody.put("model", mapModelName("GPT-4o"));
-            
-            // 构建消息
-            List<Map<String, String>> messages = new ArrayList<>();
-            // 系统消息（提示）
-            Map<String, String> systemMessage = new HashMap<>();
-            systemMessage.put("role", "system");
-            systemMessage.put("content", request.getPrompt());
-            messages.add(systemMessage);
+            rateLimiter.acquire(request, tokenCount);
             
-            // 用户消息（章节内容）
-            Map<String, String> userMessage = new HashMap<>();
-            userMessage.put("role", "user");
-            userMessage.put("content", request.getChapterGroupContent());
-            messages.add(userMessage);
+            HttpRequest httpRequest = buildHttpRequest(request);
             
-            requestBody.put("messages", messages);
-            
-            String jsonBody = objectMapper.writeValueAsString(requestBody);
-            
-            HttpRequest httpRequest = HttpRequest.newBuilder()
-                    .uri(URI.create(API_URL))
-                    .header("Content-Type", "application/json")
-                    .header("Authorization", "Bearer " + apiKey)
-                    .POST(HttpRequest.BodyPublishers.ofString(jsonBody))
-                    .build();
-            
-            HttpResponse<String> response = httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofString());
-            
-            if (response.statusCode() == 200) {
-                String responseBody = response.body();
-                logger.info("OpenAI API call successful for chapter group");
-                
-                // 解析OpenAI响应并转换为通用格式
-                String extractedContent = extractContentFromOpenAiResponse(responseBody);
-                return ApiResponse.success(extractedContent);
+            ApiResponse apiResponse;
+            if (streaming) {
+                apiResponse = StreamingFormatGuard.stream(transport, getProviderName(), httpRequest, request, this::extractStreamEvent);
             } else {
-                String errorMessage = "OpenAI API call failed with status code: " + response.statusCode() + ", body: " + response.body();
-                logger.error(errorMessage);
-                return ApiResponse.failure(errorMessage);
+                HttpResponse<InputStream> response = transport.send(getProviderName(), httpRequest, HttpResponse.BodyHandlers.ofInputStream());
+                apiResponse = toApiResponse(response.statusCode(), response.body());
             }
+            rateLimiter.settle(tokenCount, apiResponse.usage());
+            return apiResponse;
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             logger.error("OpenAI API call interrupted", e);
@@ -98,8 +74,111 @@ public class OpenAiApiClient implements ApiClient {
         } catch (IOException e) {
             logger.error("OpenAI API call failed", e);
             return ApiResponse.failure("OpenAI API call failed: " + e.getMessage());
-        } finally {
-            rateLimiter.release();
+        }
+    }
+    
+    /**
+     * 异步分析章节组内容，排队等待限流许可，响应到达后在HTTP线程上完成
+     * @param request API请求
+     * @return 完成时给出API响应的Future
+     */
+    @Override
+    public CompletableFuture<ApiResponse> analyzeChapterGroupAsync(ApiRequest request) {
+        long tokenCount = request.estimateInputTokens(tokenEstimator);
+        return rateLimiter.acquireAsync(request, tokenCount)
+                .thenCompose(permit -> sendAsync(request))
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    logger.error("OpenAI API call failed", cause);
+                    return ApiResponse.failure("OpenAI API call failed: " + cause.getMessage());
+                })
+                .thenApply(response -> {
+                    rateLimiter.settle(tokenCount, response.usage());
+                    return response;
+                });
+    }
+    
+    private CompletableFuture<ApiResponse> sendAsync(ApiRequest request) {
+        HttpRequest httpRequest;
+        try {
+            httpRequest = buildHttpRequest(request);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (streaming) {
+            return StreamingFormatGuard.streamAsync(transport, getProviderName(), httpRequest, request, this::extractStreamEvent);
+        }
+        // 响应体先收成字节数组再解析，解析时不会阻塞等待网络
+        return transport.sendAsync(getProviderName(), httpRequest, HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> toApiResponse(response.statusCode(), new ByteArrayInputStream(response.body())));
+    }
+    
+    private HttpRequest buildHttpRequest(ApiRequest request) throws IOException {
+        RequestBodyWriter.Body body = RequestBodyWriter.encode(request, streaming ? "openai:stream" : "openai",
+                generator -> writeRequestBody(generator, request));
+        
+        return transport.newRequest(URI.create(API_URL))
+                .header("Content-Type", "application/json")
+                .header("Authorization", "Bearer " + apiKey)
+                .POST(body.publisher())
+                .build();
+    }
+    
+    /**
+     * 写出OpenAI请求体，格式与Gemini不同。提示词作为系统消息只转义一次，章节内容作为用户消息直接转义写出
+     */
+    private void writeRequestBody(JsonGenerator generator, ApiRequest request) throws IOException {
+        generator.writeStartObject();
+        // 设置模型，将Gemini模型名称映射到OpenAI模型
+        generator.writeStringField("model", mapModelName("GPT-4o"));
+        generator.writeBooleanField("stream", streaming);
+        if (streaming) {
+            // 流式响应默认不带token用量，要求在最后一条事件中给出
+            generator.writeObjectFieldStart("stream_options");
+            generator.writeBooleanField("include_usage", true);
+            generator.writeEndObject();
+        }
+        generator.writeArrayFieldStart("messages");
+        
+        // 系统消息（提示）
+        generator.writeStartObject();
+        generator.writeStringField("role", "system");
+        generator.writeFieldName("content");
+        generator.writeString(RequestBodyWriter.preEscaped(request.getPrompt()));
+        generator.writeEndObject();
+        
+        // 用户消息（章节内容）
+        generator.writeStartObject();
+        generator.writeStringField("role", "user");
+        generator.writeStringField("content", request.getChapterGroupContent());
+        generator.writeEndObject();
+        
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+    
+    /**
+     * 以流式方式解析响应体，只取出输出文本、结束原因和token用量
+     */
+    private ApiResponse toApiResponse(int statusCode, InputStream body) {
+        try (InputStream input = body) {
+            if (statusCode == 200) {
+                ResponseExtractor.Extracted extracted = ResponseExtractor.extractChatCompletion(input);
+                logger.info("OpenAI API call successful for chapter group, finish reason: {}, usage: {}",
+                        extracted.finishReason(), extracted.usage());
+                if (extracted.text().isEmpty()) {
+                    logger.error("Failed to extract content from OpenAI response");
+                }
+                return ApiResponse.success(extracted.text(), extracted.finishReason(), extracted.usage());
+            } else {
+                String errorMessage = "OpenAI API call failed with status code: " + statusCode
+                        + ", body: " + new String(input.readAllBytes(), StandardCharsets.UTF_8);
+                logger.error(errorMessage);
+                return ApiResponse.failure(errorMessage, statusCode);
+            }
+        } catch (IOException e) {
+            logger.error("Error parsing OpenAI response", e);
+            return ApiResponse.failure("OpenAI API call failed: " + e.getMessage());
         }
     }
 
@@ -108,6 +187,16 @@ public class OpenAiApiClient implements ApiClient {
         return "openai";
     }
 
+    @Override
+    public String getModelName() {
+        return mapModelName("GPT-4o");
+    }
+
+    @Override
+    public void warmUp() {
+        transport.warmUp(getProviderName(), URI.create(API_URL));
+    }
+
     /**
      * 将Gemini模型名称映射到OpenAI模型名称
      * @param geminiModelName Gemini模型名称
@@ -126,31 +215,13 @@ public class OpenAiApiClient implements ApiClient {
     }
     
     /**
-     * 从OpenAI响应中提取内容
-     * @param responseBody OpenAI响应体
-     * @return 提取的内容
+     * 从流式响应的一条事件中取出新输出的文本（位于choices[0].delta.content）、结束原因和token用量
      */
-    private String extractContentFromOpenAiResponse(String responseBody) {
+    private ResponseExtractor.Extracted extractStreamEvent(String data) {
         try {
-            // 解析JSON响应
-            Map<String, Object> responseMap = objectMapper.readValue(responseBody, Map.class);
-            
-            // 获取choices部分
-            List<Map<String, Object>> choices = (List<Map<String, Object>>) responseMap.get("choices");
-            if (choices != null && !choices.isEmpty()) {
-                // 获取第一个选择的消息
-                Map<String, Object> message = (Map<String, Object>) choices.get(0).get("message");
-                if (message != null) {
-                    // 返回消息内容
-                    return (String) message.get("content");
-                }
-            }
-            
-            logger.error("Failed to extract content from OpenAI response: " + responseBody);
-            return "";
-        } catch (Exception e) {
-            logger.error("Error parsing OpenAI response", e);
-            return "";
+            return ResponseExtractor.extractChatCompletion(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Malformed OpenAI stream event", e);
         }
     }
 }
@@ -3,57 +3,317 @@ package com.novelreader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.Semaphore;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
- * 限流器，使用信号量实现每分钟15次的API调用限制
+ * 限流器，同时限制每分钟的请求数（RPM）和token数（TPM）
+ * <p>
+ * 两个令牌桶按时间连续补充，满桶时允许一次性用完，之后按平均速率放行，不会在整分钟时集中放行。
+ * 所有获取请求按先来后到排队，排在前面的请求没有获取到时后面的请求不插队。
+ * 需要等待时通过延迟执行唤醒，不使用单独的补充线程；请求完成后不需要释放。
+ * <p>
+ * 余量默认保存在进程内，使用{@link MappedFileQuota}时由同一台机器上的多个进程共享。
  */
 public class RateLimiter {
     private static final Logger logger = LoggerFactory.getLogger(RateLimiter.class);
-    
-    private final Semaphore semaphore;
-    private final int permitsPerMinute;
-    
-    public RateLimiter(int permitsPerMinute) {
-        this.permitsPerMinute = permitsPerMinute;
-        this.semaphore = new Semaphore(permitsPerMinute);
-        
-        // 每分钟重置信号量
-        Thread replenishThread = new Thread(() -> {
-            while (!Thread.currentThread().isInterrupted()) {
-                try {
-                    TimeUnit.MINUTES.sleep(1);
-                    int permits = permitsPerMinute - semaphore.availablePermits();
-                    if (permits > 0) {
-                        semaphore.release(permits);
-                        logger.info("Replenished {} permits", permits);
-                    }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    logger.info("Rate limiter replenish thread interrupted");
+    private static final long NANOS_PER_MINUTE = TimeUnit.MINUTES.toNanos(1);
+
+    private final RateQuota quota;
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+    // 已安排的唤醒时间，没有安排时为Long.MAX_VALUE
+    private long wakeUpAt = Long.MAX_VALUE;
+
+    /**
+     * 只限制请求数
+     * @param requestsPerMinute 每分钟的请求数
+     */
+    public RateLimiter(int requestsPerMinute) {
+        this(requestsPerMinute, 0);
+    }
+
+    /**
+     * @param requestsPerMinute 每分钟的请求数
+     * @param tokensPerMinute 每分钟的token数，不大于0时不限制
+     */
+    public RateLimiter(int requestsPerMinute, long tokensPerMinute) {
+        this(new LocalQuota(requestsPerMinute, tokensPerMinute));
+    }
+
+    /**
+     * @param quota 保存余量的配额存储
+     */
+    public RateLimiter(RateQuota quota) {
+        this.quota = quota;
+    }
+
+    /**
+     * 获取一次请求的许可，不占用token数，没有可用许可时阻塞
+     * @throws InterruptedException 如果线程被中断
+     */
+    public void acquire() throws InterruptedException {
+        acquire(0);
+    }
+
+    /**
+     * 获取一次请求的许可和指定的token数，没有足够的余量时阻塞
+     * @param tokenCount 预计的token数，超过每分钟上限时按上限计算
+     * @throws InterruptedException 如果线程被中断
+     */
+    public void acquire(long tokenCount) throws InterruptedException {
+        CompletableFuture<Void> waiter = acquireAsync(tokenCount);
+        try {
+            waiter.get();
+        } catch (InterruptedException e) {
+            waiter.cancel(false);
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Rate limiter waiter failed", e.getCause());
+        }
+    }
+
+    /**
+     * 为API请求获取许可，等待的时间记录到请求中，以便从响应时间中扣除
+     * @param request API请求
+     * @param tokenCount 预计的token数，超过每分钟上限时按上限计算
+     * @throws InterruptedException 如果线程被中断
+     */
+    public void acquire(ApiRequest request, long tokenCount) throws InterruptedException {
+        long startNanos = System.nanoTime();
+        try {
+            acquire(tokenCount);
+        } finally {
+            request.setPermitWaitNanos(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * 在指定时间内获取一次请求的许可和指定的token数
+     * @param tokenCount 预计的token数，超过每分钟上限时按上限计算
+     * @param timeout 最长等待时间，为0时不等待
+     * @param unit 时间单位
+     * @return 是否获取到许可，超时未获取到时不占用余量
+     * @throws InterruptedException 如果线程被中断
+     */
+    public boolean tryAcquire(long tokenCount, long timeout, TimeUnit unit) throws InterruptedException {
+        CompletableFuture<Void> waiter = acquireAsync(tokenCount);
+        try {
+            waiter.get(timeout, unit);
+            return true;
+        } catch (TimeoutException e) {
+            // 取消失败说明刚好获取到了
+            return !waiter.cancel(false);
+        } catch (InterruptedException e) {
+            waiter.cancel(false);
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Rate limiter waiter failed", e.getCause());
+        }
+    }
+
+    /**
+     * 异步获取一次请求的许可，不占用token数
+     * @return 获取到许可时完成的Future
+     */
+    public CompletableFuture<Void> acquireAsync() {
+        return acquireAsync(0);
+    }
+
+    /**
+     * 异步获取一次请求的许可和指定的token数，没有足够的余量时排队，不阻塞调用线程
+     * @param tokenCount 预计的token数，超过每分钟上限时按上限计算
+     * @return 获取到许可时完成的Future，取消后不占用余量；完成后的回调可能在唤醒线程上执行
+     */
+    public CompletableFuture<Void> acquireAsync(long tokenCount) {
+        Waiter waiter = new Waiter(clampTokens(tokenCount));
+        // 取消的等待者可能排在队首，取消后立即放行后面的等待者，不等到为它安排的唤醒时间
+        waiter.future.whenComplete((permit, e) -> {
+            if (waiter.future.isCancelled()) {
+                dispatchWaiters();
+            }
+        });
+        synchronized (waiters) {
+            waiters.add(waiter);
+        }
+        dispatchWaiters();
+        return waiter.future;
+    }
+
+    /**
+     * {@link #acquire(ApiRequest, long)}的异步版本
+     * @param request API请求
+     * @param tokenCount 预计的token数，超过每分钟上限时按上限计算
+     * @return 获取到许可时完成的Future，完成前已把等待的时间记录到请求中
+     */
+    public CompletableFuture<Void> acquireAsync(ApiRequest request, long tokenCount) {
+        long startNanos = System.nanoTime();
+        return acquireAsync(tokenCount).whenComplete((permit, e) -> request.setPermitWaitNanos(System.nanoTime() - startNanos));
+    }
+
+    /**
+     * 请求完成后按实际用量修正token余量，实际用量少于预计时退回差额，多于预计时从后续的余量中扣除
+     * @param reservedTokens 获取许可时预计的token数
+     * @param usage API返回的token用量，为null时不修正
+     */
+    public void settle(long reservedTokens, ApiResponse.Usage usage) {
+        if (quota.tokenCapacity() <= 0 || usage == null || usage.totalTokens() <= 0) {
+            return;
+        }
+        quota.adjust(0, clampTokens(reservedTokens) - usage.totalTokens());
+        dispatchWaiters();
+    }
+
+    /**
+     * 按排队顺序把余量交给等待者，余量不足时安排在足够时唤醒
+     */
+    private void dispatchWaiters() {
+        List<Waiter> granted = new ArrayList<>();
+        synchronized (waiters) {
+            Waiter waiter;
+            while ((waiter = waiters.peek()) != null) {
+                if (waiter.future.isDone()) {
+                    // 已取消
+                    waiters.poll();
+                    continue;
+                }
+                long waitNanos = quota.tryTake(waiter.tokenCount);
+                if (waitNanos > 0) {
+                    scheduleWakeUp(System.nanoTime(), waitNanos);
                     break;
                 }
+                granted.add(waiters.poll());
+            }
+        }
+        // 在锁外完成，等待者的回调可能会再次获取许可；等待者已取消时退回余量
+        boolean refunded = false;
+        for (Waiter waiter : granted) {
+            if (waiter.future.complete(null)) {
+                logger.debug("Acquired permit for {} tokens", waiter.tokenCount);
+            } else {
+                quota.adjust(1, waiter.tokenCount);
+                refunded = true;
+            }
+        }
+        if (refunded) {
+            dispatchWaiters();
+        }
+    }
+
+    private long clampTokens(long tokenCount) {
+        long capacity = quota.tokenCapacity();
+        return capacity <= 0 ? 0 : Math.min(Math.max(tokenCount, 0), capacity);
+    }
+
+    // 持有waiters锁时调用，已安排的唤醒不晚于所需时间时不重复安排
+    private void scheduleWakeUp(long now, long waitNanos) {
+        long deadline = now + waitNanos;
+        if (wakeUpAt != Long.MAX_VALUE && wakeUpAt - deadline <= 0) {
+            return;
+        }
+        wakeUpAt = deadline;
+        logger.debug("Rate limited, next permit in {} ms", TimeUnit.NANOSECONDS.toMillis(waitNanos));
+        CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS).execute(() -> {
+            synchronized (waiters) {
+                if (wakeUpAt == deadline) {
+                    wakeUpAt = Long.MAX_VALUE;
+                }
             }
+            dispatchWaiters();
         });
-        replenishThread.setDaemon(true);
-        replenishThread.start();
     }
-    
+
     /**
-     * 获取一个许可，如果没有可用许可则阻塞
-     * @throws InterruptedException 如果线程被中断
+     * 进程内的配额，两个按时间连续补充的令牌桶
      */
-    public void acquire() throws InterruptedException {
-        semaphore.acquire();
-        logger.debug("Acquired permit, remaining: {}", semaphore.availablePermits());
+    private static final class LocalQuota implements RateQuota {
+        private final Bucket requests;
+        // 不限制token数时为null
+        private final Bucket tokens;
+
+        LocalQuota(int requestsPerMinute, long tokensPerMinute) {
+            if (requestsPerMinute <= 0) {
+                throw new IllegalArgumentException("requestsPerMinute must be positive: " + requestsPerMinute);
+            }
+            long now = System.nanoTime();
+            this.requests = new Bucket(requestsPerMinute, now);
+            this.tokens = tokensPerMinute > 0 ? new Bucket(tokensPerMinute, now) : null;
+        }
+
+        @Override
+        public synchronized long tryTake(long tokenCount) {
+            refill();
+            long waitNanos = Math.max(requests.nanosUntil(1), tokens == null ? 0 : tokens.nanosUntil(tokenCount));
+            if (waitNanos > 0) {
+                return waitNanos;
+            }
+            requests.available -= 1;
+            if (tokens != null) {
+                tokens.available -= tokenCount;
+            }
+            return 0;
+        }
+
+        @Override
+        public synchronized void adjust(long requestCount, long tokenCount) {
+            refill();
+            requests.available = Math.min(requests.capacity, requests.available + requestCount);
+            if (tokens != null) {
+                tokens.available = Math.min(tokens.capacity, tokens.available + tokenCount);
+            }
+        }
+
+        @Override
+        public long tokenCapacity() {
+            return tokens == null ? 0 : tokens.capacity;
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            requests.refill(now);
+            if (tokens != null) {
+                tokens.refill(now);
+            }
+        }
     }
-    
+
     /**
-     * 释放一个许可
+     * 按时间连续补充的令牌桶，余量可以为负（实际用量超出预计时）
      */
-    public void release() {
-        semaphore.release();
-        logger.debug("Released permit, remaining: {}", semaphore.availablePermits());
+    private static final class Bucket {
+        private final long capacity;
+        private final double perNano;
+        private double available;
+        private long refilledAt;
+
+        Bucket(long perMinute, long now) {
+            this.capacity = perMinute;
+            this.perNano = perMinute / (double) NANOS_PER_MINUTE;
+            this.available = perMinute;
+            this.refilledAt = now;
+        }
+
+        void refill(long now) {
+            available = Math.min(capacity, available + (now - refilledAt) * perNano);
+            refilledAt = now;
+        }
+
+        long nanosUntil(double amount) {
+            return available >= amount ? 0 : (long) Math.ceil((amount - available) / perNano);
+        }
+    }
+
+    private static final class Waiter {
+        private final long tokenCount;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Waiter(long tokenCount) {
+            this.tokenCount = tokenCount;
+        }
     }
 }
@@ -0,0 +1,27 @@
+package com.novelreader;
+
+/**
+ * 限流器的配额存储，保存每分钟请求数和token数的余量
+ * <p>
+ * 限流器负责排队和唤醒，配额存储只负责原子地检查并扣除余量，可以是进程内的，也可以由多个进程共享。
+ */
+public interface RateQuota {
+    /**
+     * 尝试扣除一次请求和指定的token数，余量不足时不扣除
+     * @param tokenCount token数，不超过{@link #tokenCapacity()}
+     * @return 0表示已扣除，否则为余量足够前预计需要等待的纳秒数
+     */
+    long tryTake(long tokenCount);
+
+    /**
+     * 退回或追加扣除余量
+     * @param requestCount 退回的请求数
+     * @param tokenCount 退回的token数，为负时追加扣除
+     */
+    void adjust(long requestCount, long tokenCount);
+
+    /**
+     * @return 每分钟的token数上限，为0时不限制token数
+     */
+    long tokenCapacity();
+}
@@ -0,0 +1,95 @@
+package com.novelreader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 录制API调用的客户端，包装任意ApiClient
+ * <p>
+ * 每次调用完成后把请求指纹、响应和耗时追加到记录文件中，之后可以用{@link ReplayApiClient}离线回放，
+ * 不调用API就能完整运行分析流程。失败的调用也会记录，回放时按原样返回，以便重现重试的过程。
+ */
+public class RecordingApiClient implements ApiClient {
+    private static final Logger logger = LoggerFactory.getLogger(RecordingApiClient.class);
+
+    private final ApiClient delegate;
+    private final Path cassettePath;
+
+    /**
+     * @param delegate 实际调用API的客户端
+     * @param cassettePath 记录文件，已存在时追加
+     */
+    public RecordingApiClient(ApiClient delegate, Path cassettePath) {
+        this.delegate = delegate;
+        this.cassettePath = cassettePath;
+    }
+
+    @Override
+    public ApiResponse analyzeChapterGroup(ApiRequest request) {
+        long startTime = System.nanoTime();
+        ApiResponse response = delegate.analyzeChapterGroup(request);
+        record(request, response, startTime);
+        return response;
+    }
+
+    @Override
+    public CompletableFuture<ApiResponse> analyzeChapterGroupAsync(ApiRequest request) {
+        long startTime = System.nanoTime();
+        return delegate.analyzeChapterGroupAsync(request).thenApply(response -> {
+            record(request, response, startTime);
+            return response;
+        });
+    }
+
+    @Override
+    public void discardResponse(ApiRequest request) {
+        delegate.discardResponse(request);
+    }
+
+    @Override
+    public String getProviderName() {
+        return delegate.getProviderName();
+    }
+
+    @Override
+    public String getModelName() {
+        return delegate.getModelName();
+    }
+
+    @Override
+    public void warmUp() {
+        delegate.warmUp();
+    }
+
+    @Override
+    public int getConcurrencyLimit() {
+        return delegate.getConcurrencyLimit();
+    }
+
+    @Override
+    public <T extends ApiClient> T unwrap(Class<T> type) {
+        return type.isInstance(this) ? type.cast(this) : delegate.unwrap(type);
+    }
+
+    private void record(ApiRequest request, ApiResponse response, long startTime) {
+        if (response == null) {
+            return;
+        }
+        long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        Cassette.Entry entry = new Cassette.Entry(RequestFingerprint.of(getProviderName(), getModelName(), request),
+                getProviderName(), getModelName(), request.getStartChapterNumber(), request.getEndChapterNumber(),
+                latencyMillis, response.isSuccess(), response.responseBody(), response.errorMessage(),
+                response.finishReason(), response.usage(), response.statusCode());
+        try {
+            Cassette.append(cassettePath, entry);
+        } catch (IOException e) {
+            // 录制失败不影响分析
+            logger.warn("Failed to record {} response to {}: {}", getProviderName(), cassettePath, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.novelreader;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 基于正则表达式的章节标题匹配器，在整行中查找"第N章"，N为阿拉伯数字
+ */
+public class RegexHeadingMatcher implements HeadingMatcher {
+    private static final Pattern CHAPTER_PATTERN = Pattern.compile("第(\\d+)章");
+    
+    @Override
+    public int match(CharSequence line) {
+        Matcher matcher = CHAPTER_PATTERN.matcher(line);
+        if (!matcher.find()) {
+            return NO_MATCH;
+        }
+        try {
+            return Integer.parseInt(matcher.group(1));
+        } catch (NumberFormatException e) {
+            return NO_MATCH;
+        }
+    }
+    
+    @Override
+    public int maxTitleLength() {
+        return Integer.MAX_VALUE;
+    }
+    
+    @Override
+    public String requiredText() {
+        return "第";
+    }
+}
@@ -0,0 +1,204 @@
+package com.novelreader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 回放录制的API调用的客户端，不访问网络
+ * <p>
+ * 按请求指纹查找{@link RecordingApiClient}录制的响应。同一请求录制了多次时（如重试）按录制顺序依次返回，
+ * 用完后一直返回最后一次的响应。没有录制的请求返回失败的响应。
+ * 可以按延迟模型模拟API的响应时间，不模拟时以最快速度运行，用于离线测量分析、验证和保存的开销。
+ */
+public class ReplayApiClient implements ApiClient {
+    private static final Logger logger = LoggerFactory.getLogger(ReplayApiClient.class);
+
+    private final String providerName;
+    private final String modelName;
+    private final LatencyModel latencyModel;
+    private final Map<String, List<Cassette.Entry>> entries = new HashMap<>();
+    private final Map<String, AtomicInteger> positions = new ConcurrentHashMap<>();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param cassettePath 记录文件
+     * @param providerName API提供商名称，需与录制时相同
+     * @param modelName 模型名称，需与录制时相同
+     * @param latencyModel 模拟响应时间的延迟模型
+     */
+    public ReplayApiClient(Path cassettePath, String providerName, String modelName, LatencyModel latencyModel) {
+        this.providerName = providerName;
+        this.modelName = modelName;
+        this.latencyModel = latencyModel;
+        try {
+            for (Cassette.Entry entry : Cassette.read(cassettePath)) {
+                entries.computeIfAbsent(entry.fingerprint(), key -> new ArrayList<>()).add(entry);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read cassette: " + cassettePath, e);
+        }
+        logger.info("Loaded {} recorded requests from {}", entries.size(), cassettePath);
+    }
+
+    @Override
+    public ApiResponse analyzeChapterGroup(ApiRequest request) {
+        Cassette.Entry entry = next(request);
+        if (entry == null) {
+            return missing(request);
+        }
+        long delayMillis = latencyModel.delayMillis(entry);
+        if (delayMillis > 0) {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return ApiResponse.failure("Replay interrupted");
+            }
+        }
+        return entry.toApiResponse();
+    }
+
+    @Override
+    public CompletableFuture<ApiResponse> analyzeChapterGroupAsync(ApiRequest request) {
+        Cassette.Entry entry = next(request);
+        if (entry == null) {
+            return CompletableFuture.completedFuture(missing(request));
+        }
+        long delayMillis = latencyModel.delayMillis(entry);
+        if (delayMillis <= 0) {
+            return CompletableFuture.completedFuture(entry.toApiResponse());
+        }
+        // 延迟期间不占用线程
+        return CompletableFuture.supplyAsync(entry::toApiResponse,
+                CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS));
+    }
+
+    @Override
+    public String getProviderName() {
+        return providerName;
+    }
+
+    @Override
+    public String getModelName() {
+        return modelName;
+    }
+
+    /**
+     * @return 没有录制响应的请求次数
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private Cassette.Entry next(ApiRequest request) {
+        String fingerprint = RequestFingerprint.of(providerName, modelName, request);
+        List<Cassette.Entry> recorded = entries.get(fingerprint);
+        if (recorded == null) {
+            return null;
+        }
+        int position = positions.computeIfAbsent(fingerprint, key -> new AtomicInteger()).getAndIncrement();
+        return recorded.get(Math.min(position, recorded.size() - 1));
+    }
+
+    private ApiResponse missing(ApiRequest request) {
+        misses.increment();
+        String errorMessage = "No recorded " + providerName + " response for chapters "
+                + request.getStartChapterNumber() + "-" + request.getEndChapterNumber();
+        logger.error(errorMessage);
+        return ApiResponse.failure(errorMessage);
+    }
+
+    /**
+     * 模拟API响应时间的延迟模型
+     */
+    @FunctionalInterface
+    public interface LatencyModel {
+        /**
+         * @param entry 要返回的调用记录
+         * @return 返回前等待的毫秒数
+         */
+        long delayMillis(Cassette.Entry entry);
+
+        /**
+         * @return 不等待
+         */
+        static LatencyModel none() {
+            return entry -> 0;
+        }
+
+        /**
+         * @return 等待录制时的耗时
+         */
+        static LatencyModel recorded() {
+            return Cassette.Entry::latencyMillis;
+        }
+
+        /**
+         * @param millis 每次等待的毫秒数
+         * @return 固定延迟
+         */
+        static LatencyModel fixed(long millis) {
+            return entry -> millis;
+        }
+
+        /**
+         * 对数正态分布的延迟，接近API响应时间的长尾分布
+         * @param medianMillis 中位数（毫秒）
+         * @param sigma 对数的标准差，越大长尾越明显
+         * @param seed 随机种子，相同种子得到相同的延迟序列
+         * @return 随机延迟
+         */
+        static LatencyModel logNormal(long medianMillis, double sigma, long seed) {
+            Random random = new Random(seed);
+            double mu = Math.log(Math.max(medianMillis, 1));
+            return entry -> {
+                double gaussian;
+                synchronized (random) {
+                    gaussian = random.nextGaussian();
+                }
+                return Math.round(Math.exp(mu + sigma * gaussian));
+            };
+        }
+
+        /**
+         * 解析配置中的延迟模型：none、recorded、fixed:毫秒数、lognormal:中位数毫秒:sigma
+         * @param spec 延迟模型配置
+         * @return 延迟模型
+         */
+        static LatencyModel parse(String spec) {
+            String[] parts = spec.trim().split(":");
+            switch (parts[0].toLowerCase()) {
+                case "none":
+                    return none();
+                case "recorded":
+                    return recorded();
+                case "fixed":
+                    if (parts.length == 2) {
+                        return fixed(Long.parseLong(parts[1]));
+                    }
+                    break;
+                case "lognormal":
+                    if (parts.length == 3) {
+                        return logNormal(Long.parseLong(parts[1]), Double.parseDouble(parts[2]), 42);
+                    }
+                    break;
+                default:
+                    break;
+            }
+            throw new IllegalArgumentException("Unsupported replay latency: " + spec);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.novelreader;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * API请求体的JSON写入工具
+ * <p>
+ * 使用JsonGenerator直接写出UTF-8字节，不再经过中间的Map和String；提示词这类每次请求都相同的文本只转义一次。
+ * 写出的请求体保存在ApiRequest中，重试时直接复用。
+ */
+public class RequestBodyWriter {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    // 提示词通常只有一两个，超过这个数量时清空，避免无限增长
+    private static final int MAX_CACHED_FRAGMENTS = 16;
+    private static final Map<FragmentKey, SerializedString> FRAGMENTS = new ConcurrentHashMap<>();
+
+    private RequestBodyWriter() {
+    }
+
+    /**
+     * 写出请求体的回调
+     */
+    @FunctionalInterface
+    public interface BodyWriter {
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    /**
+     * 获取请求的JSON请求体，同一请求再次获取时直接返回上次写出的字节
+     * @param request API请求
+     * @param bodyKey 请求体的格式，格式不同时重新写出（如是否流式）
+     * @param writer 写出请求体的回调
+     * @return UTF-8编码的请求体
+     */
+    public static Body encode(ApiRequest request, String bodyKey, BodyWriter writer) throws IOException {
+        Body body = request.getEncodedBody(bodyKey);
+        if (body == null) {
+            body = write(estimateSize(request), writer);
+            request.setEncodedBody(bodyKey, body);
+        }
+        return body;
+    }
+
+    /**
+     * 写出JSON
+     * @param sizeHint 预计的字节数
+     * @param writer 写出内容的回调
+     * @return UTF-8编码的JSON
+     */
+    public static Body write(int sizeHint, BodyWriter writer) throws IOException {
+        BodyBuffer output = new BodyBuffer(Math.max(sizeHint, 256));
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(output)) {
+            writer.write(generator);
+        }
+        // 直接使用缓冲区，不再复制成刚好大小的数组
+        return new Body(output.buffer(), output.size());
+    }
+
+    /**
+     * 获取转义后的文本，相同的文本只转义一次
+     * @param text 文本
+     * @return 可以直接写出的文本
+     */
+    public static SerializableString preEscaped(String text) {
+        return preEscaped(text, "");
+    }
+
+    /**
+     * 获取转义后的文本加后缀，相同的文本和后缀只转义一次
+     * @param text 文本
+     * @param suffix 后缀
+     * @return 可以直接写出的文本
+     */
+    public static SerializableString preEscaped(String text, String suffix) {
+        FragmentKey key = new FragmentKey(text, suffix);
+        SerializedString fragment = FRAGMENTS.get(key);
+        if (fragment == null) {
+            if (FRAGMENTS.size() >= MAX_CACHED_FRAGMENTS) {
+                FRAGMENTS.clear();
+            }
+            fragment = new SerializedString(text + suffix);
+            // 提前转义并编码，之后每次写出都是字节复制
+            fragment.asQuotedUTF8();
+            FRAGMENTS.put(key, fragment);
+        }
+        return fragment;
+    }
+
+    // 中文在UTF-8中占3个字节，另加JSON结构的开销
+    private static int estimateSize(ApiRequest request) {
+        long chars = (long) length(request.getPrompt()) + length(request.getChapterGroupContent());
+        return (int) Math.min(chars * 3 + 256, Integer.MAX_VALUE - 8);
+    }
+
+    private static int length(String text) {
+        return text == null ? 0 : text.length();
+    }
+
+    private record FragmentKey(String text, String suffix) {
+    }
+
+    /**
+     * 编码后的请求体
+     * @param bytes 缓冲区，只有前length个字节有效
+     * @param length 请求体的字节数
+     */
+    public record Body(byte[] bytes, int length) {
+
+        /**
+         * @return 发送请求体的BodyPublisher，每次发送都从缓冲区读取，可以重复使用
+         */
+        public HttpRequest.BodyPublisher publisher() {
+            return HttpRequest.BodyPublishers.ofByteArray(bytes, 0, length);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static class BodyBuffer extends ByteArrayOutputStream {
+        BodyBuffer(int size) {
+            super(size);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.novelreader;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * API请求的指纹，提供商、模型、提示词和章节组内容相同的请求指纹相同
+ */
+public class RequestFingerprint {
+
+    private RequestFingerprint() {
+    }
+
+    /**
+     * 计算请求的指纹
+     * @param providerName API提供商名称
+     * @param modelName 模型名称
+     * @param request API请求
+     * @return 十六进制的SHA-256
+     */
+    public static String of(String providerName, String modelName, ApiRequest request) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 not available", e);
+        }
+        for (String part : new String[]{providerName, modelName, request.getPrompt(), request.getChapterGroupContent()}) {
+            byte[] bytes = String.valueOf(part).getBytes(StandardCharsets.UTF_8);
+            // 写入长度，避免不同字段的拼接结果相同
+            digest.update(Integer.toString(bytes.length).getBytes(StandardCharsets.US_ASCII));
+            digest.update((byte) ':');
+            digest.update(bytes);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
@@ -0,0 +1,241 @@
+package com.novelreader;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * API响应的流式解析，用JsonParser逐个读取token，只取出输出文本、结束原因和token用量，不构建Map或JsonNode树。
+ * 其余字段直接跳过
+ */
+public class ResponseExtractor {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private ResponseExtractor() {
+    }
+
+    /**
+     * 从响应中取出的内容
+     * @param text 输出文本，响应中没有文本时为空字符串
+     * @param finishReason 结束原因，没有时为null
+     * @param usage token用量，没有时为null
+     */
+    public record Extracted(String text, String finishReason, ApiResponse.Usage usage) {
+    }
+
+    /**
+     * 解析OpenAI格式的chat completion响应（OpenAI、DeepSeek），文本位于choices[0].message.content，
+     * 流式响应的每条事件位于choices[0].delta.content
+     * @param body 响应体
+     * @return 取出的内容
+     */
+    public static Extracted extractChatCompletion(InputStream body) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            return extractChatCompletion(parser);
+        }
+    }
+
+    /**
+     * 解析一条OpenAI格式的chat completion响应或流式事件
+     * @param json 响应体
+     * @return 取出的内容
+     */
+    public static Extracted extractChatCompletion(String json) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            return extractChatCompletion(parser);
+        }
+    }
+
+    /**
+     * 解析Gemini的GenerateContentResponse，文本为candidates[0].content.parts中各part的text依次拼接，
+     * 流式响应的每条事件也是一个GenerateContentResponse
+     * @param body 响应体
+     * @return 取出的内容
+     */
+    public static Extracted extractGemini(InputStream body) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            return extractGemini(parser);
+        }
+    }
+
+    /**
+     * 解析一条Gemini的GenerateContentResponse
+     * @param json 响应体
+     * @return 取出的内容
+     */
+    public static Extracted extractGemini(String json) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            return extractGemini(parser);
+        }
+    }
+
+    private static Extracted extractChatCompletion(JsonParser parser) throws IOException {
+        expectObject(parser, parser.nextToken());
+        StringBuilder text = new StringBuilder();
+        String finishReason = null;
+        ApiResponse.Usage usage = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (field.equals("choices") && value == JsonToken.START_ARRAY) {
+                // 只读取第一个choice
+                JsonToken first = parser.nextToken();
+                if (first == JsonToken.START_OBJECT) {
+                    finishReason = readChoice(parser, text);
+                } else {
+                    parser.skipChildren();
+                }
+                if (first != JsonToken.END_ARRAY) {
+                    skipRestOfArray(parser);
+                }
+            } else if (field.equals("usage") && value == JsonToken.START_OBJECT) {
+                usage = readUsage(parser, "prompt_tokens", "completion_tokens", "total_tokens");
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new Extracted(text.toString(), finishReason, usage);
+    }
+
+    // 读取一个choice对象，文本追加到text，返回finish_reason
+    private static String readChoice(JsonParser parser, StringBuilder text) throws IOException {
+        String finishReason = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ((field.equals("message") || field.equals("delta")) && value == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String messageField = parser.getCurrentName();
+                    JsonToken messageValue = parser.nextToken();
+                    if (messageField.equals("content") && messageValue == JsonToken.VALUE_STRING) {
+                        text.append(parser.getText());
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else if (field.equals("finish_reason") && value == JsonToken.VALUE_STRING) {
+                finishReason = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return finishReason;
+    }
+
+    private static Extracted extractGemini(JsonParser parser) throws IOException {
+        expectObject(parser, parser.nextToken());
+        StringBuilder text = new StringBuilder();
+        String finishReason = null;
+        ApiResponse.Usage usage = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (field.equals("candidates") && value == JsonToken.START_ARRAY) {
+                // 只读取第一个candidate
+                JsonToken first = parser.nextToken();
+                if (first == JsonToken.START_OBJECT) {
+                    finishReason = readCandidate(parser, text);
+                } else {
+                    parser.skipChildren();
+                }
+                if (first != JsonToken.END_ARRAY) {
+                    skipRestOfArray(parser);
+                }
+            } else if (field.equals("usageMetadata") && value == JsonToken.START_OBJECT) {
+                usage = readUsage(parser, "promptTokenCount", "candidatesTokenCount", "totalTokenCount");
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new Extracted(text.toString(), finishReason, usage);
+    }
+
+    // 读取一个candidate对象，各part的文本依次追加到text，返回finishReason
+    private static String readCandidate(JsonParser parser, StringBuilder text) throws IOException {
+        String finishReason = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (field.equals("content") && value == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String contentField = parser.getCurrentName();
+                    JsonToken contentValue = parser.nextToken();
+                    if (contentField.equals("parts") && contentValue == JsonToken.START_ARRAY) {
+                        JsonToken part;
+                        while ((part = parser.nextToken()) != JsonToken.END_ARRAY && part != null) {
+                            if (part == JsonToken.START_OBJECT) {
+                                readPart(parser, text);
+                            } else {
+                                parser.skipChildren();
+                            }
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else if (field.equals("finishReason") && value == JsonToken.VALUE_STRING) {
+                finishReason = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return finishReason;
+    }
+
+    // 读取一个part对象，思考过程的part不计入输出文本
+    private static void readPart(JsonParser parser, StringBuilder text) throws IOException {
+        String partText = null;
+        boolean thought = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (field.equals("text") && value == JsonToken.VALUE_STRING) {
+                partText = parser.getText();
+            } else if (field.equals("thought") && value == JsonToken.VALUE_TRUE) {
+                thought = true;
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (partText != null && !thought) {
+            text.append(partText);
+        }
+    }
+
+    private static ApiResponse.Usage readUsage(JsonParser parser, String promptField, String completionField,
+                                               String totalField) throws IOException {
+        long promptTokens = 0;
+        long completionTokens = 0;
+        long totalTokens = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (value != JsonToken.VALUE_NUMBER_INT) {
+                parser.skipChildren();
+            } else if (field.equals(promptField)) {
+                promptTokens = parser.getLongValue();
+            } else if (field.equals(completionField)) {
+                completionTokens = parser.getLongValue();
+            } else if (field.equals(totalField)) {
+                totalTokens = parser.getLongValue();
+            }
+        }
+        return new ApiResponse.Usage(promptTokens, completionTokens, totalTokens);
+    }
+
+    private static void skipRestOfArray(JsonParser parser) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+            parser.skipChildren();
+        }
+    }
+
+    private static void expectObject(JsonParser parser, JsonToken token) throws IOException {
+        if (token != JsonToken.START_OBJECT) {
+            throw new IOException("Expected a JSON object but was " + token + " at " + parser.getCurrentLocation());
+        }
+    }
+}
@@ -3,7 +3,10 @@ package com.novelreader;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
 import java.nio.file.Path;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,6 +21,7 @@ import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * 结果保存器，用于保存和合并Gemini API的分析结果
@@ -66,6 +70,14 @@ public class ResultSaver {
             }
             
             logger.info("已保存章节组分析结果: {}", filePath);
+            
+            // 保存章节指纹，原文修订后据此判断是否需要重新分析
+            try {
+                ChapterFingerprints.write(chapterGroup, outputDirectory);
+            } catch (RuntimeException e) {
+                logger.warn("保存章节指纹失败: {}", e.getMessage(), e);
+            }
+            deleteStaleResults(chapterGroup, fileName, outputDirectory);
             return filePath;
         } catch (IOException e) {
             logger.error("保存章节组分析结果失败: {}", e.getMessage(), e);
@@ -73,6 +85,34 @@ public class ResultSaver {
         }
     }
     
+    /**
+     * 删除同一章节组之前的分析结果及其指纹文件。增量读取时未满的章节组会追加新章节后重新分析，
+     * 旧结果的文件名结束章节不同，不删除的话合并时会重复
+     *
+     * @param chapterGroup 章节组
+     * @param currentFileName 本次保存的文件名
+     * @param outputDirectory 输出目录
+     */
+    private void deleteStaleResults(ChapterGroup chapterGroup, String currentFileName, String outputDirectory) {
+        String prefix = String.format("%03d第", chapterGroup.getChapterGroupId());
+        String fingerprintFileName = chapterGroup.getFingerprintFileName();
+        try (Stream<Path> files = Files.list(Paths.get(outputDirectory))) {
+            List<Path> staleFiles = files
+                    .filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(prefix) && !name.equals(currentFileName) && !name.equals(fingerprintFileName)
+                                && (name.endsWith("_分析.json") || name.endsWith("_分析.hash"));
+                    })
+                    .collect(Collectors.toList());
+            for (Path staleFile : staleFiles) {
+                Files.delete(staleFile);
+                logger.info("已删除过期的章节组分析结果: {}", staleFile);
+            }
+        } catch (IOException e) {
+            logger.warn("删除过期的章节组分析结果失败: {}", e.getMessage(), e);
+        }
+    }
+    
     /**
      * 合并所有章节组的分析结果到一个markdown文件
      * 
@@ -107,27 +147,9 @@ public class ResultSaver {
                     
                     // 获取markdownResult字段
                     if (resultJson.has("markdownResult")) {
-                        String markdownResultStr = resultJson.get("markdownResult").getAsString();
-                        
-                        // 解析markdownResult中的JSON以获取text字段
-                        JsonObject markdownResultJson = gson.fromJson(markdownResultStr, JsonObject.class);
-                        if (markdownResultJson.has("candidates") && 
-                            markdownResultJson.getAsJsonArray("candidates").size() > 0) {
-                            
-                            JsonObject candidate = markdownResultJson.getAsJsonArray("candidates").get(0).getAsJsonObject();
-                            if (candidate.has("content") && 
-                                candidate.getAsJsonObject("content").has("parts") &&
-                                candidate.getAsJsonObject("content").getAsJsonArray("parts").size() > 0) {
-                                
-                                JsonObject part = candidate.getAsJsonObject("content")
-                                                         .getAsJsonArray("parts").get(0).getAsJsonObject();
-                                
-                                if (part.has("text")) {
-                                    // 获取text字段的内容并添加到markdown内容中
-                                    String text = part.get("text").getAsString();
-                                    markdownContent.append(text).append("\n\n");
-                                }
-                            }
+                        String text = extractMarkdown(resultJson.get("markdownResult").getAsString());
+                        if (text != null) {
+                            markdownContent.append(text).append("\n\n");
                         }
                     }
                 } catch (Exception e) {
@@ -148,6 +170,44 @@ public class ResultSaver {
         }
     }
     
+    /**
+     * 从分析结果中取出Markdown文本。早期保存的Gemini结果是完整的响应JSON，文本位于candidates[0].content.parts[0].text；
+     * 现在各客户端返回的结果和拼接后的分段分析结果本身就是Markdown文本
+     * 
+     * @param markdownResult 保存的分析结果
+     * @return Markdown文本，响应JSON中没有文本时返回null
+     */
+    public static String extractMarkdown(String markdownResult) {
+        JsonObject markdownResultJson;
+        try {
+            JsonElement element = JsonParser.parseString(markdownResult);
+            if (!element.isJsonObject()) {
+                return markdownResult;
+            }
+            markdownResultJson = element.getAsJsonObject();
+        } catch (JsonParseException e) {
+            return markdownResult;
+        }
+        
+        if (markdownResultJson.has("candidates") && 
+            markdownResultJson.getAsJsonArray("candidates").size() > 0) {
+            
+            JsonObject candidate = markdownResultJson.getAsJsonArray("candidates").get(0).getAsJsonObject();
+            if (candidate.has("content") && 
+                candidate.getAsJsonObject("content").has("parts") &&
+                candidate.getAsJsonObject("content").getAsJsonArray("parts").size() > 0) {
+                
+                JsonObject part = candidate.getAsJsonObject("content")
+                                         .getAsJsonArray("parts").get(0).getAsJsonObject();
+                
+                if (part.has("text")) {
+                    return part.get("text").getAsString();
+                }
+            }
+        }
+        return null;
+    }
+    
     /**
      * 从Markdown结果中解析出每个章节的分析内容
      * 
@@ -0,0 +1,168 @@
+package com.novelreader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 流式输出的格式检查，在模型输出过程中逐段检查章节标题，输出明显偏离格式时尽早放弃
+ * <p>
+ * 判定为偏离格式的情况：输出超过一定长度仍没有出现章节标题行（如"**第12章 标题**"），
+ * 或者出现了不在请求章节范围内的章节标题行。正文中提到其他章节（如"与第3章呼应"）不算标题行，不做检查。
+ * 不能确定的情况一律放行，交给ResultValidator在输出完成后验证。
+ */
+public class StreamingFormatGuard {
+    private static final Logger logger = LoggerFactory.getLogger(StreamingFormatGuard.class);
+    /** 默认在这么多字符内必须出现第一个章节标题 */
+    public static final int DEFAULT_MAX_CHARS_BEFORE_HEADING = 2000;
+    // 行首可以有Markdown的标题、加粗、列表标记
+    private static final Pattern HEADING_PATTERN = Pattern.compile("(?m)^[#*>\\-\\s]*第(\\d{1,6})章");
+
+    private final int startChapterNumber;
+    private final int endChapterNumber;
+    private final int maxCharsBeforeHeading;
+    private final StringBuilder text = new StringBuilder();
+    private final Matcher matcher = HEADING_PATTERN.matcher(text);
+    private int checkedLength;
+    private boolean headingSeen;
+    private String violation;
+    private String finishReason;
+    private ApiResponse.Usage usage;
+
+    /**
+     * @param startChapterNumber 请求的起始章节号，不大于0时不检查章节范围
+     * @param endChapterNumber 请求的结束章节号
+     */
+    public StreamingFormatGuard(int startChapterNumber, int endChapterNumber) {
+        this(startChapterNumber, endChapterNumber, DEFAULT_MAX_CHARS_BEFORE_HEADING);
+    }
+
+    /**
+     * @param startChapterNumber 请求的起始章节号，不大于0时不检查章节范围
+     * @param endChapterNumber 请求的结束章节号
+     * @param maxCharsBeforeHeading 在这么多字符内必须出现第一个章节标题
+     */
+    public StreamingFormatGuard(int startChapterNumber, int endChapterNumber, int maxCharsBeforeHeading) {
+        this.startChapterNumber = startChapterNumber;
+        this.endChapterNumber = endChapterNumber;
+        this.maxCharsBeforeHeading = maxCharsBeforeHeading;
+    }
+
+    /**
+     * 以流式方式发送分析请求，边接收边检查格式，偏离格式时取消请求并返回失败，由调用方重试
+     * @param transport HTTP传输层
+     * @param providerName API提供商名称
+     * @param httpRequest 流式请求
+     * @param request API请求，提供章节范围
+     * @param eventExtractor 从每条事件数据中取出新输出的文本、结束原因和token用量
+     * @return API响应，成功时响应体为完整的Markdown文本，结束原因和token用量取自事件中最后给出的值
+     */
+    static ApiResponse stream(HttpTransport transport, String providerName, HttpRequest httpRequest, ApiRequest request,
+                              Function<String, ResponseExtractor.Extracted> eventExtractor)
+            throws IOException, InterruptedException {
+        StreamingFormatGuard guard = new StreamingFormatGuard(request.getStartChapterNumber(), request.getEndChapterNumber());
+        HttpTransport.StreamResult result = transport.stream(providerName, httpRequest,
+                data -> guard.append(eventExtractor.apply(data)));
+        return guard.toApiResponse(providerName, result);
+    }
+
+    /**
+     * {@link #stream}的异步版本
+     * @return 流式响应结束或被取消时完成的Future
+     */
+    static CompletableFuture<ApiResponse> streamAsync(HttpTransport transport, String providerName, HttpRequest httpRequest,
+                                                      ApiRequest request,
+                                                      Function<String, ResponseExtractor.Extracted> eventExtractor) {
+        StreamingFormatGuard guard = new StreamingFormatGuard(request.getStartChapterNumber(), request.getEndChapterNumber());
+        return transport.streamAsync(providerName, httpRequest, data -> guard.append(eventExtractor.apply(data)))
+                .thenApply(result -> guard.toApiResponse(providerName, result));
+    }
+
+    /**
+     * 根据流式请求的结果生成API响应
+     */
+    ApiResponse toApiResponse(String providerName, HttpTransport.StreamResult result) {
+        if (result.statusCode() != 200) {
+            String errorMessage = providerName + " API call failed with status code: " + result.statusCode() + ", body: " + result.errorBody();
+            logger.error(errorMessage);
+            return ApiResponse.failure(errorMessage, result.statusCode());
+        }
+        if (result.aborted()) {
+            String errorMessage = providerName + " streaming output went off-format after " + text.length()
+                    + " characters, request cancelled: " + violation;
+            logger.warn(errorMessage);
+            return ApiResponse.failure(errorMessage);
+        }
+        logger.info("{} API streaming call successful for chapter group, finish reason: {}, usage: {}",
+                providerName, finishReason, usage);
+        return ApiResponse.success(getText(), finishReason, usage);
+    }
+
+    /**
+     * 追加一条流式事件，记录事件给出的结束原因和token用量，再检查其中新输出的文本
+     * @param event 从一条事件中取出的内容
+     * @return 输出是否仍可能符合格式，返回false后不应再追加
+     */
+    boolean append(ResponseExtractor.Extracted event) {
+        // 结束原因和用量通常只在最后一条事件中给出
+        if (event.finishReason() != null) {
+            finishReason = event.finishReason();
+        }
+        if (event.usage() != null) {
+            usage = event.usage();
+        }
+        return append(event.text());
+    }
+
+    /**
+     * 追加一段输出并检查格式
+     * @param chunk 新收到的输出
+     * @return 输出是否仍可能符合格式，返回false后不应再追加
+     */
+    public boolean append(String chunk) {
+        if (violation != null) {
+            return false;
+        }
+        text.append(chunk);
+        // 标题可能被拆在两段输出中，只检查已经输出完整的行
+        int checkEnd = text.lastIndexOf("\n") + 1;
+        if (checkEnd > checkedLength) {
+            matcher.reset(text).region(checkedLength, checkEnd);
+            while (matcher.find()) {
+                headingSeen = true;
+                int chapterNumber = Integer.parseInt(matcher.group(1));
+                if (startChapterNumber > 0 && (chapterNumber < startChapterNumber || chapterNumber > endChapterNumber)) {
+                    violation = "Heading for chapter " + chapterNumber + " is outside chapters "
+                            + startChapterNumber + "-" + endChapterNumber;
+                    return false;
+                }
+            }
+            checkedLength = checkEnd;
+        }
+        if (!headingSeen && checkedLength > maxCharsBeforeHeading) {
+            violation = "No chapter heading in the first " + maxCharsBeforeHeading + " characters";
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return 目前收到的全部输出
+     */
+    public String getText() {
+        return text.toString();
+    }
+
+    /**
+     * @return 偏离格式的原因，未偏离时返回null
+     */
+    public String getViolation() {
+        return violation;
+    }
+}
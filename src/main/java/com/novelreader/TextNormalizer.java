@@ -0,0 +1,174 @@
+package com.novelreader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 文本规范化器，在章节正文提交给API之前去除不影响分析的字符，节省token
+ * <p>
+ * 对每章正文只遍历一遍：去除每行首尾的空白（包括全角空格缩进），删除空行，
+ * 删除命中过滤规则的短行（网站水印、"求月票"之类的作者留言）。所有过滤规则预先编译成一个正则表达式。
+ */
+public class TextNormalizer {
+    private static final Logger logger = LoggerFactory.getLogger(TextNormalizer.class);
+
+    /** 默认的过滤规则 */
+    public static final List<String> DEFAULT_DROP_PATTERNS = List.of(
+            "求(?:月票|推荐票?|订阅|收藏|打赏)",
+            "(?i)https?://|www\\.",
+            "^[（(]?本章完[）)]?$",
+            "笔趣阁|天才一秒记住|手机用户请(?:浏览|访问)");
+    /** 默认只过滤不超过该长度的行，避免误删包含关键字的正文段落 */
+    public static final int DEFAULT_MAX_DROP_LINE_LENGTH = 100;
+
+    private final Pattern dropPattern;
+    private final int maxDropLineLength;
+    private final TokenEstimator tokenEstimator;
+    private final AtomicLong inputChars = new AtomicLong();
+    private final AtomicLong removedChars = new AtomicLong();
+    // 单位为千分之一token，输出时才换算，避免每次少量删除都被截断为0
+    private final AtomicLong removedTokenMillis = new AtomicLong();
+    private final AtomicLong droppedLines = new AtomicLong();
+    // 已统计过的章节，重试或重新读取同一章时不重复统计
+    private final Set<String> countedChapters = ConcurrentHashMap.newKeySet();
+
+    public TextNormalizer() {
+        this(DEFAULT_DROP_PATTERNS, DEFAULT_MAX_DROP_LINE_LENGTH);
+    }
+
+    /**
+     * @param dropPatterns 过滤规则，命中任意一条的行会被删除
+     * @param maxDropLineLength 过滤规则只作用于不超过该长度的行
+     */
+    public TextNormalizer(List<String> dropPatterns, int maxDropLineLength) {
+        this(dropPatterns, maxDropLineLength, new TokenEstimator());
+    }
+
+    /**
+     * @param dropPatterns 过滤规则，命中任意一条的行会被删除
+     * @param maxDropLineLength 过滤规则只作用于不超过该长度的行
+     * @param tokenEstimator 用于统计删除的token数
+     */
+    public TextNormalizer(List<String> dropPatterns, int maxDropLineLength, TokenEstimator tokenEstimator) {
+        this.tokenEstimator = tokenEstimator;
+        this.dropPattern = dropPatterns.isEmpty() ? null : Pattern.compile(combine(dropPatterns));
+        this.maxDropLineLength = maxDropLineLength;
+    }
+
+    private static String combine(List<String> patterns) {
+        StringBuilder combined = new StringBuilder();
+        for (String pattern : patterns) {
+            if (combined.length() > 0) {
+                combined.append('|');
+            }
+            combined.append("(?:").append(pattern).append(')');
+        }
+        return combined.toString();
+    }
+
+    /**
+     * 规范化一章正文，段落之间以单个换行分隔。同一章（章节号和标题都相同）只统计一次
+     * @param chapter 章节
+     * @return 规范化后的正文
+     */
+    public String normalize(Chapter chapter) {
+        String chapterKey = chapter.getChapterNumber() + "\n" + chapter.getChapterTitle();
+        return normalize(chapter.getChapterContent(), countedChapters.add(chapterKey));
+    }
+
+    /**
+     * 规范化一段正文，段落之间以单个换行分隔，每次调用都计入统计
+     * @param content 章节正文
+     * @return 规范化后的正文
+     */
+    public String normalize(String content) {
+        return normalize(content, true);
+    }
+
+    private String normalize(String content, boolean count) {
+        int length = content.length();
+        StringBuilder result = new StringBuilder(length);
+        Matcher matcher = dropPattern == null ? null : dropPattern.matcher("");
+        long removedMillis = 0;
+        int dropped = 0;
+
+        int lineStart = 0;
+        while (lineStart <= length) {
+            int lineEnd = content.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = length;
+            }
+            int start = lineStart;
+            int end = lineEnd;
+            while (start < end && isSpace(content.charAt(start))) {
+                start++;
+            }
+            while (end > start && isSpace(content.charAt(end - 1))) {
+                end--;
+            }
+
+            boolean keep = start < end;
+            if (keep && matcher != null && end - start <= maxDropLineLength) {
+                matcher.reset(content).region(start, end);
+                keep = !matcher.find();
+            }
+            if (keep) {
+                if (result.length() > 0) {
+                    result.append('\n');
+                }
+                result.append(content, start, end);
+                removedMillis += tokenEstimator.estimateMillis(content, lineStart, start)
+                        + tokenEstimator.estimateMillis(content, end, lineEnd);
+            } else {
+                removedMillis += tokenEstimator.estimateMillis(content, lineStart, lineEnd);
+                if (start < end) {
+                    dropped++;
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+
+        if (count) {
+            inputChars.addAndGet(length);
+            removedChars.addAndGet(length - result.length());
+            removedTokenMillis.addAndGet(removedMillis);
+            droppedLines.addAndGet(dropped);
+        }
+        return result.toString();
+    }
+
+    private static boolean isSpace(char c) {
+        return c <= ' ' || c == '\u3000' || c == '\u00A0' || c == '\uFEFF';
+    }
+
+    /**
+     * 输出本次运行的规范化统计
+     */
+    public void logStatistics() {
+        logger.info("Text normalization removed {} of {} characters (~{} tokens), including {} noise lines",
+                removedChars.get(), inputChars.get(), getRemovedTokens(), droppedLines.get());
+    }
+
+    public long getInputChars() {
+        return inputChars.get();
+    }
+
+    public long getRemovedChars() {
+        return removedChars.get();
+    }
+
+    public long getRemovedTokens() {
+        return removedTokenMillis.get() / 1000;
+    }
+
+    public long getDroppedLines() {
+        return droppedLines.get();
+    }
+}
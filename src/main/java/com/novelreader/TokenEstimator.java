@@ -0,0 +1,121 @@
+package com.novelreader;
+
+/**
+ * token数估算器，不调用分词器，按字符类别估算
+ * <p>
+ * 每个字符通过查表归入汉字、中文标点、空白、ASCII单词字符、ASCII标点和其他字符之一，
+ * 一次遍历累加各类别的系数，不分配对象。ASCII单词除每个字符的系数外，每个单词另计一次单词系数。
+ * 各API提供商的分词器不同，系数分别设定：Gemini按output/analysis中记录的usageMetadata校准，
+ * DeepSeek按官方文档（1个汉字约0.6个token，1个英文字符约0.3个token），OpenAI按o200k分词器的经验值。
+ */
+public class TokenEstimator {
+    private static final int OTHER = 0;
+    private static final int CJK = 1;
+    private static final int CJK_PUNCTUATION = 2;
+    private static final int WHITESPACE = 3;
+    private static final int WORD_CHAR = 4;
+    private static final int ASCII_PUNCTUATION = 5;
+    // 代理对的低位，由系数决定增补字符是否按两个字符计
+    private static final int LOW_SURROGATE = 6;
+    // 非ASCII的空白：全角空格、不换行空格和BOM
+    private static final int WIDE_WHITESPACE = 7;
+
+    private static final byte[] CHAR_CLASSES = new byte[Character.MAX_VALUE + 1];
+
+    static {
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            CHAR_CLASSES[c] = (byte) classify((char) c);
+        }
+    }
+
+    // 系数以千分之一token为单位，按类别编号排列：其他、汉字、中文标点、空白、单词字符、ASCII标点、低位代理、非ASCII空白
+    private final int[] weights;
+    private final int wordWeight;
+
+    /**
+     * 通用估算：非ASCII字符（包括全角空格和代理对的每一半）约为1个token，ASCII字符约4个为1个token
+     */
+    public TokenEstimator() {
+        this(new int[]{1000, 1000, 1000, 250, 250, 250, 1000, 1000}, 0);
+    }
+
+    /**
+     * @param weights 各字符类别的系数，单位为千分之一token
+     * @param wordWeight 每个ASCII单词额外的系数，单位为千分之一token
+     */
+    private TokenEstimator(int[] weights, int wordWeight) {
+        this.weights = weights;
+        this.wordWeight = wordWeight;
+    }
+
+    /**
+     * 获取指定API提供商的估算器，未知的提供商使用通用估算
+     * @param providerName 提供商名称，如gemini、deepseek、openai
+     * @return token数估算器
+     */
+    public static TokenEstimator forProvider(String providerName) {
+        switch (providerName == null ? "" : providerName.toLowerCase()) {
+            case "gemini":
+                return new TokenEstimator(new int[]{1000, 726, 1000, 380, 150, 680, 0, 380}, 600);
+            case "deepseek":
+                return new TokenEstimator(new int[]{1000, 600, 1000, 400, 300, 300, 0, 400}, 0);
+            case "openai":
+                return new TokenEstimator(new int[]{1000, 850, 1000, 400, 150, 700, 0, 400}, 600);
+            default:
+                return new TokenEstimator();
+        }
+    }
+
+    /**
+     * 估算文本的token数
+     * @param text 文本
+     * @return 估算的token数，不足1个token的部分向上取整
+     */
+    public long estimate(CharSequence text) {
+        return (estimateMillis(text, 0, text.length()) + 999) / 1000;
+    }
+
+    /**
+     * 估算文本中[start, end)部分的token数，单位为千分之一token
+     */
+    long estimateMillis(CharSequence text, int start, int end) {
+        int[] weights = this.weights;
+        int wordWeight = this.wordWeight;
+        long millis = 0;
+        int previous = WHITESPACE;
+        for (int i = start; i < end; i++) {
+            int charClass = CHAR_CLASSES[text.charAt(i)];
+            millis += weights[charClass];
+            if (charClass == WORD_CHAR && previous != WORD_CHAR) {
+                millis += wordWeight;
+            }
+            previous = charClass;
+        }
+        return millis;
+    }
+
+    private static int classify(char c) {
+        if (c < 0x80) {
+            if (c <= ' ') {
+                return WHITESPACE;
+            }
+            if ((c >= '0' && c <= '9') || (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || c == '_') {
+                return WORD_CHAR;
+            }
+            return c == 0x7F ? OTHER : ASCII_PUNCTUATION;
+        }
+        if ((c >= 0x4E00 && c <= 0x9FFF) || (c >= 0x3400 && c <= 0x4DBF) || (c >= 0xF900 && c <= 0xFAFF)) {
+            return CJK;
+        }
+        if (c == 0x3000 || c == 0x00A0 || c == 0xFEFF) {
+            return WIDE_WHITESPACE;
+        }
+        if ((c >= 0x3001 && c <= 0x303F) || (c >= 0xFF00 && c <= 0xFFEF) || (c >= 0x2010 && c <= 0x206F)) {
+            return CJK_PUNCTUATION;
+        }
+        if (Character.isLowSurrogate(c)) {
+            return LOW_SURROGATE;
+        }
+        return OTHER;
+    }
+}
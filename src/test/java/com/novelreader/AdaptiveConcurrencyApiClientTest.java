@@ -0,0 +1,173 @@
+package com.novelreader;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * AdaptiveConcurrencyApiClient的单元测试，使用手动推进的时钟
+ */
+@ExtendWith(MockitoExtension.class)
+public class AdaptiveConcurrencyApiClientTest {
+
+    @Mock
+    private ApiClient mockApiClient;
+
+    private final AtomicLong clock = new AtomicLong();
+    private final List<CompletableFuture<ApiResponse>> pending = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        lenient().when(mockApiClient.getProviderName()).thenReturn("gemini");
+        lenient().when(mockApiClient.analyzeChapterGroupAsync(any())).thenAnswer(invocation -> {
+            CompletableFuture<ApiResponse> response = new CompletableFuture<>();
+            pending.add(response);
+            return response;
+        });
+    }
+
+    @Test
+    public void testRequestsBeyondLimitQueue() {
+        AdaptiveConcurrencyApiClient client = new AdaptiveConcurrencyApiClient(mockApiClient, 2, 1, 8, clock::get);
+
+        CompletableFuture<ApiResponse> first = client.analyzeChapterGroupAsync(new ApiRequest("提示词", "内容1"));
+        client.analyzeChapterGroupAsync(new ApiRequest("提示词", "内容2"));
+        CompletableFuture<ApiResponse> third = client.analyzeChapterGroupAsync(new ApiRequest("提示词", "内容3"));
+
+        assertEquals(2, pending.size(), "超出并发上限的请求应排队");
+        assertEquals(2, client.getInFlight(), "应统计正在进行的请求");
+
+        complete(0, ApiResponse.success("分析1"));
+        assertEquals("分析1", first.join().responseBody(), "应返回实际客户端的响应");
+        assertEquals(3, pending.size(), "请求完成后应发出排队的请求");
+        assertFalse(third.isDone(), "排队的请求应等待实际的响应");
+    }
+
+    @Test
+    public void testAdditiveIncreaseWhenSaturated() {
+        AdaptiveConcurrencyApiClient client = new AdaptiveConcurrencyApiClient(mockApiClient, 2, 1, 3, clock::get);
+
+        for (int round = 0; round < 4; round++) {
+            int start = pending.size();
+            int limit = client.getConcurrencyLimit();
+            for (int i = 0; i < limit; i++) {
+                client.analyzeChapterGroupAsync(new ApiRequest("提示词", "内容" + round + i));
+            }
+            // 同时发出的请求同时返回
+            clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+            for (int i = start; i < pending.size(); i++) {
+                pending.get(i).complete(ApiResponse.success("分析"));
+            }
+        }
+
+        assertEquals(3, client.getConcurrencyLimit(), "响应时间稳定且用满上限时应逐步增加上限，但不超过最大值");
+    }
+
+    @Test
+    public void testNoIncreaseWhenNotSaturated() {
+        AdaptiveConcurrencyApiClient client = new AdaptiveConcurrencyApiClient(mockApiClient, 4, 1, 8, clock::get);
+
+        for (int i = 0; i < 10; i++) {
+            client.analyzeChapterGroupAsync(new ApiRequest("提示词", "内容" + i));
+            complete(i, ApiResponse.success("分析"));
+        }
+
+        assertEquals(4, client.getConcurrencyLimit(), "上限没有用满时不应增加");
+    }
+
+    @Test
+    public void testMultiplicativeDecreaseOnThrottling() {
+        AdaptiveConcurrencyApiClient client = new AdaptiveConcurrencyApiClient(mockApiClient, 8, 1, 8, clock::get);
+        client.analyzeChapterGroupAsync(new ApiRequest("提示词", "内容1"));
+        client.analyzeChapterGroupAsync(new ApiRequest("提示词", "内容2"));
+
+        complete(0, ApiResponse.failure("rate limited", 429));
+        assertEquals(4, client.getConcurrencyLimit(), "返回429时上限应减半");
+
+        complete(1, ApiResponse.failure("rate limited", 429));
+        assertEquals(4, client.getConcurrencyLimit(), "减半前发出的请求返回过载时不应再次减半");
+
+        client.analyzeChapterGroupAsync(new ApiRequest("提示词", "内容3"));
+        complete(2, ApiResponse.failure("unavailable", 503));
+        assertEquals(2, client.getConcurrencyLimit(), "减半后发出的请求返回503时应再次减半");
+    }
+
+    @Test
+    public void testDecreaseOnLatencySpike() {
+        AdaptiveConcurrencyApiClient client = new AdaptiveConcurrencyApiClient(mockApiClient, 8, 1, 8, clock::get);
+        for (int i = 0; i < 3; i++) {
+            client.analyzeChapterGroupAsync(new ApiRequest("提示词", "内容" + i));
+            complete(i, ApiResponse.success("分析"));
+        }
+        assertEquals(8, client.getConcurrencyLimit(), "响应时间稳定时不应减少");
+
+        client.analyzeChapterGroupAsync(new ApiRequest("提示词", "内容3"));
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        complete(3, ApiResponse.success("分析"));
+
+        assertEquals(4, client.getConcurrencyLimit(), "响应时间突增时上限应减半");
+    }
+
+    @Test
+    public void testSyncCall() {
+        when(mockApiClient.analyzeChapterGroup(any())).thenReturn(ApiResponse.success("分析"));
+        AdaptiveConcurrencyApiClient client = new AdaptiveConcurrencyApiClient(mockApiClient, 2, 1, 8, clock::get);
+
+        ApiResponse response = client.analyzeChapterGroup(new ApiRequest("提示词", "内容"));
+
+        assertEquals("分析", response.responseBody(), "应返回实际客户端的响应");
+        assertEquals(0, client.getInFlight(), "请求完成后应归还并发");
+    }
+
+    @Test
+    public void testRateLimiterWaitIsNotLatency() throws Exception {
+        // 余量用完后每50毫秒放行一个请求，API本身耗时50毫秒
+        RateLimiter rateLimiter = new RateLimiter(1200);
+        while (rateLimiter.tryAcquire(0, 0, TimeUnit.SECONDS)) {
+            // 用完余量
+        }
+        ApiClient rateLimitedClient = new ApiClient() {
+            @Override
+            public ApiResponse analyzeChapterGroup(ApiRequest request) {
+                return analyzeChapterGroupAsync(request).join();
+            }
+
+            @Override
+            public CompletableFuture<ApiResponse> analyzeChapterGroupAsync(ApiRequest request) {
+                return rateLimiter.acquireAsync(request, 0).thenCompose(permit -> CompletableFuture.supplyAsync(
+                        () -> ApiResponse.success("分析"), CompletableFuture.delayedExecutor(50, TimeUnit.MILLISECONDS)));
+            }
+
+            @Override
+            public String getProviderName() {
+                return "gemini";
+            }
+        };
+        AdaptiveConcurrencyApiClient client = new AdaptiveConcurrencyApiClient(rateLimitedClient, 4, 1, 4);
+
+        List<CompletableFuture<ApiResponse>> responses = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            responses.add(client.analyzeChapterGroupAsync(new ApiRequest("提示词", "内容" + i)));
+        }
+        CompletableFuture.allOf(responses.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+
+        assertEquals(4, client.getConcurrencyLimit(), "在限流器中排队的时间不应计入响应时间而减少上限");
+    }
+
+    // 每个请求耗时1秒
+    private void complete(int index, ApiResponse response) {
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        pending.get(index).complete(response);
+    }
+}
@@ -3,6 +3,7 @@ package com.novelreader;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -12,6 +13,12 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -92,6 +99,25 @@ public class AnalysisProcessorTest {
         verify(mockResultSaver, times(1)).mergeResults(finalOutputFile);
     }
     
+    @Test
+    public void testSkippedLegacyResultGetsFingerprints() throws Exception {
+        ChapterGroup group = new ChapterGroup(1, 1, 1);
+        group.addChapter(new Chapter(1, "第1章", "测试内容"));
+        String analysisResultsDirPath = Configuration.analysisResultsDirPath;
+        Configuration.analysisResultsDirPath = outputDirectory;
+        try {
+            // 旧版本的分析结果，没有指纹文件
+            Files.writeString(tempDir.resolve(group.getAnalysisFileName()), "{}");
+            
+            processor.processChapterGroups(List.of(group));
+        } finally {
+            Configuration.analysisResultsDirPath = analysisResultsDirPath;
+        }
+        
+        verify(mockApiClient, never()).analyzeChapterGroup(any());
+        assertTrue(Files.exists(tempDir.resolve(group.getFingerprintFileName())), "跳过旧版本的分析结果时应补写指纹");
+    }
+    
     @Test
     public void testProcessChapterGroups_ApiFailureWithRetry() {
         // 准备测试数据
@@ -124,6 +150,31 @@ public class AnalysisProcessorTest {
         verify(mockResultSaver, times(1)).mergeResults(finalOutputFile);
     }
     
+    @Test
+    public void testProcessChapterGroups_TruncatedOutputWithRetry() {
+        ChapterGroup group = new ChapterGroup(1, 1, 2);
+        group.addChapter(new Chapter(1, "第1章", "测试内容1"));
+        group.addChapter(new Chapter(2, "第2章", "测试内容2"));
+        
+        String resultFile = Paths.get(outputDirectory, "result.json").toString();
+        
+        // 第一次输出达到最大输出token数被截断，第二次完整
+        ApiResponse truncatedResponse = ApiResponse.success("被截断的Markdown结果", "length", null);
+        ApiResponse successResponse = ApiResponse.success("成功的Markdown结果", "stop", null);
+        
+        when(mockApiClient.analyzeChapterGroup(any())).thenReturn(truncatedResponse, successResponse);
+        when(mockValidator.validateResult(anyString(), anyInt())).thenReturn(true);
+        when(mockResultSaver.saveChapterGroupResult(eq(group), anyString(), eq(outputDirectory))).thenReturn(resultFile);
+        when(mockResultSaver.mergeResults(finalOutputFile)).thenReturn(true);
+        
+        assertTrue(processor.processChapterGroups(List.of(group)), "处理应该成功");
+        
+        verify(mockApiClient, times(2)).analyzeChapterGroup(any());
+        verify(mockApiClient).discardResponse(any());
+        verify(mockValidator, times(1)).validateResult(anyString(), anyInt());
+        verify(mockResultSaver).saveChapterGroupResult(group, "成功的Markdown结果", outputDirectory);
+    }
+    
     @Test
     public void testProcessChapterGroups_ValidationFailureWithRetry() {
         // 准备测试数据
@@ -209,4 +260,86 @@ public class AnalysisProcessorTest {
         verify(mockResultSaver, times(1)).saveChapterGroupResult(eq(group), anyString(), eq(outputDirectory));
         verify(mockResultSaver, never()).mergeResults(anyString());
     }
+    
+    @Test
+    public void testProcessChapterGroups_OversizeChapterSplitIntoParts() {
+        // 单章约90个token，超出60个token的单次请求预算，拆分为2部分分析后拼接
+        AnalysisProcessor splittingProcessor = new AnalysisProcessor(mockApiClient, mockValidator, mockResultSaver,
+                outputDirectory, finalOutputFile, new TokenEstimator(), 60);
+        String paragraph = "段".repeat(20) + "\n";
+        ChapterGroup group = new ChapterGroup(1, 5, 5);
+        group.addChapter(new Chapter(5, "第5章 长章", paragraph.repeat(4)));
+        
+        when(mockApiClient.analyzeChapterGroup(any())).thenReturn(
+                ApiResponse.success("**第5章 长章（1/2）**\n分析A"), ApiResponse.success("**第5章 长章（2/2）**\n分析B"));
+        when(mockValidator.validateResult(anyString(), eq(1))).thenReturn(true);
+        when(mockResultSaver.saveChapterGroupResult(eq(group), anyString(), eq(outputDirectory))).thenReturn("result.json");
+        when(mockResultSaver.mergeResults(finalOutputFile)).thenReturn(true);
+        
+        boolean result = splittingProcessor.processChapterGroups(List.of(group));
+        
+        assertTrue(result, "处理应该成功");
+        verify(mockApiClient, times(2)).analyzeChapterGroup(any());
+        ArgumentCaptor<String> stitched = ArgumentCaptor.forClass(String.class);
+        verify(mockResultSaver, times(1)).saveChapterGroupResult(eq(group), stitched.capture(), eq(outputDirectory));
+        assertTrue(stitched.getValue().startsWith("**第5章 长章**"), "拼接结果应以章节标题开头");
+        assertTrue(stitched.getValue().contains("### 第2/2部分"), "拼接结果应包含各部分的小节");
+        assertTrue(stitched.getValue().contains("分析A") && stitched.getValue().contains("分析B"), "拼接结果应包含各部分的分析");
+        assertEquals(1, Pattern.compile("第5章").matcher(stitched.getValue()).results().count(), "拼接结果应只有一个章节标题");
+    }
+    
+    @Test
+    public void testProcessChapterGroupsAsync_ApiFailureWithRetry() {
+        ChapterGroup group1 = new ChapterGroup(1, 1, 1);
+        group1.addChapter(new Chapter(1, "第1章", "测试内容1"));
+        ChapterGroup group2 = new ChapterGroup(2, 2, 2);
+        group2.addChapter(new Chapter(2, "第2章", "测试内容2"));
+        
+        // 第一次调用失败，之后的响应延迟到达，模拟等待限流许可和网络
+        CompletableFuture<ApiResponse> delayedSuccess = CompletableFuture.supplyAsync(
+                () -> ApiResponse.success("成功的Markdown结果"), CompletableFuture.delayedExecutor(50, TimeUnit.MILLISECONDS));
+        when(mockApiClient.analyzeChapterGroupAsync(any())).thenReturn(
+                CompletableFuture.completedFuture(ApiResponse.failure("API调用失败")), delayedSuccess, delayedSuccess);
+        when(mockValidator.validateResult(anyString(), eq(1))).thenReturn(true);
+        when(mockResultSaver.saveChapterGroupResult(any(), anyString(), eq(outputDirectory))).thenReturn("result.json");
+        when(mockResultSaver.mergeResults(finalOutputFile)).thenReturn(true);
+        
+        boolean result = processor.processChapterGroupsAsync(List.of(group1, group2).iterator());
+        
+        assertTrue(result, "处理应该成功");
+        verify(mockApiClient, times(3)).analyzeChapterGroupAsync(any());
+        verify(mockApiClient, never()).analyzeChapterGroup(any());
+        verify(mockResultSaver, times(1)).saveChapterGroupResult(eq(group1), anyString(), eq(outputDirectory));
+        verify(mockResultSaver, times(1)).saveChapterGroupResult(eq(group2), anyString(), eq(outputDirectory));
+        verify(mockResultSaver, times(1)).mergeResults(finalOutputFile);
+    }
+    
+    @Test
+    public void testProcessChapterGroupsAsync_SavesOffHttpThread() throws Exception {
+        ChapterGroup group = new ChapterGroup(1, 1, 1);
+        group.addChapter(new Chapter(1, "第1章", "测试内容"));
+        
+        // 响应在模拟的HTTP线程上到达
+        ExecutorService http = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "http-test"));
+        try {
+            when(mockApiClient.analyzeChapterGroupAsync(any())).thenReturn(
+                    CompletableFuture.supplyAsync(() -> ApiResponse.success("成功的Markdown结果"), http));
+            List<String> threads = new CopyOnWriteArrayList<>();
+            when(mockValidator.validateResult(anyString(), eq(1))).thenAnswer(invocation -> {
+                threads.add(Thread.currentThread().getName());
+                return true;
+            });
+            when(mockResultSaver.saveChapterGroupResult(any(), anyString(), eq(outputDirectory))).thenAnswer(invocation -> {
+                threads.add(Thread.currentThread().getName());
+                return "result.json";
+            });
+            
+            processor.processChapterGroupsAsync(List.of(group).iterator());
+            
+            assertEquals(2, threads.size(), "应验证并保存结果");
+            assertFalse(threads.contains("http-test"), "验证和保存不应在HTTP线程上执行");
+        } finally {
+            http.shutdown();
+        }
+    }
 }
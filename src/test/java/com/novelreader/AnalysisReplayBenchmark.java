@@ -0,0 +1,115 @@
+package com.novelreader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 回放录制的API调用，测量AnalysisProcessor处理、验证、保存和合并结果的开销，运行方式见{@link HeadingMatcherBenchmark}
+ * <p>
+ * setUp时用生成的响应录制一份记录文件，每次运行分析200个章节组，latency为none时不模拟API响应时间。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnalysisReplayBenchmark {
+    private static final int GROUP_COUNT = 200;
+    private static final int CHAPTERS_PER_GROUP = 5;
+
+    @Param({"none", "fixed:2"})
+    public String latency;
+
+    private Path workDirectory;
+    private Path outputDirectory;
+    private ReplayApiClient replayApiClient;
+
+    @Setup
+    public void setUp() throws IOException {
+        workDirectory = Files.createTempDirectory("replay-benchmark");
+        Path cassettePath = workDirectory.resolve("cassette.jsonl");
+        ApiClient recorder = new RecordingApiClient(new ApiClient() {
+            @Override
+            public ApiResponse analyzeChapterGroup(ApiRequest request) {
+                StringBuilder markdown = new StringBuilder();
+                for (int i = request.getStartChapterNumber(); i <= request.getEndChapterNumber(); i++) {
+                    markdown.append("**第").append(i).append("章 标题").append(i).append("**\n")
+                            .append("本章讲述了主角的经历。".repeat(20)).append("\n\n");
+                }
+                return ApiResponse.success(markdown.toString());
+            }
+
+            @Override
+            public String getProviderName() {
+                return "gemini";
+            }
+        }, cassettePath);
+        for (ChapterGroup group : chapterGroups()) {
+            recorder.analyzeChapterGroup(new ApiRequest(Configuration.getPrompt(), group));
+        }
+        replayApiClient = new ReplayApiClient(cassettePath, "gemini", "", ReplayApiClient.LatencyModel.parse(latency));
+    }
+
+    @Setup(Level.Invocation)
+    public void createOutputDirectory() throws IOException {
+        outputDirectory = Files.createTempDirectory(workDirectory, "output");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(workDirectory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean processChapterGroups() {
+        return newProcessor().processChapterGroups(chapterGroups());
+    }
+
+    @Benchmark
+    public boolean processChapterGroupsAsync() {
+        return newProcessor().processChapterGroupsAsync(chapterGroups().iterator());
+    }
+
+    private AnalysisProcessor newProcessor() {
+        return new AnalysisProcessor(replayApiClient, new ResultValidator(), new ResultSaver(),
+                outputDirectory.toString(), outputDirectory.resolve("final_results.md").toString());
+    }
+
+    private static List<ChapterGroup> chapterGroups() {
+        List<ChapterGroup> groups = new ArrayList<>();
+        for (int groupId = 1; groupId <= GROUP_COUNT; groupId++) {
+            int start = (groupId - 1) * CHAPTERS_PER_GROUP + 1;
+            ChapterGroup group = new ChapterGroup(groupId, start, start + CHAPTERS_PER_GROUP - 1);
+            for (int number = start; number < start + CHAPTERS_PER_GROUP; number++) {
+                group.addChapter(new Chapter(number, "第" + number + "章", "正文内容" + number));
+            }
+            groups.add(group);
+        }
+        return groups;
+    }
+}
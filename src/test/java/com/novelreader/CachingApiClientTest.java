@@ -0,0 +1,161 @@
+package com.novelreader;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * CachingApiClient的单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+public class CachingApiClientTest {
+
+    @Mock
+    private ApiClient mockApiClient;
+
+    @TempDir
+    Path cacheDirectory;
+
+    @BeforeEach
+    public void setUp() {
+        lenient().when(mockApiClient.getProviderName()).thenReturn("gemini");
+        lenient().when(mockApiClient.getModelName()).thenReturn("gemini-2.0-flash");
+    }
+
+    @Test
+    public void testRerunUsesCachedResponse() {
+        ApiResponse.Usage usage = new ApiResponse.Usage(100, 20, 120);
+        when(mockApiClient.analyzeChapterGroup(any())).thenReturn(ApiResponse.success("**第1章**\n分析", "STOP", usage));
+
+        ApiResponse first = new CachingApiClient(mockApiClient, cacheDirectory, 1024 * 1024)
+                .analyzeChapterGroup(new ApiRequest("提示词", "第1章 内容"));
+        // 重新运行，创建新的客户端
+        CachingApiClient rerun = new CachingApiClient(mockApiClient, cacheDirectory, 1024 * 1024);
+        ApiResponse cached = rerun.analyzeChapterGroup(new ApiRequest("提示词", "第1章 内容"));
+
+        verify(mockApiClient, times(1)).analyzeChapterGroup(any());
+        assertEquals(first, cached, "命中缓存时应返回相同的响应");
+        assertEquals(1, rerun.getHits(), "应记录命中次数");
+    }
+
+    @Test
+    public void testDifferentContentOrModelMisses() {
+        when(mockApiClient.analyzeChapterGroup(any())).thenReturn(ApiResponse.success("分析"));
+        CachingApiClient client = new CachingApiClient(mockApiClient, cacheDirectory, 1024 * 1024);
+
+        client.analyzeChapterGroup(new ApiRequest("提示词", "内容一"));
+        client.analyzeChapterGroup(new ApiRequest("提示词", "内容二"));
+        when(mockApiClient.getModelName()).thenReturn("gemini-2.5-pro");
+        new CachingApiClient(mockApiClient, cacheDirectory, 1024 * 1024).analyzeChapterGroup(new ApiRequest("提示词", "内容一"));
+
+        verify(mockApiClient, times(3)).analyzeChapterGroup(any());
+    }
+
+    @Test
+    public void testDiscardedResponseIsRefetchedAndFailuresAreNotCached() {
+        when(mockApiClient.analyzeChapterGroup(any())).thenReturn(
+                ApiResponse.failure("API调用失败"), ApiResponse.success("格式错误的结果"), ApiResponse.success("正确的结果"));
+        ApiRequest request = new ApiRequest("提示词", "内容");
+        CachingApiClient client = new CachingApiClient(mockApiClient, cacheDirectory, 1024 * 1024);
+
+        assertFalse(client.analyzeChapterGroup(request).isSuccess(), "失败的响应应原样返回");
+        assertEquals("格式错误的结果", client.analyzeChapterGroup(request).responseBody(), "失败的响应不应缓存");
+        client.discardResponse(request);
+        assertEquals("正确的结果", client.analyzeChapterGroup(request).responseBody(), "丢弃的响应不应再命中");
+
+        ApiResponse cached = new CachingApiClient(mockApiClient, cacheDirectory, 1024 * 1024).analyzeChapterGroup(request);
+        assertEquals("正确的结果", cached.responseBody(), "重试的结果应覆盖缓存");
+        verify(mockApiClient, times(3)).analyzeChapterGroup(any());
+        verify(mockApiClient).discardResponse(request);
+    }
+
+    @Test
+    public void testDiscardedResponseIsNotServedOnNextRun() {
+        when(mockApiClient.analyzeChapterGroup(any())).thenReturn(
+                ApiResponse.success("格式错误的结果"), ApiResponse.success("正确的结果"));
+        ApiRequest request = new ApiRequest("提示词", "内容");
+        CachingApiClient client = new CachingApiClient(mockApiClient, cacheDirectory, 1024 * 1024);
+        client.analyzeChapterGroup(request);
+        // 所有重试都没有通过验证
+        client.discardResponse(request);
+
+        CachingApiClient rerun = new CachingApiClient(mockApiClient, cacheDirectory, 1024 * 1024);
+        assertEquals("正确的结果", rerun.analyzeChapterGroup(request).responseBody(), "验证不通过的响应不应留在缓存中");
+        assertEquals(0, rerun.getHits(), "不应命中丢弃的响应");
+    }
+
+    @Test
+    public void testSameRequestInOneRunHitsCache() {
+        when(mockApiClient.analyzeChapterGroup(any())).thenReturn(ApiResponse.success("分析"));
+        CachingApiClient client = new CachingApiClient(mockApiClient, cacheDirectory, 1024 * 1024);
+
+        client.analyzeChapterGroup(new ApiRequest("提示词", "内容"));
+        client.analyzeChapterGroup(new ApiRequest("提示词", "内容"));
+
+        verify(mockApiClient, times(1)).analyzeChapterGroup(any());
+        assertEquals(1, client.getHits(), "没有被丢弃的响应应直接命中");
+    }
+
+    @Test
+    public void testAsyncHitCompletesWithoutDelegate() {
+        when(mockApiClient.analyzeChapterGroupAsync(any()))
+                .thenReturn(CompletableFuture.completedFuture(ApiResponse.success("分析")));
+        new CachingApiClient(mockApiClient, cacheDirectory, 1024 * 1024)
+                .analyzeChapterGroupAsync(new ApiRequest("提示词", "内容")).join();
+
+        CompletableFuture<ApiResponse> cached = new CachingApiClient(mockApiClient, cacheDirectory, 1024 * 1024)
+                .analyzeChapterGroupAsync(new ApiRequest("提示词", "内容"));
+
+        assertTrue(cached.isDone(), "命中缓存时应立即完成，不等待限流许可");
+        assertEquals("分析", cached.join().responseBody(), "应返回缓存的响应");
+        verify(mockApiClient, times(1)).analyzeChapterGroupAsync(any());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted() throws Exception {
+        when(mockApiClient.analyzeChapterGroup(any())).thenReturn(ApiResponse.success("分析".repeat(50)));
+        CachingApiClient client = new CachingApiClient(mockApiClient, cacheDirectory, 1024 * 1024);
+        client.analyzeChapterGroup(new ApiRequest("提示词", "内容一"));
+        long entrySize;
+        try (Stream<Path> paths = Files.list(cacheDirectory)) {
+            entrySize = Files.size(paths.findFirst().orElseThrow());
+        }
+
+        // 上限只够保存两个条目
+        client = new CachingApiClient(mockApiClient, cacheDirectory, entrySize * 2 + entrySize / 2);
+        client.analyzeChapterGroup(new ApiRequest("提示词", "内容二"));
+        client.analyzeChapterGroup(new ApiRequest("提示词", "内容一"));
+        client.analyzeChapterGroup(new ApiRequest("提示词", "内容三"));
+
+        try (Stream<Path> paths = Files.list(cacheDirectory)) {
+            assertEquals(2, paths.count(), "超出上限时应淘汰条目");
+        }
+        CachingApiClient rerun = new CachingApiClient(mockApiClient, cacheDirectory, entrySize * 3);
+        rerun.analyzeChapterGroup(new ApiRequest("提示词", "内容一"));
+        assertEquals(1, rerun.getHits(), "刚用过的内容一应保留");
+        rerun.analyzeChapterGroup(new ApiRequest("提示词", "内容二"));
+        assertEquals(1, rerun.getHits(), "最久未使用的内容二应被淘汰");
+        assertEquals(1, rerun.getMisses(), "内容二应未命中");
+    }
+
+    @Test
+    public void testUnwrapFindsCacheInsideRecording() {
+        CachingApiClient cachingApiClient = new CachingApiClient(mockApiClient, cacheDirectory, 1024 * 1024);
+        ApiClient recording = new RecordingApiClient(cachingApiClient, cacheDirectory.resolve("cassette.jsonl"));
+
+        assertSame(cachingApiClient, recording.unwrap(CachingApiClient.class), "录制时应能找到被包装的缓存客户端");
+        assertSame(recording, recording.unwrap(RecordingApiClient.class));
+        assertNull(recording.unwrap(ReplayApiClient.class), "包装链中没有的类型应返回null");
+    }
+}
@@ -0,0 +1,62 @@
+package com.novelreader;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 章节内容指纹的单元测试
+ */
+public class ChapterFingerprintsTest {
+    
+    @TempDir
+    Path tempDir;
+    
+    @Test
+    public void testHash() {
+        long hash = ChapterFingerprints.hash(new Chapter(1, "第1章 开始", "正文内容"));
+        
+        assertEquals(hash, ChapterFingerprints.hash(new Chapter(1, "第1章 开始", "正文内容")), "相同内容的哈希应一致");
+        assertNotEquals(hash, ChapterFingerprints.hash(new Chapter(1, "第1章 开始", "正文内容。")), "正文修改后哈希应变化");
+        assertNotEquals(hash, ChapterFingerprints.hash(new Chapter(1, "第1章 开", "始正文内容")), "标题与正文的分界应计入哈希");
+    }
+    
+    @Test
+    public void testOnlyChangedGroupIsInvalidated() {
+        ChapterGroup group1 = createGroup(1, 1, "原文");
+        ChapterGroup group2 = createGroup(2, 3, "原文");
+        ChapterFingerprints.write(group1, tempDir.toString());
+        ChapterFingerprints.write(group2, tempDir.toString());
+        
+        // 修订第4章的错别字
+        ChapterGroup revised = createGroup(2, 3, "原文");
+        revised.getChapters().get(1).setChapterContent("修订后的原文");
+        
+        assertTrue(ChapterFingerprints.isUpToDate(createGroup(1, 1, "原文"), tempDir.toString()), "未修改的章节组无需重新分析");
+        assertFalse(ChapterFingerprints.isUpToDate(revised, tempDir.toString()), "修改过的章节组应重新分析");
+    }
+    
+    @Test
+    public void testMissingFingerprintsAreUpToDateWithoutWriting() {
+        // 旧版本的分析结果没有指纹文件，视为一致
+        ChapterGroup group = createGroup(1, 1, "原文");
+        
+        assertTrue(ChapterFingerprints.isUpToDate(group, tempDir.toString()), "没有指纹文件时视为一致");
+        assertFalse(Files.exists(tempDir.resolve(group.getFingerprintFileName())), "检查时不应写入指纹文件");
+        ChapterFingerprints.write(group, tempDir.toString());
+        group.getChapters().get(0).setChapterContent("修订后的原文");
+        assertFalse(ChapterFingerprints.isUpToDate(group, tempDir.toString()), "补写指纹后应能发现修改");
+    }
+    
+    private static ChapterGroup createGroup(int groupId, int startChapter, String content) {
+        ChapterGroup group = new ChapterGroup(groupId, startChapter, startChapter + 1);
+        for (int i = startChapter; i <= startChapter + 1; i++) {
+            group.addChapter(new Chapter(i, "第" + i + "章", content + i));
+        }
+        return group;
+    }
+}
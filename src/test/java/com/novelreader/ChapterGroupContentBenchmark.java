@@ -0,0 +1,68 @@
+package com.novelreader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 章节组内容的JMH基准测试，10章、每章约4000字并做文本规范化，运行方式见{@link HeadingMatcherBenchmark}
+ * <p>
+ * rebuildPerCall是改动前每次调用都重新拼接的做法，buildOnce是按总长度一次分配的拼接，cached是缓存命中（重试和其他使用方）。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChapterGroupContentBenchmark {
+
+    private ChapterGroup group;
+    private TextNormalizer textNormalizer;
+
+    @Setup
+    public void setUp() throws IOException {
+        String novel = Files.readString(Paths.get("src", "test", "resources", "牧神记_test.txt"), StandardCharsets.UTF_8);
+        textNormalizer = new TextNormalizer();
+        group = new ChapterGroup(1, 1, 10);
+        group.setTextNormalizer(textNormalizer);
+        for (int i = 0; i < 10; i++) {
+            int start = (i * 4000) % (novel.length() - 4000);
+            group.addChapter(new Chapter(i + 1, "第" + (i + 1) + "章 测试", novel.substring(start, start + 4000)));
+        }
+    }
+
+    @Benchmark
+    public String rebuildPerCall() {
+        StringBuilder content = new StringBuilder();
+        for (Chapter chapter : group.getChapters()) {
+            content.append(chapter.getChapterTitle()).append("\n\n");
+            content.append(textNormalizer.normalize(chapter.getChapterContent())).append("\n\n");
+        }
+        return content.toString();
+    }
+
+    @Benchmark
+    public String buildOnce() {
+        group.clearContent();
+        return group.getContent();
+    }
+
+    @Benchmark
+    public String cached() {
+        return group.getContent();
+    }
+}
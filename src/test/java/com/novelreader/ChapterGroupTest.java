@@ -0,0 +1,40 @@
+package com.novelreader;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ChapterGroup的单元测试
+ */
+public class ChapterGroupTest {
+
+    @Test
+    public void testContentIsBuiltOnce() {
+        TextNormalizer textNormalizer = new TextNormalizer();
+        ChapterGroup group = new ChapterGroup(1, 1, 2);
+        group.setTextNormalizer(textNormalizer);
+        group.addChapter(new Chapter(1, "第1章 开始", "　　正文一。"));
+        group.addChapter(new Chapter(2, "第2章 继续", "　　正文二。"));
+
+        String content = group.getContent();
+
+        assertEquals("第1章 开始\n\n正文一。\n\n第2章 继续\n\n正文二。\n\n", content, "内容应按章节拼接");
+        assertSame(content, group.getContent(), "再次获取应返回缓存的内容");
+        assertEquals(12, textNormalizer.getInputChars(), "每章只应规范化一次");
+    }
+
+    @Test
+    public void testContentIsRebuiltAfterChange() {
+        ChapterGroup group = new ChapterGroup(1, 1, 2);
+        group.addChapter(new Chapter(1, "第1章", "正文一"));
+        String content = group.getContent();
+
+        group.addChapter(new Chapter(2, "第2章", "正文二"));
+        assertEquals("第1章\n\n正文一\n\n第2章\n\n正文二\n\n", group.getContent(), "添加章节后内容应重新生成");
+
+        group.clearContent();
+        assertNotSame(content, group.getContent(), "释放后应重新生成内容");
+        assertEquals(2 * content.length(), group.getContent().length(), "重新生成的内容应包含所有章节");
+    }
+}
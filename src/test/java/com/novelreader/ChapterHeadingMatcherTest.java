@@ -0,0 +1,64 @@
+package com.novelreader;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 章节标题匹配器的单元测试
+ */
+public class ChapterHeadingMatcherTest {
+    
+    private ChapterHeadingMatcher matcher;
+    
+    @BeforeEach
+    public void setUp() {
+        matcher = new ChapterHeadingMatcher();
+    }
+    
+    @Test
+    public void testArabicAndFullWidthNumerals() {
+        assertEquals(1, matcher.match("第1章 少年"), "阿拉伯数字标题");
+        assertEquals(123, matcher.match("　　第123章：天黑别出门  "), "带缩进和冒号的标题");
+        assertEquals(45, matcher.match("第４５章 全角数字"), "全角数字标题");
+        assertEquals(7, matcher.match("第7章灵胎壁"), "章字后直接跟标题");
+    }
+    
+    @Test
+    public void testChineseNumerals() {
+        assertEquals(123, matcher.match("第一百二十三章 重生"), "中文数字标题");
+        assertEquals(12, matcher.match("第十二章"), "十开头的中文数字");
+        assertEquals(105, matcher.match("第一百零五章 破壁"), "含零的中文数字");
+        assertEquals(2020, matcher.match("第两千零二十章"), "两千零二十");
+        assertEquals(10001, matcher.match("第一万零一章"), "一万零一");
+        assertEquals(102, matcher.match("第一〇二章"), "逐位写法");
+        assertEquals(36, matcher.match("第叁拾陆章 大写数字"), "大写数字");
+    }
+    
+    @Test
+    public void testAlternativeUnits() {
+        assertEquals(3, matcher.match("第三回 风雪山神庙"), "第N回");
+        assertEquals(8, matcher.match("第8节"), "第N节");
+        assertEquals(HeadingMatcher.NO_MATCH, matcher.match("第二回合，他又出手了"), "回合不是标题");
+        assertEquals(3, new ChapterHeadingMatcher("卷", 30).match("第三卷 天魔教"), "自定义单位");
+    }
+    
+    @Test
+    public void testRejectsBodyText() {
+        assertEquals(HeadingMatcher.NO_MATCH, matcher.match("在第3章里他已经出现过了"), "正文中提到的章节不是标题");
+        assertEquals(HeadingMatcher.NO_MATCH, matcher.match("第二天，马爷继续出门捕猎"), "没有章节单位");
+        assertEquals(HeadingMatcher.NO_MATCH, matcher.match("第3章的时候他已经死了。"), "以句号结尾的句子");
+        assertEquals(HeadingMatcher.NO_MATCH, matcher.match("第1章" + "很".repeat(60)), "超过最大标题长度");
+        assertEquals(HeadingMatcher.NO_MATCH, matcher.match("第章"), "没有数字");
+        assertEquals(HeadingMatcher.NO_MATCH, matcher.match(""), "空行");
+    }
+    
+    @Test
+    public void testRegexMatcherKeepsLegacyBehavior() {
+        RegexHeadingMatcher regexMatcher = new RegexHeadingMatcher();
+        
+        assertEquals(3, regexMatcher.match("在第3章里他已经出现过了"), "正则匹配器在整行中查找");
+        assertEquals(HeadingMatcher.NO_MATCH, regexMatcher.match("第一百二十三章"), "正则匹配器不支持中文数字");
+    }
+}
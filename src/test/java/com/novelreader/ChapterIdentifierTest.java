@@ -2,8 +2,13 @@ package com.novelreader;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.Paths;
 import java.util.List;
 
@@ -52,6 +57,95 @@ public class ChapterIdentifierTest {
         assertTrue(lastChapter.getChapterContent().contains("这不是终点，而是新的开始"), "最后一章内容不正确");
     }
     
+    @Test
+    public void testMappedModeMatchesStreamMode() {
+        // 内存映射模式应与逐行读取模式得到完全一致的章节
+        List<Chapter> expected = chapterIdentifier.identifyChapters(testNovelPath);
+        List<Chapter> actual = new ChapterIdentifier(ChapterIdentifier.ScanMode.MAPPED).identifyChapters(testNovelPath);
+        
+        assertEquals(expected.size(), actual.size(), "章节数量应一致");
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getChapterNumber(), actual.get(i).getChapterNumber(), "章节号应一致");
+            assertEquals(expected.get(i).getChapterTitle(), actual.get(i).getChapterTitle(), "章节标题应一致");
+            assertEquals(expected.get(i).getChapterContent(), actual.get(i).getChapterContent(), "章节内容应一致");
+        }
+    }
+    
+    @Test
+    public void testScanChapterLayout() throws Exception {
+        // 章节布局只包含字节区间，按区间读取应得到章节标题
+        ChapterLayout layout = chapterIdentifier.scanChapterLayout(testNovelPath);
+        byte[] bytes = Files.readAllBytes(Path.of(testNovelPath));
+        
+        assertFalse(layout.spans().isEmpty(), "章节布局不应为空");
+        ChapterSpan first = layout.spans().get(0);
+        String title = new String(bytes, (int) first.titleOffset(), first.titleLength(), StandardCharsets.UTF_8);
+        assertEquals("第" + first.chapterNumber() + "章", title.substring(0, title.indexOf('章') + 1), "标题区间不正确");
+        assertTrue(first.contentOffset() > first.titleOffset(), "正文应位于标题之后");
+    }
+    
+    @Test
+    public void testIdentifyChaptersWithGbkAndBomFiles(@TempDir Path tempDir) throws Exception {
+        // GBK和带BOM的UTF-8文件应与原始UTF-8文件识别出相同的章节，且无需预先转码
+        String text = Files.readString(Path.of(testNovelPath), StandardCharsets.UTF_8);
+        List<Chapter> expected = chapterIdentifier.identifyChapters(testNovelPath);
+        
+        Path gbkFile = tempDir.resolve("gbk.txt");
+        Files.write(gbkFile, text.getBytes(Charset.forName("GBK")));
+        Path bomFile = tempDir.resolve("bom.txt");
+        Files.write(bomFile, ("\uFEFF" + text).getBytes(StandardCharsets.UTF_8));
+        
+        for (Path file : List.of(gbkFile, bomFile)) {
+            for (ChapterIdentifier.ScanMode mode : ChapterIdentifier.ScanMode.values()) {
+                List<Chapter> actual = new ChapterIdentifier(mode).identifyChapters(file.toString());
+                assertEquals(expected.size(), actual.size(), "章节数量应一致: " + file.getFileName() + " " + mode);
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(expected.get(i).getChapterTitle(), actual.get(i).getChapterTitle(), "章节标题应一致");
+                    assertEquals(expected.get(i).getChapterContent(), actual.get(i).getChapterContent(), "章节内容应一致");
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void testResumeFromCheckpoint(@TempDir Path tempDir) throws Exception {
+        // 25章分为3组，最后一组不满；追加7章后从第3组开始续读，只生成第3、4组
+        Path novel = tempDir.resolve("novel.txt");
+        Files.writeString(novel, buildNovel(1, 25), StandardCharsets.UTF_8);
+        ChapterIdentifier identifier = new ChapterIdentifier(ChapterIdentifier.ScanMode.MAPPED, true);
+        ChapterLayout layout = identifier.scanChapterLayout(novel.toString(), null);
+        List<ChapterGroup> groups = new ChapterSplitter().splitNovelIntoChapterGroups(identifier.toChapters(layout), tempDir.toString());
+        IngestionCheckpoint checkpoint = IngestionCheckpoint.of(layout, Files.size(novel), groups.get(groups.size() - 1));
+        
+        Files.writeString(novel, buildNovel(26, 32), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        ChapterLayout resumed = identifier.scanChapterLayout(novel.toString(), checkpoint);
+        
+        assertTrue(checkpoint.isResumedBy(resumed), "应从检查点续读");
+        assertEquals(12, resumed.size(), "应只读取第21章及之后的章节");
+        List<Chapter> chapters = identifier.toChapters(resumed);
+        assertTrue(new ChapterValidator().validateChapterOrder(chapters, checkpoint.getGroupStartChapterNumber()).isValid(), "续读的章节应连续");
+        List<ChapterGroup> newGroups = new ChapterSplitter().splitNovelIntoChapterGroups(chapters, tempDir.toString(), checkpoint.getGroupId());
+        assertEquals(2, newGroups.size(), "应只生成2个章节组");
+        assertEquals("003第21-30章.txt", newGroups.get(0).getFileName());
+        assertEquals("004第31-32章.txt", newGroups.get(1).getFileName());
+        assertEquals("第32章 标题32", chapters.get(chapters.size() - 1).getChapterTitle());
+        
+        // 文件被替换成更短的内容时检查点失效，重新扫描整个文件
+        Files.writeString(novel, buildNovel(1, 5), StandardCharsets.UTF_8);
+        ChapterLayout rescanned = identifier.scanChapterLayout(novel.toString(), checkpoint);
+        assertFalse(checkpoint.isResumedBy(rescanned), "文件变短后不应续读");
+        assertEquals(5, rescanned.size());
+    }
+    
+    private static String buildNovel(int firstChapter, int lastChapter) {
+        StringBuilder text = new StringBuilder();
+        for (int i = firstChapter; i <= lastChapter; i++) {
+            text.append("第").append(i).append("章 标题").append(i).append("\n");
+            text.append("　　这是本章的正文。\n");
+        }
+        return text.toString();
+    }
+    
     @Test
     public void testIdentifyChaptersWithNonExistentFile() {
         // 测试不存在的文件
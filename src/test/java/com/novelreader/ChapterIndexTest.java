@@ -0,0 +1,102 @@
+package com.novelreader;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 章节索引的单元测试
+ */
+public class ChapterIndexTest {
+    
+    @TempDir
+    Path tempDir;
+    
+    @Test
+    public void testWriteAndLoad() throws Exception {
+        Path novel = tempDir.resolve("novel.txt");
+        Files.writeString(novel, buildNovel(1, 30), StandardCharsets.UTF_8);
+        ChapterLayout layout = new ChapterIdentifier(ChapterIdentifier.ScanMode.MAPPED).scanChapterLayout(novel.toString());
+        Path indexPath = ChapterIndex.pathFor(novel.toString());
+        
+        ChapterIndex.write(indexPath, layout);
+        ChapterLayout loaded = ChapterIndex.load(indexPath, novel.toString());
+        
+        assertEquals(tempDir.resolve("novel.txt.idx"), indexPath, "索引文件应位于小说文件旁");
+        assertNotNull(loaded, "文件未变化时应从索引加载");
+        assertEquals(layout, loaded, "索引中的章节布局应与扫描结果一致");
+    }
+    
+    @Test
+    public void testLoadRejectsModifiedFile() throws Exception {
+        Path novel = tempDir.resolve("novel.txt");
+        Files.writeString(novel, buildNovel(1, 30), StandardCharsets.UTF_8);
+        Path indexPath = ChapterIndex.pathFor(novel.toString());
+        ChapterIndex.write(indexPath, new ChapterIdentifier(ChapterIdentifier.ScanMode.MAPPED).scanChapterLayout(novel.toString()));
+        
+        // 修改开头的内容，保持文件大小和修改时间不变
+        String modified = buildNovel(1, 30).replace("标题1\n", "标题X\n");
+        Files.writeString(novel, modified, StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(novel, Files.getLastModifiedTime(indexPath));
+        assertNull(ChapterIndex.load(indexPath, novel.toString()), "内容变化后索引应失效");
+        
+        Files.writeString(indexPath, "broken");
+        assertNull(ChapterIndex.load(indexPath, novel.toString()), "损坏的索引应被忽略");
+    }
+    
+    @Test
+    public void testLoadRejectsBadChapterCount() throws Exception {
+        Path novel = tempDir.resolve("novel.txt");
+        Files.writeString(novel, buildNovel(1, 30), StandardCharsets.UTF_8);
+        Path indexPath = ChapterIndex.pathFor(novel.toString());
+        ChapterLayout layout = new ChapterIdentifier(ChapterIdentifier.ScanMode.MAPPED).scanChapterLayout(novel.toString());
+        ChapterIndex.write(indexPath, layout);
+        
+        // 章节数位于文件头、编码名称之后
+        int countOffset = 32 + 2 + layout.charset().name().length();
+        for (int count : new int[]{Integer.MAX_VALUE, 31, -1}) {
+            try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.allocate(4).putInt(0, count), countOffset);
+            }
+            assertNull(ChapterIndex.load(indexPath, novel.toString()), "章节数与索引大小不符时应重建索引: " + count);
+            assertNull(ChapterIndex.extend(indexPath, layout), "章节数与索引大小不符时不应续用索引: " + count);
+        }
+    }
+    
+    @Test
+    public void testExtendWithResumedTail() throws Exception {
+        Path novel = tempDir.resolve("novel.txt");
+        Files.writeString(novel, buildNovel(1, 25), StandardCharsets.UTF_8);
+        ChapterIdentifier identifier = new ChapterIdentifier(ChapterIdentifier.ScanMode.MAPPED);
+        ChapterLayout layout = identifier.scanChapterLayout(novel.toString());
+        Path indexPath = ChapterIndex.pathFor(novel.toString());
+        ChapterIndex.write(indexPath, layout);
+        ChapterGroup lastGroup = new ChapterSplitter().splitNovelIntoChapterGroups(identifier.toChapters(layout), tempDir.toString()).get(2);
+        IngestionCheckpoint checkpoint = IngestionCheckpoint.of(layout, Files.size(novel), lastGroup);
+        
+        Files.writeString(novel, buildNovel(26, 32), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        assertNull(ChapterIndex.load(indexPath, novel.toString()), "文件追加内容后索引应失效");
+        ChapterLayout tail = identifier.scanChapterLayout(novel.toString(), checkpoint);
+        ChapterLayout extended = ChapterIndex.extend(indexPath, tail);
+        
+        assertEquals(identifier.scanChapterLayout(novel.toString()), extended, "补全后的布局应与重新扫描整个文件一致");
+        assertEquals(tail, checkpoint.tailOf(extended), "从完整布局截取的尾部应与续读结果一致");
+    }
+    
+    private static String buildNovel(int firstChapter, int lastChapter) {
+        StringBuilder text = new StringBuilder();
+        for (int i = firstChapter; i <= lastChapter; i++) {
+            text.append("第").append(i).append("章 标题").append(i).append("\n");
+            text.append("　　这是本章的正文。\n");
+        }
+        return text.toString();
+    }
+}
@@ -6,12 +6,14 @@ import org.junit.jupiter.api.io.TempDir;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
 
 /**
  * 章节分割器的单元测试
@@ -101,4 +103,128 @@ public class ChapterSplitterTest {
         assertTrue(fileContent.contains("第3章 测试"), "文件内容应包含第3章标题");
         assertTrue(fileContent.contains("这是第3章的内容"), "文件内容应包含第3章内容");
     }
+    
+    @Test
+    public void testSplitByTokenBudget() {
+        // 每章标题5个token、正文25个token，加上标题和正文后的空行共31个token
+        ChapterSplitter budgetSplitter = new ChapterSplitter(null, 100, 30, new TokenEstimator());
+        List<Chapter> chapters = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            String content = i == 5 ? "长".repeat(250) : "短".repeat(25);
+            chapters.add(new Chapter(i, "第" + i + "章 测试", content));
+        }
+        
+        List<ChapterGroup> chapterGroups = budgetSplitter.splitNovelIntoChapterGroups(chapters, tempDir.toString());
+        
+        assertEquals(5, chapterGroups.size(), "应该生成5个章节组");
+        assertEquals("001第1-3章.txt", chapterGroups.get(0).getFileName(), "前3章共93个token，加入第4章会超出预算");
+        assertEquals("002第4-4章.txt", chapterGroups.get(1).getFileName(), "第5章超出预算，第4章单独成组");
+        assertEquals("003第5-5章.txt", chapterGroups.get(2).getFileName(), "超出预算的章节应单独成组");
+        assertEquals("004第6-8章.txt", chapterGroups.get(3).getFileName(), "之后继续按预算分组");
+        assertEquals("005第9-10章.txt", chapterGroups.get(4).getFileName(), "最后一组包含剩余的章节");
+    }
+    
+    @Test
+    public void testSplitByTokenBudgetCountsSeparatorsAndEstimatesOnce() {
+        // 3章的标题和正文正好90个token，加上标题和正文后的空行会超出预算
+        TokenEstimator estimator = spy(new TokenEstimator());
+        ChapterSplitter budgetSplitter = new ChapterSplitter(null, 90, 30, estimator);
+        List<Chapter> chapters = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            chapters.add(new Chapter(i, "第" + i + "章 测试", String.valueOf((char) ('甲' + i)).repeat(25)));
+        }
+        
+        List<ChapterGroup> chapterGroups = budgetSplitter.splitNovelIntoChapterGroups(chapters, tempDir.toString());
+        
+        assertEquals(2, chapterGroups.size(), "加上空行后3章超出预算");
+        assertEquals("001第1-2章.txt", chapterGroups.get(0).getFileName());
+        assertTrue(chapterGroups.get(0).estimateTokens(new TokenEstimator()) <= 90, "章节组内容的估算值不应超出预算");
+        for (Chapter chapter : chapters) {
+            verify(estimator, times(1)).estimate(chapter.getChapterContent());
+        }
+    }
+    
+    @Test
+    public void testSplitByTokenBudgetRespectsMaxChapters() {
+        ChapterSplitter budgetSplitter = new ChapterSplitter(null, 1_000_000, 12, new TokenEstimator());
+        
+        List<ChapterGroup> chapterGroups = budgetSplitter.splitNovelIntoChapterGroups(testChapters, tempDir.toString());
+        
+        assertEquals(3, chapterGroups.size(), "应该生成3个章节组");
+        assertEquals(12, chapterGroups.get(0).getChapterCount(), "每组不应超过12章");
+        assertEquals(25, chapterGroups.get(2).getEndChapterNumber(), "最后一组应以第25章结束");
+    }
+    
+    @Test
+    public void testSplitChapterIntoParts() {
+        // 标题及后缀约8个token，每段20个字约20个token，预算60个token时每部分最多容纳2段
+        String paragraph = "段".repeat(20) + "\n";
+        Chapter chapter = new Chapter(5, "第5章 长章", paragraph.repeat(4));
+        
+        List<Chapter> parts = ChapterSplitter.splitChapterIntoParts(chapter, 60, new TokenEstimator());
+        
+        assertEquals(2, parts.size(), "应该拆分为2部分");
+        assertEquals("第5章 长章（1/2）", parts.get(0).getChapterTitle(), "标题应附加部分序号");
+        assertEquals(5, parts.get(1).getChapterNumber(), "各部分的章节号应与原章节相同");
+        assertEquals(paragraph.repeat(2), parts.get(0).getChapterContent(), "应在段落末尾断开");
+        assertEquals(paragraph.repeat(2), parts.get(1).getChapterContent(), "应在段落末尾断开");
+    }
+    
+    @Test
+    public void testSplitLongParagraphAtSentenceEnd() {
+        // 单个段落超出预算时在句末断开，每句30个token
+        String sentence = "句".repeat(29) + "。";
+        Chapter chapter = new Chapter(5, "第5章 长章", sentence.repeat(4));
+        TokenEstimator estimator = new TokenEstimator();
+        
+        List<Chapter> parts = ChapterSplitter.splitChapterIntoParts(chapter, 60, estimator);
+        
+        assertEquals(4, parts.size(), "应该在每个句末断开");
+        StringBuilder joined = new StringBuilder();
+        for (Chapter part : parts) {
+            assertEquals(sentence, part.getChapterContent(), "每部分应是完整的句子");
+            assertTrue(part.estimateTokens(estimator) <= 60, "每部分不应超出预算");
+            joined.append(part.getChapterContent());
+        }
+        assertEquals(chapter.getChapterContent(), joined.toString(), "拼接各部分应得到原文");
+    }
+    
+    @Test
+    public void testSplitChapterWithinBudget() {
+        Chapter chapter = new Chapter(1, "第1章", "短".repeat(10));
+        
+        List<Chapter> parts = ChapterSplitter.splitChapterIntoParts(chapter, 60, new TokenEstimator());
+        
+        assertEquals(List.of(chapter), parts, "未超出预算时应返回原章节");
+    }
+    
+    @Test
+    public void testWriteChapterGroupSlice() throws IOException {
+        // GBK编码的源文件，分割文件应与源文件中对应的字节完全相同
+        Path novel = tempDir.resolve("novel.txt");
+        StringBuilder text = new StringBuilder();
+        for (int i = 1; i <= 25; i++) {
+            text.append("第").append(i).append("章 标题").append(i).append("\r\n");
+            text.append("　　这是第").append(i).append("章的正文。\r\n\r\n");
+        }
+        Charset gbk = Charset.forName("GBK");
+        Files.write(novel, text.toString().getBytes(gbk));
+        ChapterIdentifier identifier = new ChapterIdentifier(ChapterIdentifier.ScanMode.MAPPED, true);
+        List<Chapter> chapters = identifier.toChapters(identifier.scanChapterLayout(novel.toString(), null));
+        
+        String sliceDirPath = Configuration.fileSliceDirPath;
+        Configuration.fileSliceDirPath = tempDir.resolve("slices").toString();
+        try {
+            ChapterSplitter exportingSplitter = new ChapterSplitter(null, 0, 10, new TokenEstimator(), true);
+            List<ChapterGroup> groups = exportingSplitter.splitNovelIntoChapterGroups(chapters, tempDir.toString());
+            
+            assertEquals(3, groups.size(), "应该生成3个章节组");
+            String slice = new String(Files.readAllBytes(tempDir.resolve("slices").resolve("002第11-20章.txt")), gbk);
+            assertTrue(slice.startsWith("第11章 标题11"), "分割文件应以组内第一章标题开头");
+            assertTrue(slice.endsWith("这是第20章的正文。"), "分割文件应以组内最后一章正文结尾");
+            assertEquals(text.substring(text.indexOf("第11章"), text.indexOf("第21章")).strip(), slice, "分割文件应是源文件的原样片段");
+        } finally {
+            Configuration.fileSliceDirPath = sliceDirPath;
+        }
+    }
 }
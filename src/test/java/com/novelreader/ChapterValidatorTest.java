@@ -36,6 +36,15 @@ public class ChapterValidatorTest {
         assertNull(result.getErrorMessage(), "有效章节列表不应有错误消息");
     }
     
+    @Test
+    public void testValidateChapterOrderFromChapterNumber() {
+        // 增量读取时章节从续读章节组的起始章节开始
+        List<Chapter> tailChapters = validChapters.subList(4, 10);
+        
+        assertTrue(chapterValidator.validateChapterOrder(tailChapters, 5).isValid(), "从第5章开始的章节列表应通过验证");
+        assertFalse(chapterValidator.validateChapterOrder(tailChapters, 1).isValid(), "起始章节不一致时不应通过验证");
+    }
+    
     @Test
     public void testValidateChapterOrderWithEmptyChapters() {
         // 测试空章节列表
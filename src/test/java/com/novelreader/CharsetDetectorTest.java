@@ -0,0 +1,59 @@
+package com.novelreader;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 编码探测器的单元测试
+ */
+public class CharsetDetectorTest {
+    
+    private static final String TEXT = "第1章 天黑别出门\n\n　　天黑，别出门。\n　　秦牧脑中轰然，不知道这个从牛皮里钻出来的女子在说些什么。\n";
+    
+    @Test
+    public void testDetectUtf8() {
+        CharsetDetector.Detection detection = CharsetDetector.detect(ByteBuffer.wrap(TEXT.getBytes(StandardCharsets.UTF_8)));
+        
+        assertEquals(StandardCharsets.UTF_8, detection.charset(), "应识别为UTF-8");
+        assertEquals(0, detection.bomLength(), "不应有BOM");
+    }
+    
+    @Test
+    public void testDetectGbk() {
+        CharsetDetector.Detection detection = CharsetDetector.detect(ByteBuffer.wrap(TEXT.getBytes(CharsetDetector.GB18030)));
+        
+        assertEquals(CharsetDetector.GB18030, detection.charset(), "GBK/GB18030文本应识别为GB18030");
+        assertTrue(detection.isAsciiCompatible(), "GB18030兼容ASCII");
+    }
+    
+    @Test
+    public void testDetectBom() {
+        byte[] utf8 = ("\uFEFF" + TEXT).getBytes(StandardCharsets.UTF_8);
+        CharsetDetector.Detection utf8Detection = CharsetDetector.detect(ByteBuffer.wrap(utf8));
+        assertEquals(StandardCharsets.UTF_8, utf8Detection.charset(), "应识别为UTF-8");
+        assertEquals(3, utf8Detection.bomLength(), "UTF-8 BOM长度为3");
+        
+        byte[] utf16 = ("\uFEFF" + TEXT).getBytes(StandardCharsets.UTF_16LE);
+        CharsetDetector.Detection utf16Detection = CharsetDetector.detect(ByteBuffer.wrap(utf16));
+        assertEquals(StandardCharsets.UTF_16LE, utf16Detection.charset(), "应识别为UTF-16LE");
+        assertFalse(utf16Detection.isAsciiCompatible(), "UTF-16不兼容ASCII");
+    }
+    
+    @Test
+    public void testTruncatedUtf8SequenceAtWindowEnd() {
+        // 探测窗口末尾被截断的UTF-8字符不应导致误判
+        StringBuilder text = new StringBuilder();
+        while (text.length() < CharsetDetector.SNIFF_BYTES) {
+            text.append(TEXT);
+        }
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        for (int cut = 1; cut <= 3; cut++) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, CharsetDetector.SNIFF_BYTES + cut).slice();
+            assertEquals(StandardCharsets.UTF_8, CharsetDetector.detect(buffer).charset(), "应识别为UTF-8");
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.novelreader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 章节标题匹配器的JMH基准测试，对比原有的正则匹配和手写匹配器逐行匹配整本测试小说的耗时
+ * <p>
+ * 运行方式：mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt，
+ * 然后执行 java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main HeadingMatcherBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeadingMatcherBenchmark {
+    
+    private String[] lines;
+    private final HeadingMatcher regexMatcher = new RegexHeadingMatcher();
+    private final HeadingMatcher chapterHeadingMatcher = new ChapterHeadingMatcher();
+    
+    @Setup
+    public void setUp() throws IOException {
+        List<String> allLines = Files.readAllLines(Paths.get("src", "test", "resources", "牧神记_test.txt"), StandardCharsets.UTF_8);
+        lines = allLines.toArray(new String[0]);
+    }
+    
+    @Benchmark
+    public int regexMatcher() {
+        return matchAll(regexMatcher);
+    }
+    
+    @Benchmark
+    public int chapterHeadingMatcher() {
+        return matchAll(chapterHeadingMatcher);
+    }
+    
+    private int matchAll(HeadingMatcher matcher) {
+        int sum = 0;
+        for (String line : lines) {
+            sum += matcher.match(line);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,159 @@
+package com.novelreader;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * HttpTransport的单元测试，使用本地HTTP服务器
+ */
+public class HttpTransportTest {
+
+    private HttpServer server;
+    private URI baseUri;
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            requests.add(exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath());
+            if (exchange.getRequestURI().getPath().equals("/slow")) {
+                try {
+                    Thread.sleep(2000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            byte[] body = exchange.getRequestURI().getPath().equals("/sse")
+                    ? "data: {\"text\":\"a\"}\n\n: keep-alive\n\ndata: {\"text\":\"b\"}\n\ndata: [DONE]\n\n".getBytes(StandardCharsets.UTF_8)
+                    : "ok".getBytes(StandardCharsets.UTF_8);
+            if (exchange.getRequestMethod().equals("HEAD")) {
+                exchange.sendResponseHeaders(200, -1);
+            } else {
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream output = exchange.getResponseBody()) {
+                    output.write(body);
+                }
+            }
+            exchange.close();
+        });
+        server.start();
+        baseUri = URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testSendRecordsMetricsPerProvider() throws Exception {
+        HttpTransport transport = new HttpTransport(Duration.ofSeconds(5), Duration.ofSeconds(5), 2);
+        HttpRequest request = transport.newRequest(baseUri.resolve("/v1/analyze"))
+                .POST(HttpRequest.BodyPublishers.ofString("{}"))
+                .build();
+
+        HttpResponse<String> response = transport.send("gemini", request);
+        transport.send("gemini", request);
+        transport.send("deepseek", request);
+
+        assertEquals(200, response.statusCode(), "请求应该成功");
+        assertEquals("ok", response.body(), "应返回响应体");
+        assertEquals(2, transport.metrics("gemini").getRequests(), "应按提供商统计请求数");
+        assertEquals(1, transport.metrics("deepseek").getRequests(), "应按提供商统计请求数");
+        assertEquals(0, transport.metrics("gemini").getFailures(), "不应有失败的请求");
+    }
+
+    @Test
+    public void testSendAsync() {
+        HttpTransport transport = new HttpTransport(Duration.ofSeconds(5), Duration.ofSeconds(5), 2);
+        HttpRequest request = transport.newRequest(baseUri.resolve("/v1/analyze"))
+                .POST(HttpRequest.BodyPublishers.ofString("{}"))
+                .build();
+
+        HttpResponse<String> response = transport.sendAsync("gemini", request).join();
+
+        assertEquals("ok", response.body(), "应返回响应体");
+        assertEquals(1, transport.metrics("gemini").getRequests(), "异步请求也应计入统计");
+    }
+
+    @Test
+    public void testStreamAsyncAbort() {
+        HttpTransport transport = new HttpTransport(Duration.ofSeconds(5), Duration.ofSeconds(5), 2);
+        HttpRequest request = transport.newRequest(baseUri.resolve("/sse")).GET().build();
+        List<String> events = new CopyOnWriteArrayList<>();
+
+        HttpTransport.StreamResult result = transport.streamAsync("deepseek", request, data -> {
+            events.add(data);
+            return false;
+        }).join();
+
+        assertTrue(result.aborted(), "handler返回false时应取消请求");
+        assertEquals(1, events.size(), "取消后不应再读取");
+    }
+
+    @Test
+    public void testWarmUpSendsHeadToOrigin() {
+        HttpTransport transport = new HttpTransport(Duration.ofSeconds(5), Duration.ofSeconds(5), 2);
+
+        transport.warmUp("gemini", baseUri.resolve("/v1beta/models/test:generateContent?key=secret")).join();
+
+        assertEquals(List.of("HEAD /"), requests, "预热应只向主机根路径发送HEAD请求，不携带路径和密钥");
+        assertEquals(1, transport.metrics("gemini").getWarmUps(), "应记录预热次数");
+    }
+
+    @Test
+    public void testRequestTimeout() {
+        HttpTransport transport = new HttpTransport(Duration.ofSeconds(5), Duration.ofMillis(200), 2);
+        HttpRequest request = transport.newRequest(baseUri.resolve("/slow")).GET().build();
+
+        assertThrows(HttpTimeoutException.class, () -> transport.send("gemini", request), "超过请求超时应抛出异常");
+        assertEquals(1, transport.metrics("gemini").getFailures(), "超时应记为失败");
+    }
+
+    @Test
+    public void testStreamReadsServerSentEvents() throws Exception {
+        HttpTransport transport = new HttpTransport(Duration.ofSeconds(5), Duration.ofSeconds(5), 2);
+        HttpRequest request = transport.newRequest(baseUri.resolve("/sse")).GET().build();
+        List<String> events = new ArrayList<>();
+
+        HttpTransport.StreamResult result = transport.stream("deepseek", request, events::add);
+
+        assertEquals(200, result.statusCode(), "请求应该成功");
+        assertFalse(result.aborted(), "不应被取消");
+        assertEquals(List.of("{\"text\":\"a\"}", "{\"text\":\"b\"}"), events, "应只读取data内容，[DONE]之后结束");
+    }
+
+    @Test
+    public void testStreamAbort() throws Exception {
+        HttpTransport transport = new HttpTransport(Duration.ofSeconds(5), Duration.ofSeconds(5), 2);
+        HttpRequest request = transport.newRequest(baseUri.resolve("/sse")).GET().build();
+        List<String> events = new ArrayList<>();
+
+        HttpTransport.StreamResult result = transport.stream("deepseek", request, data -> {
+            events.add(data);
+            return false;
+        });
+
+        assertTrue(result.aborted(), "handler返回false时应取消请求");
+        assertEquals(1, events.size(), "取消后不应再读取");
+        assertEquals(1, transport.metrics("deepseek").getAborted(), "应记录取消次数");
+    }
+}
@@ -0,0 +1,51 @@
+package com.novelreader;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 增量读取检查点的单元测试
+ */
+public class IngestionCheckpointTest {
+    
+    @TempDir
+    Path tempDir;
+    
+    @Test
+    public void testSaveAndLoad() {
+        ChapterLayout layout = new ChapterLayout(tempDir.resolve("novel.txt"), StandardCharsets.UTF_8, List.of(
+                new ChapterSpan(11, 1000, 12, 1013, 500),
+                new ChapterSpan(12, 1514, 12, 1527, 300)));
+        ChapterGroup group = new ChapterGroup(2, 11, 12);
+        Path path = IngestionCheckpoint.pathFor(tempDir.toString(), "novel.txt");
+        
+        IngestionCheckpoint.of(layout, 1827, group).save(path);
+        IngestionCheckpoint loaded = IngestionCheckpoint.load(path);
+        
+        assertNotNull(loaded, "应能读取保存的检查点");
+        assertEquals(1827, loaded.getFileSize());
+        assertEquals("UTF-8", loaded.getCharset());
+        assertEquals(12, loaded.getLastChapterNumber(), "最后一章的章节号不正确");
+        assertEquals(1514, loaded.getLastChapterOffset(), "最后一章的偏移不正确");
+        assertEquals(2, loaded.getGroupId(), "续读章节组编号不正确");
+        assertEquals(11, loaded.getGroupStartChapterNumber(), "续读章节不正确");
+        assertEquals(1000, loaded.getGroupStartOffset(), "续读偏移不正确");
+        assertTrue(loaded.isResumedBy(layout), "布局的第一章与续读位置一致");
+    }
+    
+    @Test
+    public void testLoadMissingOrCorruptCheckpoint() throws Exception {
+        Path path = tempDir.resolve("novel.txt.checkpoint");
+        assertNull(IngestionCheckpoint.load(path), "检查点不存在时应返回null");
+        
+        Files.writeString(path, "fileSize=abc\n");
+        assertNull(IngestionCheckpoint.load(path), "检查点损坏时应返回null");
+    }
+}
@@ -0,0 +1,73 @@
+package com.novelreader;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 内存映射章节扫描器的单元测试
+ */
+public class MappedChapterScannerTest {
+
+    @Test
+    public void testScanFindsChapterSpans() {
+        String text = "序言\n第1章 开始\n\n　　正文一\n第2章 继续\r\n正文二\r\n";
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+
+        List<ChapterSpan> spans = new MappedChapterScanner().scan(buffer);
+
+        assertEquals(2, spans.size(), "应识别出2个章节");
+        assertEquals(1, spans.get(0).chapterNumber());
+        assertEquals("第1章 开始", MappedChapterScanner.decode(buffer, (int) spans.get(0).titleOffset(),
+                spans.get(0).titleLength(), CharsetDetector.newDecoder(StandardCharsets.UTF_8)));
+        assertEquals("　　正文一", MappedChapterScanner.decode(buffer, (int) spans.get(0).contentOffset(),
+                spans.get(0).contentLength(), CharsetDetector.newDecoder(StandardCharsets.UTF_8)));
+        assertEquals("正文二", MappedChapterScanner.decode(buffer, (int) spans.get(1).contentOffset(),
+                spans.get(1).contentLength(), CharsetDetector.newDecoder(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testScanGb18030Buffer() {
+        // GBK编码的双字节可能与"第"的编码错位重叠，候选行需要解码后确认
+        String text = "第1章 开始\n　　正文一\n第2章 继续\n正文二\n";
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(CharsetDetector.GB18030));
+
+        List<ChapterSpan> spans = new MappedChapterScanner(CharsetDetector.GB18030).scan(buffer);
+
+        assertEquals(2, spans.size(), "应识别出2个章节");
+        assertEquals("第2章 继续", MappedChapterScanner.decode(buffer, (int) spans.get(1).titleOffset(),
+                spans.get(1).titleLength(), CharsetDetector.newDecoder(CharsetDetector.GB18030)));
+    }
+
+    @Test
+    public void testParallelScanMatchesSequentialScan() {
+        // 混合\n、\r\n和单独的\r换行，确保切分点落在任意位置时结果一致
+        StringBuilder text = new StringBuilder("前言\r\n");
+        String[] lineBreaks = {"\n", "\r\n", "\r"};
+        for (int i = 1; i <= 500; i++) {
+            String lineBreak = lineBreaks[i % lineBreaks.length];
+            text.append("第").append(i).append("章 标题").append(i).append(lineBreak);
+            for (int p = 0; p < i % 7 + 1; p++) {
+                text.append("　　这是本章的第").append(p).append("段内容，提到了第一次出门。").append(lineBreak);
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+
+        List<ChapterSpan> sequential = new MappedChapterScanner().scan(buffer);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int threshold : new int[]{64, 1000, 4096}) {
+                List<ChapterSpan> parallel = new MappedChapterScanner(StandardCharsets.UTF_8, new ChapterHeadingMatcher(), threshold).scanParallel(buffer, pool);
+                assertEquals(sequential, parallel, "并行扫描结果应与顺序扫描一致，阈值: " + threshold);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(500, sequential.size(), "应识别出500个章节");
+    }
+}
@@ -0,0 +1,132 @@
+package com.novelreader;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MappedFileQuota的单元测试，同一文件的两个映射模拟两个进程
+ */
+public class MappedFileQuotaTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final AtomicLong clock = new AtomicLong(1_700_000_000_000_000_000L);
+
+    @Test
+    public void testProcessesShareQuota() throws Exception {
+        Path quotaFile = tempDir.resolve("quota.bin");
+        try (MappedFileQuota first = new MappedFileQuota(quotaFile, 10, 0, false, clock::get);
+             MappedFileQuota second = new MappedFileQuota(quotaFile, 10, 0, false, clock::get)) {
+            assertFalse(first.isFileLocking(), "应使用映射缓冲区上的CAS");
+            assertShared(first, second);
+        }
+    }
+
+    @Test
+    public void testFileLockFallback() throws Exception {
+        Path quotaFile = tempDir.resolve("quota.bin");
+        try (MappedFileQuota first = new MappedFileQuota(quotaFile, 10, 0, true, clock::get);
+             MappedFileQuota second = new MappedFileQuota(quotaFile, 10, 0, true, clock::get)) {
+            assertTrue(first.isFileLocking(), "应使用文件锁");
+            assertShared(first, second);
+        }
+    }
+
+    @Test
+    public void testFileLockInstancesInSameProcess() throws Exception {
+        Path quotaFile = tempDir.resolve("quota.bin");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (MappedFileQuota first = new MappedFileQuota(quotaFile, 1000, 0, true, clock::get);
+             MappedFileQuota second = new MappedFileQuota(quotaFile, 1000, 0, true, clock::get)) {
+            // 同一进程内的两个实例同时加文件锁，不应抛出OverlappingFileLockException
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                MappedFileQuota quota = i % 2 == 0 ? first : second;
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 200; j++) {
+                        quota.tryTake(0);
+                        quota.adjust(1, 0);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void assertShared(MappedFileQuota first, MappedFileQuota second) {
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, first.tryTake(0), "限额内应放行");
+            assertEquals(0, second.tryTake(0), "限额内应放行");
+        }
+        long waitNanos = first.tryTake(0);
+        assertEquals(TimeUnit.SECONDS.toNanos(6), waitNanos, "两个进程合计用完限额后应等待补充一次的时间");
+
+        clock.addAndGet(waitNanos);
+        assertEquals(0, second.tryTake(0), "补充后另一个进程应可以使用");
+        assertTrue(first.tryTake(0) > 0, "补充的余量只能使用一次");
+    }
+
+    @Test
+    public void testTokensAndAdjust() throws Exception {
+        Path quotaFile = tempDir.resolve("quota.bin");
+        try (MappedFileQuota first = new MappedFileQuota(quotaFile, 2, 6000, false, clock::get);
+             MappedFileQuota second = new MappedFileQuota(quotaFile, 2, 6000, false, clock::get)) {
+            assertEquals(6000, second.tokenCapacity(), "应返回每分钟的token数");
+            assertEquals(0, first.tryTake(6000), "满桶时应可以一次用完");
+            assertTrue(second.tryTake(100) > 0, "token用完后不应放行");
+
+            // token不足时退回请求数，还剩一次请求
+            second.adjust(0, 3000);
+            assertEquals(0, second.tryTake(3000), "退回的token应可以被其他进程使用");
+            assertTrue(first.tryTake(0) > 0, "请求数应已用完");
+        }
+    }
+
+    @Test
+    public void testLaterProcessUpdatesLimits() throws Exception {
+        Path quotaFile = tempDir.resolve("quota.bin");
+        try (MappedFileQuota first = new MappedFileQuota(quotaFile, 1, 0, false, clock::get)) {
+            try (MappedFileQuota second = new MappedFileQuota(quotaFile, 3, 1000, false, clock::get)) {
+                assertEquals(1000, first.tokenCapacity(), "应使用最后启动的进程写入的限额");
+                for (int i = 0; i < 3; i++) {
+                    assertEquals(0, first.tryTake(0), "应按新的限额放行");
+                }
+                assertTrue(second.tryTake(0) > 0, "超过新的限额后不应放行");
+            }
+        }
+    }
+
+    @Test
+    public void testRateLimitersShareQuota() throws Exception {
+        Path quotaFile = tempDir.resolve("quota.bin");
+        try (MappedFileQuota firstQuota = new MappedFileQuota(quotaFile, 60, 0);
+             MappedFileQuota secondQuota = new MappedFileQuota(quotaFile, 60, 0)) {
+            RateLimiter first = new RateLimiter(firstQuota);
+            RateLimiter second = new RateLimiter(secondQuota);
+            for (int i = 0; i < 40; i++) {
+                assertTrue(first.tryAcquire(0, 0, TimeUnit.MILLISECONDS), "限额内应放行");
+            }
+            for (int i = 0; i < 20; i++) {
+                assertTrue(second.tryAcquire(0, 0, TimeUnit.MILLISECONDS), "限额内应放行");
+            }
+
+            assertFalse(second.tryAcquire(0, 0, TimeUnit.MILLISECONDS), "两个限流器合计不应超过共享的限额");
+        }
+    }
+}
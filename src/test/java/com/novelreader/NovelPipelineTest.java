@@ -0,0 +1,105 @@
+package com.novelreader;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * NovelPipeline的单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+public class NovelPipelineTest {
+
+    @Mock
+    private GeminiApiClient mockApiClient;
+
+    @Mock
+    private ResultValidator mockValidator;
+
+    @Mock
+    private ResultSaver mockResultSaver;
+
+    @TempDir
+    Path tempDir;
+
+    private AnalysisProcessor processor;
+    private String finalOutputFile;
+    private List<Chapter> chapters;
+
+    @BeforeEach
+    public void setUp() {
+        finalOutputFile = Paths.get(tempDir.toString(), "final_results.md").toString();
+        processor = new AnalysisProcessor(mockApiClient, mockValidator, mockResultSaver, tempDir.toString(), finalOutputFile);
+        chapters = new ArrayList<>();
+        for (int i = 9001; i <= 9025; i++) {
+            chapters.add(new Chapter(i, "第" + i + "章", "测试内容" + i));
+        }
+    }
+
+    @Test
+    public void testRunAnalyzesAllGroups() {
+        when(mockApiClient.analyzeChapterGroup(any())).thenReturn(ApiResponse.success("成功的Markdown结果"));
+        when(mockValidator.validateResult(anyString(), anyInt())).thenReturn(true);
+        when(mockResultSaver.saveChapterGroupResult(any(), anyString(), anyString())).thenReturn("result.json");
+        when(mockResultSaver.mergeResults(finalOutputFile)).thenReturn(true);
+
+        NovelPipeline pipeline = new NovelPipeline(new ChapterSplitter(), processor, 1);
+        boolean result = pipeline.run(chapters, tempDir.toString(), 901);
+
+        assertTrue(result, "处理应该成功");
+        verify(mockApiClient, times(3)).analyzeChapterGroup(any());
+        verify(mockResultSaver, times(3)).saveChapterGroupResult(any(), anyString(), anyString());
+        List<ChapterGroup> chapterGroups = pipeline.getChapterGroups();
+        assertEquals(3, chapterGroups.size(), "应该生成3个章节组");
+        assertEquals(901, chapterGroups.get(0).getChapterGroupId(), "章节组编号应从指定值开始");
+        assertEquals(9025, chapterGroups.get(2).getEndChapterNumber(), "最后一组应以第9025章结束");
+        assertEquals(0, chapterGroups.get(0).getChapterCount(), "记录的章节组不应持有章节内容");
+    }
+
+    @Test
+    public void testFirstApiCallStartsBeforeSplittingFinishes() throws InterruptedException {
+        // 读取第二组第一章的内容时分割线程阻塞，此时第一组应已提交分析
+        CountDownLatch firstCall = new CountDownLatch(1);
+        CountDownLatch splittingBlocked = new CountDownLatch(1);
+        chapters.set(10, new Chapter(9011, "第9011章", "测试内容9011") {
+            @Override
+            public String getChapterContent() {
+                try {
+                    splittingBlocked.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.getChapterContent();
+            }
+        });
+        when(mockApiClient.analyzeChapterGroup(any())).thenAnswer(invocation -> {
+            firstCall.countDown();
+            return ApiResponse.success("成功的Markdown结果");
+        });
+        when(mockValidator.validateResult(anyString(), anyInt())).thenReturn(true);
+        when(mockResultSaver.saveChapterGroupResult(any(), anyString(), anyString())).thenReturn("result.json");
+        when(mockResultSaver.mergeResults(finalOutputFile)).thenReturn(true);
+
+        NovelPipeline pipeline = new NovelPipeline(new ChapterSplitter(null, 1_000_000, 10, new TokenEstimator()), processor, 1);
+        Thread runner = new Thread(() -> pipeline.run(chapters, tempDir.toString(), 901));
+        runner.start();
+
+        assertTrue(firstCall.await(10, TimeUnit.SECONDS), "分割未完成时应已开始调用API");
+        splittingBlocked.countDown();
+        runner.join(10_000);
+        assertEquals(3, pipeline.getChapterGroups().size(), "分割继续后应生成所有章节组");
+    }
+}
@@ -0,0 +1,112 @@
+package com.novelreader;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 按需读取正文的章节的单元测试
+ */
+public class OffsetChapterTest {
+
+    private static final int CHAPTER_COUNT = 1500;
+    private static final int PARAGRAPHS_PER_CHAPTER = 50;
+
+    @TempDir
+    Path tempDir;
+
+    private String largeNovelPath;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        // 生成一个约1500章、每章约2500字的大文件
+        Path novel = tempDir.resolve("large_novel.txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(novel, StandardCharsets.UTF_8)) {
+            for (int i = 1; i <= CHAPTER_COUNT; i++) {
+                writer.write("第" + i + "章 测试章节" + i + "\r\n\r\n");
+                for (int p = 0; p < PARAGRAPHS_PER_CHAPTER; p++) {
+                    writer.write("　　秦牧站在残老村的村口，看着远处的黑暗一点点吞没山峦，心中暗暗记下第" + p + "段。\r\n");
+                }
+                writer.write("\r\n");
+            }
+        }
+        largeNovelPath = novel.toString();
+    }
+
+    @Test
+    public void testLazyContentMatchesEagerContent() {
+        List<Chapter> eager = new ChapterIdentifier(ChapterIdentifier.ScanMode.MAPPED).identifyChapters(largeNovelPath);
+        List<Chapter> lazy = new ChapterIdentifier(ChapterIdentifier.ScanMode.MAPPED, true).identifyChapters(largeNovelPath);
+
+        assertEquals(CHAPTER_COUNT, lazy.size(), "章节数量不正确");
+        assertInstanceOf(OffsetChapter.class, lazy.get(0), "应创建按需读取的章节");
+        for (int i : new int[]{0, CHAPTER_COUNT / 2, CHAPTER_COUNT - 1}) {
+            assertEquals(eager.get(i).getChapterTitle(), lazy.get(i).getChapterTitle(), "章节标题应一致");
+            assertEquals(eager.get(i).getChapterContent(), lazy.get(i).getChapterContent(), "章节正文应一致");
+        }
+
+        // 章节组按需拼接正文
+        ChapterGroup eagerGroup = new ChapterGroup(1, 1, 10);
+        ChapterGroup lazyGroup = new ChapterGroup(1, 1, 10);
+        for (int i = 0; i < 10; i++) {
+            eagerGroup.addChapter(eager.get(i));
+            lazyGroup.addChapter(lazy.get(i));
+        }
+        assertEquals(eagerGroup.getContent(), lazyGroup.getContent(), "章节组内容应一致");
+    }
+
+    @Test
+    public void testContentIsReadOnDemand() throws IOException {
+        List<Chapter> lazy = new ChapterIdentifier(ChapterIdentifier.ScanMode.MAPPED, true).identifyChapters(largeNovelPath);
+        OffsetChapter chapter = (OffsetChapter) lazy.get(CHAPTER_COUNT / 2);
+        assertTrue(chapter.getChapterContent().contains("秦牧"), "应读取到源文件中的正文");
+
+        // 原地替换为等长的文字，偏移不变
+        Path novel = Path.of(largeNovelPath);
+        String text = Files.readString(novel, StandardCharsets.UTF_8);
+        Files.writeString(novel, text.replace("秦牧", "秦石"), StandardCharsets.UTF_8);
+
+        String content = chapter.getChapterContent();
+        assertFalse(content.contains("秦牧"), "正文不应保留在内存中");
+        assertTrue(content.contains("秦石"), "每次获取正文时应从源文件读取");
+    }
+
+    @Test
+    public void testLazyChaptersUseLessHeap() {
+        // 堆占用只能粗略测量，上面的测试已确认正文不保留在内存中，这里只做宽松的比较
+        long baseline = usedHeap();
+        List<Chapter> eager = new ChapterIdentifier(ChapterIdentifier.ScanMode.MAPPED).identifyChapters(largeNovelPath);
+        long eagerFootprint = usedHeap() - baseline;
+        Reference.reachabilityFence(eager);
+        eager = null;
+
+        baseline = usedHeap();
+        List<Chapter> lazy = new ChapterIdentifier(ChapterIdentifier.ScanMode.MAPPED, true).identifyChapters(largeNovelPath);
+        long lazyFootprint = usedHeap() - baseline;
+        Reference.reachabilityFence(lazy);
+
+        // 全量读取的正文约6MB，测量值明显偏小时说明GC没有如期进行，不做判断
+        assumeTrue(eagerFootprint > 2L * 1024 * 1024, "堆占用测量不可靠，eager=" + eagerFootprint);
+        assertTrue(lazyFootprint * 2 < eagerFootprint,
+                "按需读取的章节占用应明显小于全量读取，eager=" + eagerFootprint + ", lazy=" + lazyFootprint);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -1,13 +1,9 @@
 package com.novelreader;
 
-import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -15,109 +11,125 @@ import static org.junit.jupiter.api.Assertions.*;
  * 限流器的单元测试
  */
 public class RateLimiterTest {
-    
-    private RateLimiter rateLimiter;
-    private final int permitsPerMinute = 5;
-    
-    @BeforeEach
-    public void setUp() {
-        rateLimiter = new RateLimiter(permitsPerMinute);
+
+    @Test
+    public void testBurstThenWaitForRefill() throws InterruptedException {
+        // 每秒补充1次
+        RateLimiter rateLimiter = new RateLimiter(60);
+        for (int i = 0; i < 60; i++) {
+            assertTrue(rateLimiter.tryAcquire(0, 0, TimeUnit.MILLISECONDS), "满桶时应可以一次性获取全部许可");
+        }
+
+        assertFalse(rateLimiter.tryAcquire(0, 0, TimeUnit.MILLISECONDS), "许可用完后不应立即获取到");
+        assertTrue(rateLimiter.tryAcquire(0, 3, TimeUnit.SECONDS), "补充后应获取到许可");
     }
-    
+
     @Test
-    public void testAcquireAndRelease() throws InterruptedException {
-        // 测试获取和释放许可
-        for (int i = 0; i < permitsPerMinute; i++) {
+    public void testRefillIsSmooth() throws InterruptedException {
+        // 每100毫秒补充1次
+        RateLimiter rateLimiter = new RateLimiter(600);
+        for (int i = 0; i < 600; i++) {
             rateLimiter.acquire();
         }
-        
-        // 释放一个许可
-        rateLimiter.release();
-        
-        // 现在应该可以再获取一个许可
-        rateLimiter.acquire();
-        
-        // 这里不应该抛出异常
-        assertTrue(true, "测试通过");
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            rateLimiter.acquire();
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+
+        assertTrue(elapsedMillis >= 250, "应按平均速率放行，实际耗时: " + elapsedMillis + "ms");
+        assertTrue(elapsedMillis < 5000, "不应等到整分钟才放行，实际耗时: " + elapsedMillis + "ms");
     }
-    
+
     @Test
-    public void testConcurrentAcquire() throws InterruptedException {
-        // 测试并发获取许可
-        int threadCount = 10;
-        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
-        CountDownLatch startLatch = new CountDownLatch(1);
-        CountDownLatch finishLatch = new CountDownLatch(threadCount);
-        AtomicInteger successCount = new AtomicInteger(0);
-        
-        for (int i = 0; i < threadCount; i++) {
-            executor.submit(() -> {
-                try {
-                    startLatch.await(); // 等待所有线程准备就绪
-                    
-                    // 尝试获取许可
-                    try {
-                        rateLimiter.acquire();
-                        successCount.incrementAndGet();
-                        Thread.sleep(10); // 模拟一些处理时间
-                        rateLimiter.release();
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                    }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                } finally {
-                    finishLatch.countDown();
-                }
-            });
-        }
-        
-        startLatch.countDown(); // 所有线程开始执行
-        finishLatch.await(5, TimeUnit.SECONDS); // 等待所有线程完成
-        
-        // 由于我们有permitsPerMinute个许可，所以至少应该有permitsPerMinute个线程成功获取许可
-        assertTrue(successCount.get() >= permitsPerMinute, 
-                "至少应有" + permitsPerMinute + "个线程成功获取许可，实际成功数: " + successCount.get());
-        
-        executor.shutdownNow();
+    public void testTokensPerMinute() throws InterruptedException {
+        // 每秒补充100个token
+        RateLimiter rateLimiter = new RateLimiter(1000, 6000);
+        rateLimiter.acquire(6000);
+
+        assertFalse(rateLimiter.tryAcquire(100, 0, TimeUnit.MILLISECONDS), "token用完后请求数有余量也不应放行");
+        assertTrue(rateLimiter.tryAcquire(100, 3, TimeUnit.SECONDS), "token补充后应放行");
     }
-    
+
     @Test
-    public void testRateLimiterReplenish() throws InterruptedException {
-        // 注意：这个测试需要等待一分钟，可能会导致测试运行时间较长
-        // 在实际测试中，你可能需要模拟时间或使用更短的重置周期
-        
-        // 首先获取所有许可
-        for (int i = 0; i < permitsPerMinute; i++) {
-            rateLimiter.acquire();
-        }
-        
-        // 尝试获取另一个许可，这应该会阻塞
-        // 为了避免测试阻塞，我们使用一个单独的线程
-        AtomicInteger acquiredAfterReplenish = new AtomicInteger(0);
-        Thread testThread = new Thread(() -> {
+    public void testOversizeRequestUsesWholeBucket() throws InterruptedException {
+        RateLimiter rateLimiter = new RateLimiter(1000, 1000);
+
+        assertTrue(rateLimiter.tryAcquire(5000, 0, TimeUnit.MILLISECONDS), "超过每分钟上限的请求应按上限计算，不能永远等待");
+        assertFalse(rateLimiter.tryAcquire(1, 0, TimeUnit.MILLISECONDS), "超大请求应用完全部token");
+    }
+
+    @Test
+    public void testWaitersAreFifo() throws InterruptedException {
+        // 每毫秒补充1个token
+        RateLimiter rateLimiter = new RateLimiter(1000, 60000);
+        rateLimiter.acquire(60000);
+
+        CompletableFuture<Void> large = rateLimiter.acquireAsync(300);
+        CompletableFuture<Void> small = rateLimiter.acquireAsync(1);
+        Thread.sleep(50);
+        assertFalse(small.isDone(), "小请求不应插队到排在前面的大请求之前");
+
+        small.join();
+        assertTrue(large.isDone(), "应按排队顺序放行");
+    }
+
+    @Test
+    public void testCancelledWaiterDoesNotBlockQueue() throws Exception {
+        // 每毫秒补充1个token
+        RateLimiter rateLimiter = new RateLimiter(1000, 60000);
+        rateLimiter.acquire(60000);
+
+        CompletableFuture<Void> cancelled = rateLimiter.acquireAsync(60000);
+        CompletableFuture<Void> next = rateLimiter.acquireAsync(1);
+        Thread.sleep(50);
+        assertFalse(next.isDone(), "排在大请求之后不应放行");
+        cancelled.cancel(false);
+
+        // 不再发起新的请求，取消本身应放行后面已排队的请求
+        next.get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testTimedOutWaiterDoesNotBlockQueue() throws Exception {
+        RateLimiter rateLimiter = new RateLimiter(1000, 60000);
+        rateLimiter.acquire(60000);
+
+        Thread waiter = new Thread(() -> {
             try {
-                rateLimiter.acquire();
-                acquiredAfterReplenish.incrementAndGet();
+                // 排在队首，100毫秒后超时取消
+                rateLimiter.tryAcquire(60000, 100, TimeUnit.MILLISECONDS);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
             }
         });
-        testThread.start();
-        
-        // 等待一小段时间，确保线程已经开始尝试获取许可
-        Thread.sleep(100);
-        
-        // 此时应该没有成功获取许可
-        assertEquals(0, acquiredAfterReplenish.get(), "在重置前不应该获取到许可");
-        
-        // 手动释放一个许可，模拟重置
-        rateLimiter.release();
-        
-        // 等待线程完成
-        testThread.join(1000);
-        
-        // 现在应该已经获取到许可
-        assertEquals(1, acquiredAfterReplenish.get(), "在释放许可后应该获取到许可");
+        waiter.start();
+        Thread.sleep(20);
+        CompletableFuture<Void> next = rateLimiter.acquireAsync(1);
+        waiter.join();
+
+        next.get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testSettleRefundsUnusedTokens() throws InterruptedException {
+        RateLimiter rateLimiter = new RateLimiter(1000, 6000);
+        rateLimiter.acquire(6000);
+
+        rateLimiter.settle(6000, new ApiResponse.Usage(800, 200, 1000));
+
+        assertTrue(rateLimiter.tryAcquire(4900, 0, TimeUnit.MILLISECONDS), "实际用量少于预计时应退回差额");
+    }
+
+    @Test
+    public void testSettleChargesExtraTokens() throws InterruptedException {
+        RateLimiter rateLimiter = new RateLimiter(1000, 6000);
+        rateLimiter.acquire(1000);
+
+        rateLimiter.settle(1000, new ApiResponse.Usage(3000, 1000, 4000));
+
+        assertFalse(rateLimiter.tryAcquire(3000, 0, TimeUnit.MILLISECONDS), "实际用量多于预计时应扣除差额");
+        assertTrue(rateLimiter.tryAcquire(2000, 0, TimeUnit.MILLISECONDS), "剩余的余量应仍可以使用");
     }
 }
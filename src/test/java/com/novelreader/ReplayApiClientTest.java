@@ -0,0 +1,110 @@
+package com.novelreader;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * RecordingApiClient和ReplayApiClient的单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+public class ReplayApiClientTest {
+
+    @Mock
+    private ApiClient mockApiClient;
+
+    @TempDir
+    Path tempDir;
+
+    private Path cassettePath;
+
+    @BeforeEach
+    public void setUp() {
+        cassettePath = tempDir.resolve("cassette.jsonl");
+        lenient().when(mockApiClient.getProviderName()).thenReturn("deepseek");
+        lenient().when(mockApiClient.getModelName()).thenReturn("deepseek-chat");
+    }
+
+    @Test
+    public void testReplayRecordedResponses() throws Exception {
+        ApiResponse.Usage usage = new ApiResponse.Usage(100, 20, 120);
+        when(mockApiClient.analyzeChapterGroup(any()))
+                .thenReturn(ApiResponse.success("**第1章**\n分析", "stop", usage), ApiResponse.success("**第2章**\n分析"));
+        RecordingApiClient recorder = new RecordingApiClient(mockApiClient, cassettePath);
+        recorder.analyzeChapterGroup(new ApiRequest("提示词", "第1章内容"));
+        recorder.analyzeChapterGroup(new ApiRequest("提示词", "第2章内容"));
+
+        List<Cassette.Entry> entries = Cassette.read(cassettePath);
+        assertEquals(2, entries.size(), "每次调用应记录一行");
+        assertEquals("deepseek-chat", entries.get(0).modelName(), "应记录模型名称");
+
+        ReplayApiClient replay = new ReplayApiClient(cassettePath, "deepseek", "deepseek-chat", ReplayApiClient.LatencyModel.none());
+        ApiResponse second = replay.analyzeChapterGroup(new ApiRequest("提示词", "第2章内容"));
+        ApiResponse first = replay.analyzeChapterGroupAsync(new ApiRequest("提示词", "第1章内容")).join();
+
+        assertEquals("**第2章**\n分析", second.responseBody(), "应按请求指纹返回录制的响应，与请求顺序无关");
+        assertEquals("**第1章**\n分析", first.responseBody(), "异步请求应返回录制的响应");
+        assertEquals("stop", first.finishReason(), "应回放结束原因");
+        assertEquals(usage, first.usage(), "应回放token用量");
+    }
+
+    @Test
+    public void testRetriesReplayInRecordedOrder() {
+        when(mockApiClient.analyzeChapterGroup(any()))
+                .thenReturn(ApiResponse.failure("格式错误"), ApiResponse.success("**第1章**\n分析"));
+        RecordingApiClient recorder = new RecordingApiClient(mockApiClient, cassettePath);
+        recorder.analyzeChapterGroup(new ApiRequest("提示词", "第1章内容"));
+        recorder.analyzeChapterGroup(new ApiRequest("提示词", "第1章内容"));
+
+        ReplayApiClient replay = new ReplayApiClient(cassettePath, "deepseek", "deepseek-chat", ReplayApiClient.LatencyModel.none());
+
+        assertFalse(replay.analyzeChapterGroup(new ApiRequest("提示词", "第1章内容")).isSuccess(), "第一次应回放失败的响应");
+        assertTrue(replay.analyzeChapterGroup(new ApiRequest("提示词", "第1章内容")).isSuccess(), "重试应回放第二次录制的响应");
+        assertTrue(replay.analyzeChapterGroup(new ApiRequest("提示词", "第1章内容")).isSuccess(), "录制的响应用完后应重复最后一次");
+    }
+
+    @Test
+    public void testMissingRecordingFails() {
+        when(mockApiClient.analyzeChapterGroup(any())).thenReturn(ApiResponse.success("**第1章**\n分析"));
+        new RecordingApiClient(mockApiClient, cassettePath).analyzeChapterGroup(new ApiRequest("提示词", "第1章内容"));
+
+        ReplayApiClient replay = new ReplayApiClient(cassettePath, "deepseek", "deepseek-reasoner", ReplayApiClient.LatencyModel.none());
+        ApiResponse response = replay.analyzeChapterGroup(new ApiRequest("提示词", "第1章内容"));
+
+        assertFalse(response.isSuccess(), "模型不同时不应使用录制的响应");
+        assertEquals(1, replay.getMisses(), "应统计没有录制响应的请求");
+    }
+
+    @Test
+    public void testSimulatedLatency() {
+        when(mockApiClient.analyzeChapterGroup(any())).thenReturn(ApiResponse.success("**第1章**\n分析"));
+        new RecordingApiClient(mockApiClient, cassettePath).analyzeChapterGroup(new ApiRequest("提示词", "第1章内容"));
+
+        ReplayApiClient replay = new ReplayApiClient(cassettePath, "deepseek", "deepseek-chat", ReplayApiClient.LatencyModel.parse("fixed:200"));
+        long startTime = System.nanoTime();
+        ApiResponse response = replay.analyzeChapterGroupAsync(new ApiRequest("提示词", "第1章内容")).join();
+
+        assertTrue(response.isSuccess(), "应返回录制的响应");
+        assertTrue(System.nanoTime() - startTime >= 200_000_000L, "应等待模拟的响应时间");
+    }
+
+    @Test
+    public void testParseLatencyModel() {
+        Cassette.Entry entry = new Cassette.Entry("key", "deepseek", "deepseek-chat", 1, 1, 1500,
+                true, "分析", null, null, null, 200);
+
+        assertEquals(0, ReplayApiClient.LatencyModel.parse("none").delayMillis(entry), "none不应等待");
+        assertEquals(1500, ReplayApiClient.LatencyModel.parse("recorded").delayMillis(entry), "recorded应使用录制的耗时");
+        assertTrue(ReplayApiClient.LatencyModel.parse("lognormal:800:0.5").delayMillis(entry) > 0, "对数正态分布的延迟应大于0");
+        assertThrows(IllegalArgumentException.class, () -> ReplayApiClient.LatencyModel.parse("fixed"), "缺少参数时应抛出异常");
+    }
+}
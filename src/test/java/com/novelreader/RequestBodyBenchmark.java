@@ -0,0 +1,100 @@
+package com.novelreader;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 请求体序列化的JMH基准测试，章节内容约4万字，运行方式见{@link HeadingMatcherBenchmark}，加上-prof gc查看每次的分配量
+ * <p>
+ * mapToString是改动前构建Map再转换成String、发送时再编码成UTF-8的做法，generator是JsonGenerator直接写出UTF-8字节，
+ * retry是重试时复用已编码的请求体。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestBodyBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private String prompt;
+    private String content;
+    private ApiRequest request;
+
+    @Setup
+    public void setUp() throws IOException {
+        String novel = Files.readString(Paths.get("src", "test", "resources", "牧神记_test.txt"), StandardCharsets.UTF_8);
+        prompt = novel.substring(0, 2000);
+        content = novel.substring(2000, 42000);
+        request = new ApiRequest(prompt, content);
+    }
+
+    @Benchmark
+    public byte[] mapToString() throws IOException {
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("model", "deepseek-chat");
+        requestBody.put("stream", false);
+        List<Map<String, String>> messages = new ArrayList<>();
+        Map<String, String> systemMessage = new HashMap<>();
+        systemMessage.put("role", "system");
+        systemMessage.put("content", prompt);
+        messages.add(systemMessage);
+        Map<String, String> userMessage = new HashMap<>();
+        userMessage.put("role", "user");
+        userMessage.put("content", content);
+        messages.add(userMessage);
+        requestBody.put("messages", messages);
+        return objectMapper.writeValueAsString(requestBody).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public RequestBodyWriter.Body generator() throws IOException {
+        request.setChapterGroupContent(content);
+        return encode();
+    }
+
+    @Benchmark
+    public RequestBodyWriter.Body retry() throws IOException {
+        return encode();
+    }
+
+    private RequestBodyWriter.Body encode() throws IOException {
+        return RequestBodyWriter.encode(request, "deepseek", generator -> {
+            generator.writeStartObject();
+            generator.writeStringField("model", "deepseek-chat");
+            generator.writeBooleanField("stream", false);
+            generator.writeArrayFieldStart("messages");
+            generator.writeStartObject();
+            generator.writeStringField("role", "system");
+            generator.writeFieldName("content");
+            generator.writeString(RequestBodyWriter.preEscaped(prompt));
+            generator.writeEndObject();
+            generator.writeStartObject();
+            generator.writeStringField("role", "user");
+            generator.writeStringField("content", content);
+            generator.writeEndObject();
+            generator.writeEndArray();
+            generator.writeEndObject();
+        });
+    }
+}
@@ -0,0 +1,93 @@
+package com.novelreader;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Flow;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RequestBodyWriter的单元测试
+ */
+public class RequestBodyWriterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testEncodeWritesEscapedJson() throws Exception {
+        ApiRequest request = new ApiRequest("分析以下章节：\n输出\"Markdown\"", "第1章 开始\n\n正文\t一。");
+
+        RequestBodyWriter.Body body = RequestBodyWriter.encode(request, "test", generator -> {
+            generator.writeStartObject();
+            generator.writeFieldName("prompt");
+            generator.writeString(RequestBodyWriter.preEscaped(request.getPrompt(), "\n\n"));
+            generator.writeStringField("content", request.getChapterGroupContent());
+            generator.writeEndObject();
+        });
+
+        JsonNode json = objectMapper.readTree(body.toString());
+        assertEquals("分析以下章节：\n输出\"Markdown\"\n\n", json.get("prompt").asText(), "提示词应正确转义并带上后缀");
+        assertEquals("第1章 开始\n\n正文\t一。", json.get("content").asText(), "章节内容应正确转义");
+    }
+
+    @Test
+    public void testEncodedBodyIsReusedForSameKey() throws Exception {
+        ApiRequest request = new ApiRequest("提示词", "内容");
+        RequestBodyWriter.BodyWriter writer = generator -> {
+            generator.writeStartObject();
+            generator.writeStringField("content", request.getChapterGroupContent());
+            generator.writeEndObject();
+        };
+
+        RequestBodyWriter.Body first = RequestBodyWriter.encode(request, "gemini", writer);
+
+        assertSame(first, RequestBodyWriter.encode(request, "gemini", writer), "重试时应复用已编码的请求体");
+        assertNotSame(first, RequestBodyWriter.encode(request, "gemini:stream", writer), "格式不同时应重新编码");
+        request.setChapterGroupContent("新内容");
+        assertNull(request.getEncodedBody("gemini:stream"), "内容变化后应丢弃已编码的请求体");
+    }
+
+    @Test
+    public void testPreEscapedIsCached() {
+        String prompt = "提示词";
+
+        assertSame(RequestBodyWriter.preEscaped(prompt), RequestBodyWriter.preEscaped(prompt), "相同的提示词只应转义一次");
+        assertNotSame(RequestBodyWriter.preEscaped(prompt), RequestBodyWriter.preEscaped(prompt, "\n\n"), "后缀不同时应分别缓存");
+    }
+
+    /**
+     * 读出HttpRequest中实际发送的请求体，供各API客户端的测试比较
+     */
+    static String readBody(HttpRequest request) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        request.bodyPublisher().orElseThrow().subscribe(new Flow.Subscriber<ByteBuffer>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ByteBuffer buffer) {
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                output.writeBytes(bytes);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                throw new AssertionError(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        return output.toString(StandardCharsets.UTF_8);
+    }
+}
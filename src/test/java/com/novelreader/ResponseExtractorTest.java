@@ -0,0 +1,67 @@
+package com.novelreader;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ResponseExtractor的单元测试
+ */
+public class ResponseExtractorTest {
+
+    @Test
+    public void testExtractChatCompletion() throws IOException {
+        String json = "{\"id\":\"abc\",\"object\":\"chat.completion\",\"choices\":[{\"index\":0,"
+                + "\"message\":{\"role\":\"assistant\",\"reasoning_content\":\"思考\",\"content\":\"**第1章**\\n分析\"},"
+                + "\"logprobs\":null,\"finish_reason\":\"stop\"},{\"index\":1,\"message\":{\"content\":\"第二个\"}}],"
+                + "\"usage\":{\"prompt_tokens\":120,\"completion_tokens\":30,\"total_tokens\":150,"
+                + "\"prompt_tokens_details\":{\"cached_tokens\":100}}}";
+
+        ResponseExtractor.Extracted extracted = ResponseExtractor.extractChatCompletion(
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals("**第1章**\n分析", extracted.text(), "应只取出第一个choice的消息内容");
+        assertEquals("stop", extracted.finishReason(), "应取出结束原因");
+        assertEquals(new ApiResponse.Usage(120, 30, 150), extracted.usage(), "应取出token用量");
+    }
+
+    @Test
+    public void testExtractChatCompletionStreamEvents() throws IOException {
+        ResponseExtractor.Extracted delta = ResponseExtractor.extractChatCompletion(
+                "{\"choices\":[{\"index\":0,\"delta\":{\"content\":\"第1章\"},\"finish_reason\":null}]}");
+        ResponseExtractor.Extracted usageOnly = ResponseExtractor.extractChatCompletion(
+                "{\"choices\":[],\"usage\":{\"prompt_tokens\":5,\"completion_tokens\":2,\"total_tokens\":7}}");
+
+        assertEquals("第1章", delta.text(), "应取出流式事件的增量内容");
+        assertNull(delta.finishReason(), "没有结束原因时应为null");
+        assertEquals("", usageOnly.text(), "没有choice时文本应为空");
+        assertEquals(7, usageOnly.usage().totalTokens(), "应取出最后一条事件的token用量");
+    }
+
+    @Test
+    public void testExtractGemini() throws IOException {
+        String json = "{\"candidates\":[{\"content\":{\"role\":\"model\",\"parts\":["
+                + "{\"text\":\"思考过程\",\"thought\":true},{\"text\":\"**第1章**\\n\"},{\"text\":\"分析\"}]},"
+                + "\"finishReason\":\"MAX_TOKENS\",\"safetyRatings\":[{\"category\":\"X\",\"probability\":\"LOW\"}]}],"
+                + "\"usageMetadata\":{\"promptTokenCount\":200,\"candidatesTokenCount\":50,\"totalTokenCount\":250},"
+                + "\"modelVersion\":\"gemini-2.0-flash\"}";
+
+        ResponseExtractor.Extracted extracted = ResponseExtractor.extractGemini(
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals("**第1章**\n分析", extracted.text(), "应依次拼接各part的文本，不包括思考过程");
+        assertEquals("MAX_TOKENS", extracted.finishReason(), "应取出结束原因");
+        assertEquals(new ApiResponse.Usage(200, 50, 250), extracted.usage(), "应取出token用量");
+    }
+
+    @Test
+    public void testMalformedResponse() {
+        assertThrows(IOException.class, () -> ResponseExtractor.extractGemini("[1,2]"), "响应不是JSON对象时应抛出异常");
+        assertThrows(IOException.class, () -> ResponseExtractor.extractChatCompletion("{\"choices\":[{\"message\":"),
+                "响应不完整时应抛出异常");
+    }
+}
@@ -72,6 +72,22 @@ public class ResultSaverTest {
         assertEquals(markdownResult, resultJson.get("markdownResult").getAsString(), "Markdown结果应匹配");
     }
     
+    @Test
+    public void testSaveChapterGroupResultDeletesStaleResult() throws IOException {
+        // 未满的章节组追加章节后重新分析，旧的分析结果应被删除
+        String outputPath = tempDir.toString();
+        resultSaver.saveChapterGroupResult(new ChapterGroup(3, 21, 25), "**第21章**", outputPath);
+        resultSaver.saveChapterGroupResult(new ChapterGroup(30, 291, 300), "**第291章**", outputPath);
+        
+        resultSaver.saveChapterGroupResult(new ChapterGroup(3, 21, 30), "**第21章**", outputPath);
+        
+        assertFalse(Files.exists(tempDir.resolve("003第21-25章_分析.json")), "旧的分析结果应被删除");
+        assertTrue(Files.exists(tempDir.resolve("003第21-30章_分析.json")), "新的分析结果应存在");
+        assertFalse(Files.exists(tempDir.resolve("003第21-25章_分析.hash")), "旧的指纹文件应被删除");
+        assertTrue(Files.exists(tempDir.resolve("003第21-30章_分析.hash")), "新的指纹文件应存在");
+        assertTrue(Files.exists(tempDir.resolve("030第291-300章_分析.json")), "其他章节组的分析结果不应被删除");
+    }
+    
     @Test
     public void testMergeResults() throws IOException {
         // 准备测试数据
@@ -0,0 +1,67 @@
+package com.novelreader;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * StreamingFormatGuard的单元测试
+ */
+public class StreamingFormatGuardTest {
+
+    @Test
+    public void testWellFormedOutput() {
+        StreamingFormatGuard guard = new StreamingFormatGuard(11, 12);
+
+        assertTrue(guard.append("好的，下面逐章分析。\n\n**第1"), "开场白应放行");
+        assertTrue(guard.append("1章 标题**\n* 本章与第3章的伏笔呼应。\n"), "被拆开的标题应在整行到达后检查");
+        assertTrue(guard.append("**第12章 标题**\n* 总结"), "范围内的标题应放行");
+
+        assertNull(guard.getViolation(), "不应判定为偏离格式");
+        assertEquals("好的，下面逐章分析。\n\n**第11章 标题**\n* 本章与第3章的伏笔呼应。\n**第12章 标题**\n* 总结",
+                guard.getText(), "应保留全部输出");
+    }
+
+    @Test
+    public void testHeadingOutsideRange() {
+        StreamingFormatGuard guard = new StreamingFormatGuard(11, 12);
+
+        assertTrue(guard.append("## 第11章 标题\n内容\n"));
+        assertFalse(guard.append("## 第35章 标题\n"), "范围外的标题应判定为偏离格式");
+        assertFalse(guard.append("更多内容\n"), "偏离格式后不应继续接收");
+        assertTrue(guard.getViolation().contains("35"), "应说明偏离格式的原因");
+    }
+
+    @Test
+    public void testNoHeading() {
+        StreamingFormatGuard guard = new StreamingFormatGuard(1, 10, 100);
+
+        assertTrue(guard.append("抱歉，".repeat(20)), "未完成的行不计入");
+        assertFalse(guard.append("\n" + "我无法完成这个请求。\n".repeat(10)), "超过限定长度仍没有标题应判定为偏离格式");
+        assertNotNull(guard.getViolation());
+    }
+
+    @Test
+    public void testUnknownRange() {
+        StreamingFormatGuard guard = new StreamingFormatGuard(0, 0);
+
+        assertTrue(guard.append("**第999章 标题**\n"), "章节范围未知时不检查章节号");
+    }
+
+    @Test
+    public void testFinishReasonAndUsageFromEvents() {
+        StreamingFormatGuard guard = new StreamingFormatGuard(1, 1);
+        ApiResponse.Usage usage = new ApiResponse.Usage(100, 20, 120);
+
+        assertTrue(guard.append(new ResponseExtractor.Extracted("**第1章 标题**\n", null, null)));
+        assertTrue(guard.append(new ResponseExtractor.Extracted("内容", "length", null)));
+        assertTrue(guard.append(new ResponseExtractor.Extracted("", null, usage)), "只带用量的最后一条事件应放行");
+
+        ApiResponse response = guard.toApiResponse("deepseek", new HttpTransport.StreamResult(200, null, false));
+        assertTrue(response.isSuccess());
+        assertEquals("**第1章 标题**\n内容", response.responseBody(), "应保留全部输出");
+        assertEquals("length", response.finishReason(), "应取事件中给出的结束原因");
+        assertEquals(usage, response.usage(), "应取事件中给出的token用量");
+        assertTrue(response.isTruncated(), "因达到最大输出token数结束的输出应视为被截断");
+    }
+}
@@ -0,0 +1,87 @@
+package com.novelreader;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 文本规范化器的单元测试
+ */
+public class TextNormalizerTest {
+    
+    @Test
+    public void testNormalizeRemovesIndentationAndBlankLines() {
+        TextNormalizer normalizer = new TextNormalizer();
+        
+        String normalized = normalizer.normalize("　　第一段。\n\n\n　　第二段。  \n \n　　第三段。");
+        
+        assertEquals("第一段。\n第二段。\n第三段。", normalized, "应去除缩进和空行");
+        assertEquals(0, normalizer.getDroppedLines(), "不应删除正文行");
+    }
+    
+    @Test
+    public void testNormalizeDropsNoiseLines() {
+        TextNormalizer normalizer = new TextNormalizer();
+        String longParagraph = "　　秦牧笑道：“求月票这种事，村里的瞎子从来不做。”" + "他说完便转身走进了大墟的夜色之中。".repeat(5);
+        
+        String normalized = normalizer.normalize("　　正文。\n　　（求月票！求推荐票！）\n天才一秒记住本站地址：www.example.com\n"
+                + longParagraph + "\n（本章完）");
+        
+        assertEquals("正文。\n" + longParagraph.substring(2), normalized, "应删除水印和作者留言，保留包含关键字的长段落");
+        assertEquals(3, normalizer.getDroppedLines(), "应删除3行");
+    }
+    
+    @Test
+    public void testStatistics() {
+        TextNormalizer normalizer = new TextNormalizer(List.of("广告"), 20);
+        
+        normalizer.normalize("　　正文\n\n广告");
+        normalizer.normalize("ab  ");
+        
+        assertEquals(12, normalizer.getInputChars(), "输入字符数不正确");
+        assertEquals(8, normalizer.getRemovedChars(), "删除字符数不正确");
+        assertEquals(4, normalizer.getRemovedTokens(), "估算的token数不正确");
+    }
+    
+    @Test
+    public void testStatisticsCountEachChapterOnce() {
+        TextNormalizer normalizer = new TextNormalizer();
+        Chapter chapter = new Chapter(1, "第1章 开始", "　　正文。");
+        ChapterGroup group = new ChapterGroup(1, 1, 1);
+        group.setTextNormalizer(normalizer);
+        group.addChapter(chapter);
+        
+        group.getContent();
+        group.clearContent();
+        // 重试时重新生成内容
+        group.getContent();
+        
+        assertEquals(5, normalizer.getInputChars(), "同一章重新读取时不应重复统计");
+        assertEquals(2, normalizer.getRemovedChars(), "同一章重新读取时不应重复统计");
+    }
+    
+    @Test
+    public void testSmallRemovalsAccumulate() {
+        TextNormalizer normalizer = new TextNormalizer();
+        
+        // 每次只删除一个半角空格，不足1个token
+        for (int i = 0; i < 10; i++) {
+            normalizer.normalize(new Chapter(i + 1, "第" + (i + 1) + "章", "正文 "));
+        }
+        
+        assertEquals(10, normalizer.getRemovedChars(), "删除字符数不正确");
+        assertTrue(normalizer.getRemovedTokens() > 0, "少量删除累计后不应被截断为0");
+    }
+    
+    @Test
+    public void testChapterGroupContentIsNormalized() {
+        ChapterGroup group = new ChapterGroup(1, 1, 1);
+        group.addChapter(new Chapter(1, "第1章 开始", "　　正文。\n\n　　求月票！"));
+        
+        assertEquals("第1章 开始\n\n　　正文。\n\n　　求月票！\n\n", group.getContent(), "未设置规范化器时内容不变");
+        group.setTextNormalizer(new TextNormalizer());
+        assertEquals("第1章 开始\n\n正文。\n\n", group.getContent(), "设置规范化器后内容应被规范化");
+    }
+}
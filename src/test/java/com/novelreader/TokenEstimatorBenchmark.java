@@ -0,0 +1,48 @@
+package com.novelreader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * token数估算器的JMH基准测试，估算约4MB（UTF-8）的小说文本，运行方式见{@link HeadingMatcherBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenEstimatorBenchmark {
+    
+    private String text;
+    private final TokenEstimator geminiEstimator = TokenEstimator.forProvider("gemini");
+    
+    @Setup
+    public void setUp() throws IOException {
+        String novel = Files.readString(Paths.get("src", "test", "resources", "牧神记_test.txt"), StandardCharsets.UTF_8);
+        StringBuilder builder = new StringBuilder();
+        while (builder.toString().getBytes(StandardCharsets.UTF_8).length < 4 * 1024 * 1024) {
+            builder.append(novel);
+        }
+        text = builder.toString();
+    }
+    
+    @Benchmark
+    public long estimate() {
+        return geminiEstimator.estimate(text);
+    }
+}
@@ -0,0 +1,75 @@
+package com.novelreader;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * token数估算器的单元测试
+ */
+public class TokenEstimatorTest {
+    
+    @Test
+    public void testEstimate() {
+        TokenEstimator estimator = new TokenEstimator();
+        
+        assertEquals(0, estimator.estimate(""), "空文本为0个token");
+        assertEquals(4, estimator.estimate("秦牧出门"), "每个汉字约1个token");
+        assertEquals(2, estimator.estimate("abcdefgh"), "每4个ASCII字符约1个token");
+        assertEquals(5, estimator.estimate("第1章 测试"), "不足1个token的部分向上取整");
+        assertEquals(9, new Chapter(1, "第1章 测试", "秦牧出门").estimateTokens(estimator), "章节的token数为标题和正文之和");
+        assertEquals(2, estimator.estimate("\u3000\u00A0"), "全角空格等非ASCII空白约为1个token");
+        assertEquals(2, estimator.estimate("\uD83D\uDE00"), "增补字符按两个非ASCII字符计");
+    }
+    
+    @Test
+    public void testGeminiCalibrationAgainstRecordedUsage() throws Exception {
+        // output/analysis中记录了Gemini返回的分析文本和usageMetadata.candidatesTokenCount
+        TokenEstimator estimator = TokenEstimator.forProvider("gemini");
+        List<Path> recordings;
+        try (Stream<Path> files = Files.list(Paths.get("output", "analysis"))) {
+            recordings = files.filter(path -> path.toString().endsWith(".json")).sorted().collect(Collectors.toList());
+        }
+        assertFalse(recordings.isEmpty(), "应存在已记录的分析结果");
+        
+        long totalEstimated = 0;
+        long totalActual = 0;
+        for (Path recording : recordings) {
+            JsonObject result = JsonParser.parseString(Files.readString(recording)).getAsJsonObject();
+            JsonObject response = JsonParser.parseString(result.get("markdownResult").getAsString()).getAsJsonObject();
+            String text = response.getAsJsonArray("candidates").get(0).getAsJsonObject()
+                    .getAsJsonObject("content").getAsJsonArray("parts").get(0).getAsJsonObject()
+                    .get("text").getAsString();
+            long actual = response.getAsJsonObject("usageMetadata").get("candidatesTokenCount").getAsLong();
+            long estimated = estimator.estimate(text);
+            assertEquals(actual, estimated, actual * 0.1, "单个结果的估算误差应在10%以内: " + recording.getFileName());
+            totalEstimated += estimated;
+            totalActual += actual;
+        }
+        assertEquals(totalActual, totalEstimated, totalActual * 0.02, "总体估算误差应在2%以内");
+    }
+    
+    @Test
+    public void testGeminiCalibrationAgainstRecordedPrompt() {
+        // 第11-20章的请求记录了promptTokenCount为21671，请求文本为提示词加章节组内容
+        ChapterGroup group = new ChapterGroup(2, 11, 20);
+        for (Chapter chapter : new ChapterIdentifier().identifyChapters("src/test/resources/牧神记_test.txt")) {
+            if (chapter.getChapterNumber() >= 11 && chapter.getChapterNumber() <= 20) {
+                group.addChapter(chapter);
+            }
+        }
+        String requestText = Configuration.getPrompt() + "\n\n" + group.getContent();
+        
+        assertEquals(21671, TokenEstimator.forProvider("gemini").estimate(requestText), 21671 * 0.05, "请求的估算误差应在5%以内");
+        assertTrue(group.estimateTokens(TokenEstimator.forProvider("gemini")) < 21671, "章节组原文的token数应小于整个请求");
+    }
+}